@@ -3,6 +3,9 @@ package org.fengling.anti_addiction;
 import com.mojang.logging.LogUtils;
 import net.minecraft.world.level.chunk.Palette;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
@@ -40,9 +43,35 @@ public class Anti_addiction
         // Register ourselves for server and other game events we are interested in
         MinecraftForge.EVENT_BUS.register(playTimeKick);
         MinecraftForge.EVENT_BUS.register(new CommandRegistry());
+        MinecraftForge.EVENT_BUS.addListener(this::onServerStarting);
+        MinecraftForge.EVENT_BUS.addListener(this::onServerStopping);
+        MinecraftForge.EVENT_BUS.addListener(this::onServerStopped);
     }
 
     private void commonSetup(final FMLCommonSetupEvent event) {
         LOGGER.info("HELLO FROM COMMON SETUP");
     }
+
+    private void onServerStarting(final ServerStartingEvent event) {
+        // 上一次关服时已关闭，这里显式重新启用
+        IoExecutors.start();
+        HttpClientRegistry.start();
+        ChatAPI.dialogues.getStore().startCompactor();
+        ChatAPI.dialogues.startEvictor();
+        CodeforcesAPI.startContestRefresh();
+        CodeforcesAPI.pinBondedHandles();
+    }
+
+    private void onServerStopping(final ServerStoppingEvent event) {
+        ChatAPI.dialogues.stopEvictor();
+        ChatAPI.dialogues.getStore().stop();
+        CodeforcesAPI.stopContestRefresh();
+        HttpClientRegistry.shutdown();
+        IoExecutors.shutdown();
+    }
+
+    // 所有功能都在 ServerStoppingEvent 里取消了自己的任务之后，再关闭共享的调度线程
+    private void onServerStopped(final ServerStoppedEvent event) {
+        ModScheduler.shutdown();
+    }
 }
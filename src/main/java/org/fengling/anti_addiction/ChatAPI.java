@@ -3,55 +3,166 @@ package org.fengling.anti_addiction;
 import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
 
-import java.io.IOException;
 import java.net.URI;
-import java.net.InetSocketAddress;
-import java.net.ProxySelector;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 public class ChatAPI {
 
-    // 存储对话上下文，可以使用 HashMap，key 可以是对话 ID (Player UUID), value 是 DialogueContext 对象
-    static final Map<String, DialogueContext> dialogueContextMap = new HashMap<>();
+    private static final Gson GSON = new Gson();
 
-    // 创建HTTPClient，根据配置决定是否使用代理
-    private static HttpClient createHttpClient(ModConfig config) {
-        HttpClient.Builder clientBuilder = HttpClient.newBuilder();
-        
-        // 检查是否启用代理
-        if (config.getServerConfig().isUseProxy()) {
-            String proxyHost = config.getServerConfig().getProxyHost();
-            int proxyPort = config.getServerConfig().getProxyPort();
-            
-            // 确保代理主机名不为空
-            if (proxyHost != null && !proxyHost.isEmpty()) {
-                Anti_addiction.LOGGER.info("Using proxy: {}:{}", proxyHost, proxyPort);
-                clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(proxyHost, proxyPort)));
-            } else {
-                Anti_addiction.LOGGER.warn("Proxy enabled but no proxy host specified, using direct connection");
-            }
+    // 存储对话上下文，key 是对话 ID (Player UUID)；空闲的对话会过期，总数有上限
+    static final DialogueRegistry dialogues = new DialogueRegistry(new DialogueStore(Paths.get("config/dialogues")));
+
+    // 单轮回复的缓存；相同的 prompt 同时到达时只发一次请求
+    static final ResponseCache responseCache = new ResponseCache();
+    static final SingleFlight<String, String> replyFlights = new SingleFlight<>();
+
+    public static String getChatReply(String model, String prompt) {
+        return joinReply(getChatReplyAsync(model, prompt));
+    }
+
+    public static String getDialogueReply(String model, String prompt, String dialogueId) {
+        return joinReply(getDialogueReplyAsync(model, prompt, dialogueId));
+    }
+
+    /**
+     * Sends a single prompt without any dialogue context. The future completes with the reply text, with
+     * {@code null} if the API returned no usable reply, or exceptionally if the request itself failed.
+     * No thread is blocked while waiting for the response. Replies are served from the response cache
+     * when possible, and identical prompts in flight at the same time share one request.
+     */
+    public static CompletableFuture<String> getChatReplyAsync(String model, String prompt) {
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        if (serverConfig.getResponseCacheTtlMinutes() <= 0) {
+            return sendAsync(GSON.toJson(singleTurnRequest(prompt)));
         }
-        
-        return clientBuilder.build();
+
+        String key = ResponseCache.key(model, prompt);
+        String cached = responseCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return replyFlights.run(key, () -> sendAsync(GSON.toJson(singleTurnRequest(prompt))).thenApply(aiReply -> {
+            cacheReply(key, aiReply);
+            return aiReply;
+        }));
     }
 
-    public static String getChatReply(String model, String prompt) {
-        // 从 ModConfig 加载配置
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json"); // 配置文件路径，请确保路径正确
-        String apiEndpoint = config.getServerConfig().getAiChatServerAddress();
-        String apiKey = config.getServerConfig().getApiKey();
+    /**
+     * Sends the prompt as the next turn of the dialogue {@code dialogueId}. The reply is appended to the
+     * dialogue context when the response arrives. Requests for the same dialogue are sent one after
+     * another in submission order; different dialogues proceed in parallel.
+     */
+    public static CompletableFuture<String> getDialogueReplyAsync(String model, String prompt, String dialogueId) {
+        return dialogues.submit(dialogueId, context -> {
+            String requestBody = prepareDialogueRequest(context, prompt);
 
-        // 创建可能带有代理设置的HttpClient
-        HttpClient client = createHttpClient(config);
+            return sendAsync(requestBody).thenApply(aiReply -> {
+                if (aiReply != null) {
+                    context.addModelMessage(aiReply); // 添加 AI 回复到上下文
+                    maybeCompact(context);
+                }
+                return aiReply;
+            });
+        });
+    }
 
-        Anti_addiction.LOGGER.info("Using API endpoint: {}", apiEndpoint);
+    /**
+     * Streams the reply to a single prompt. {@code onChunk} receives each text fragment as soon as it
+     * arrives, and the future completes with the full reply. If the configured endpoint is not a
+     * {@code generateContent} endpoint, the whole reply is delivered as one chunk.
+     */
+    public static CompletableFuture<String> streamChatReplyAsync(String model, String prompt, Consumer<String> onChunk) {
+        if (ConfigManager.server().getResponseCacheTtlMinutes() <= 0) {
+            return streamAsync(GSON.toJson(singleTurnRequest(prompt)), onChunk);
+        }
+
+        // 命中缓存时整段回复作为一个片段交出去；流式请求各自独立，不做合并
+        String key = ResponseCache.key(model, prompt);
+        String cached = responseCache.get(key);
+        if (cached != null) {
+            onChunk.accept(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+        return streamAsync(GSON.toJson(singleTurnRequest(prompt)), onChunk).thenApply(aiReply -> {
+            cacheReply(key, aiReply);
+            return aiReply;
+        });
+    }
+
+    public static CompletableFuture<String> streamDialogueReplyAsync(String model, String prompt, String dialogueId, Consumer<String> onChunk) {
+        return dialogues.submit(dialogueId, context -> {
+            String requestBody = prepareDialogueRequest(context, prompt);
+
+            return streamAsync(requestBody, onChunk).thenApply(aiReply -> {
+                if (aiReply != null) {
+                    context.addModelMessage(aiReply); // 流结束后把完整回复加入上下文
+                    maybeCompact(context);
+                }
+                return aiReply;
+            });
+        });
+    }
+
+    private static void cacheReply(String key, String aiReply) {
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        if (aiReply != null) {
+            responseCache.put(key, aiReply, serverConfig.getResponseCacheTtlMinutes() * 60_000L, serverConfig.getResponseCacheMaxKb() * 1024L);
+        }
+    }
 
+    // 添加用户消息，按字符预算裁掉最早的几轮，再拼出请求体
+    private static String prepareDialogueRequest(DialogueContext context, String prompt) {
+        context.addUserMessage(prompt); // 添加用户消息到上下文
+
+        int dropped = context.trimToBudget(ConfigManager.server().getDialogueMaxChars());
+        if (dropped > 0) {
+            Anti_addiction.LOGGER.info("Dropped {} old dialogue turns to stay within {} characters", dropped, ConfigManager.server().getDialogueMaxChars());
+        }
+        return context.toRequestBody();
+    }
+
+    // 对话用掉预算的 3/4 后，在后台把较早的几轮总结成摘要；总结失败时仍由 trimToBudget 兜底
+    private static void maybeCompact(DialogueContext context) {
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        if (!serverConfig.isDialogueSummarize() || context.getCharCount() < serverConfig.getDialogueMaxChars() * 3L / 4) {
+            return;
+        }
+        List<DialogueContext.Turn> oldTurns = context.beginCompaction();
+        if (oldTurns == null) {
+            return;
+        }
+
+        StringBuilder transcript = new StringBuilder();
+        for (DialogueContext.Turn turn : oldTurns) {
+            transcript.append(turn.role).append(": ").append(turn.text).append('\n');
+        }
+        String prompt = "Summarize the following conversation between a user and an assistant in a few sentences. "
+                + "Keep names, numbers and any facts the user may refer to later.\n\n" + transcript;
+
+        // 摘要的 prompt 每次都不同，不经过回复缓存
+        sendAsync(GSON.toJson(singleTurnRequest(prompt))).whenComplete((summary, e) -> {
+            if (e != null) {
+                Anti_addiction.LOGGER.warn("Dialogue summarization failed: {}", e.getMessage());
+                context.abortCompaction();
+            } else if (context.finishCompaction(oldTurns, summary)) {
+                Anti_addiction.LOGGER.info("Compacted {} dialogue turns into a summary", oldTurns.size());
+            }
+        });
+    }
+
+    private static Map<String, Object> singleTurnRequest(String prompt) {
         // 使用 Gemini API 格式构建请求体
         Map<String, Object> requestMap = new HashMap<>();
         
@@ -70,183 +181,152 @@ public class ChatAPI {
         contents.add(userMessage);
         
         requestMap.put("contents", contents);
-        
-        Gson gson = new Gson();
-        String requestBody = gson.toJson(requestMap);
-        
+        return requestMap;
+    }
+
+    private static CompletableFuture<String> sendAsync(String requestBody) {
+        // 从缓存的 ModConfig 读取配置
+        ModConfig config = ConfigManager.get();
+        String apiEndpoint = config.getServerConfig().getAiChatServerAddress();
+        String apiKey = config.getServerConfig().getApiKey();
+
+        // 共享的HttpClient，按代理设置缓存
+        HttpClient client = HttpClientRegistry.get();
+
+        Anti_addiction.LOGGER.info("Using API endpoint: {}", apiEndpoint);
+
         Anti_addiction.LOGGER.info("Request body: {}", requestBody);
         
         // Append API key to the URL if available
-        String finalEndpoint = apiEndpoint;
-        if (apiKey != null && !apiKey.trim().isEmpty()) {
-            finalEndpoint += "?key=" + apiKey;
-        }
-        
-        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .uri(URI.create(finalEndpoint))
-                .header("Content-Type", "application/json");
-        
-        HttpRequest request = requestBuilder
-                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                .build();
+        HttpRequest request = buildRequest(withApiKey(apiEndpoint, apiKey), requestBody).build();
 
         Anti_addiction.LOGGER.info("Request: {}", request);
 
-        try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString()); // 同步请求
-            int statusCode = response.statusCode();
-            Anti_addiction.LOGGER.info("Response code: {}", statusCode);
-            String responseBodyString = response.body();
-            Anti_addiction.LOGGER.info("Response body: {}", responseBodyString);
+        // 异步请求，响应在 HttpClient 的线程池里解析
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(ChatAPI::parseReply);
+    }
 
-            if (statusCode >= 200 && statusCode < 300) {
-                try {
-                    Map<String, Object> responseJson = gson.fromJson(responseBodyString, Map.class);
-
-                    // Gemini API 使用 candidates 而不是 choices
-                    List<Map<String, Object>> candidates = (List<Map<String, Object>>) responseJson.get("candidates");
-                    if (candidates != null && !candidates.isEmpty()) {
-                        Map<String, Object> firstCandidate = candidates.get(0);
-                        Map<String, Object> content = (Map<String, Object>) firstCandidate.get("content");
-                        if (content != null) {
-                            List<Map<String, Object>> contentParts = (List<Map<String, Object>>) content.get("parts");
-                            if (contentParts != null && !contentParts.isEmpty()) {
-                                String aiReply = (String) contentParts.get(0).get("text");
-                                return aiReply != null ? aiReply.trim() : null;
-                            } else {
-                                Anti_addiction.LOGGER.info("API 响应中 parts 字段为空");
-                                return null;
-                            }
-                        } else {
-                            Anti_addiction.LOGGER.info("API 响应中 content 字段为空");
-                            return null;
-                        }
-                    } else {
-                        Anti_addiction.LOGGER.info("API 响应中没有 candidates 字段或为空");
-                        return null;
-                    }
-                } catch (JsonParseException e) {
-                    Anti_addiction.LOGGER.info("JSON 解析异常: {}", e.getMessage());
-                    Anti_addiction.LOGGER.error("JSON 解析异常: {}", e.getMessage(), e);
-                    return null;
+    private static CompletableFuture<String> streamAsync(String requestBody, Consumer<String> onChunk) {
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        String streamEndpoint = streamingEndpoint(serverConfig.getAiChatServerAddress());
+        if (streamEndpoint == null) {
+            // 自定义的非 Gemini 接口不支持流式，退回到一次性回复
+            return sendAsync(requestBody).thenApply(aiReply -> {
+                if (aiReply != null) {
+                    onChunk.accept(aiReply);
                 }
-            } else {
-                Anti_addiction.LOGGER.error("API call failed. Status code: {}", statusCode);
-                Anti_addiction.LOGGER.error("Response body: {}", responseBodyString);
-                return null;
-            }
-
-        } catch (IOException | InterruptedException e) {
-            Anti_addiction.LOGGER.info("internet request error: {}", e.getMessage());
-            Anti_addiction.LOGGER.error("internet request error: {}", e.getMessage(), e);
-            return null;
+                return aiReply;
+            });
         }
-    }
-
-    public static String getDialogueReply(String model, String prompt, String dialogueId) {
-        DialogueContext context = dialogueContextMap.computeIfAbsent(dialogueId, k -> new DialogueContext());
 
-        context.addUserMessage(prompt); // 添加用户消息到上下文
+        Anti_addiction.LOGGER.info("Using streaming API endpoint: {}", streamEndpoint);
+        Anti_addiction.LOGGER.info("Request body: {}", requestBody);
 
-        // 从 ModConfig 加载配置
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        String apiEndpoint = config.getServerConfig().getAiChatServerAddress();
-        String apiKey = config.getServerConfig().getApiKey();
+        return streamAsync(HttpClientRegistry.get(), withApiKey(streamEndpoint, serverConfig.getApiKey()), requestBody, onChunk);
+    }
 
-        // 创建可能带有代理设置的HttpClient
-        HttpClient client = createHttpClient(config);
+    // 成功时按行交给 GeminiStreamSubscriber 增量解析；失败时读完整个错误响应并返回 null
+    static CompletableFuture<String> streamAsync(HttpClient client, String endpoint, String requestBody, Consumer<String> onChunk) {
+        HttpRequest request = buildRequest(endpoint, requestBody)
+                .header("Accept", "text/event-stream")
+                .build();
+        GeminiStreamSubscriber subscriber = new GeminiStreamSubscriber(onChunk);
 
-        Anti_addiction.LOGGER.info("Using API endpoint: {}", apiEndpoint);
+        return client.sendAsync(request, responseInfo -> {
+            int statusCode = responseInfo.statusCode();
+            Anti_addiction.LOGGER.info("Response code: {}", statusCode);
+            if (statusCode >= 200 && statusCode < 300) {
+                return HttpResponse.BodySubscribers.fromLineSubscriber(subscriber, GeminiStreamSubscriber::getText, StandardCharsets.UTF_8, null);
+            }
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), errorBody -> {
+                Anti_addiction.LOGGER.error("API call failed. Status code: {}", statusCode);
+                Anti_addiction.LOGGER.error("Response body: {}", errorBody);
+                return null;
+            });
+        }).thenApply(HttpResponse::body);
+    }
 
-        // 使用 Gemini API 格式构建请求体
-        Map<String, Object> requestMap = new HashMap<>();
-        requestMap.put("contents", context.getContents());
-        
-        Gson gson = new Gson();
-        String requestBody = gson.toJson(requestMap);
-        
-        Anti_addiction.LOGGER.info("Request body: {}", requestBody);
+    // generateContent 接口对应的 SSE 流式接口；不是 Gemini 格式的地址返回 null
+    static String streamingEndpoint(String apiEndpoint) {
+        if (apiEndpoint == null || !apiEndpoint.contains(":generateContent")) {
+            return null;
+        }
+        String endpoint = apiEndpoint.replace(":generateContent", ":streamGenerateContent");
+        return endpoint + (endpoint.contains("?") ? "&" : "?") + "alt=sse";
+    }
 
-        // Append API key to the URL if available
-        String finalEndpoint = apiEndpoint;
-        if (apiKey != null && !apiKey.trim().isEmpty()) {
-            finalEndpoint += "?key=" + apiKey;
+    private static String withApiKey(String endpoint, String apiKey) {
+        if (apiKey == null || apiKey.trim().isEmpty()) {
+            return endpoint;
         }
-        
-        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .uri(URI.create(finalEndpoint))
-                .header("Content-Type", "application/json");
-        
-        HttpRequest request = requestBuilder
-                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                .build();
+        return endpoint + (endpoint.contains("?") ? "&" : "?") + "key=" + apiKey;
+    }
 
-        Anti_addiction.LOGGER.info("Request: {}", request);
+    private static HttpRequest.Builder buildRequest(String endpoint, String requestBody) {
+        return HttpClientRegistry.newRequest(URI.create(endpoint))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody));
+    }
 
-        try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            int statusCode = response.statusCode();
-            Anti_addiction.LOGGER.info("Response code: {}", statusCode);
-            String responseBodyString = response.body();
-            Anti_addiction.LOGGER.info("Response body: {}", responseBodyString);
+    private static String parseReply(HttpResponse<String> response) {
+        int statusCode = response.statusCode();
+        Anti_addiction.LOGGER.info("Response code: {}", statusCode);
+        String responseBodyString = response.body();
+        Anti_addiction.LOGGER.info("Response body: {}", responseBodyString);
 
-            if (statusCode >= 200 && statusCode < 300) {
-                try {
-                    Map<String, Object> responseJson = gson.fromJson(responseBodyString, Map.class);
-
-                    // Gemini API 使用 candidates 而不是 choices
-                    List<Map<String, Object>> candidates = (List<Map<String, Object>>) responseJson.get("candidates");
-                    if (candidates != null && !candidates.isEmpty()) {
-                        Map<String, Object> firstCandidate = candidates.get(0);
-                        Map<String, Object> content = (Map<String, Object>) firstCandidate.get("content");
-                        if (content != null) {
-                            List<Map<String, Object>> contentParts = (List<Map<String, Object>>) content.get("parts");
-                            if (contentParts != null && !contentParts.isEmpty()) {
-                                String aiReply = (String) contentParts.get(0).get("text");
-                                if (aiReply != null) {
-                                    String trimmedReply = aiReply.trim();
-                                    context.addModelMessage(trimmedReply); // 添加 AI 回复到上下文
-                                    return trimmedReply;
-                                } else {
-                                    Anti_addiction.LOGGER.info("API 响应 text 内容为空");
-                                    return null;
-                                }
+        if (statusCode >= 200 && statusCode < 300) {
+            try {
+                Map<String, Object> responseJson = GSON.fromJson(responseBodyString, Map.class);
+
+                // Gemini API 使用 candidates 而不是 choices
+                List<Map<String, Object>> candidates = (List<Map<String, Object>>) responseJson.get("candidates");
+                if (candidates != null && !candidates.isEmpty()) {
+                    Map<String, Object> firstCandidate = candidates.get(0);
+                    Map<String, Object> content = (Map<String, Object>) firstCandidate.get("content");
+                    if (content != null) {
+                        List<Map<String, Object>> contentParts = (List<Map<String, Object>>) content.get("parts");
+                        if (contentParts != null && !contentParts.isEmpty()) {
+                            String aiReply = (String) contentParts.get(0).get("text");
+                            if (aiReply != null) {
+                                return aiReply.trim();
                             } else {
-                                Anti_addiction.LOGGER.info("API 响应中 parts 字段为空");
+                                Anti_addiction.LOGGER.info("API 响应 text 内容为空");
                                 return null;
                             }
                         } else {
-                            Anti_addiction.LOGGER.info("API 响应中 content 字段为空");
+                            Anti_addiction.LOGGER.info("API 响应中 parts 字段为空");
                             return null;
                         }
                     } else {
-                        Anti_addiction.LOGGER.info("API 响应中没有 candidates 字段或为空");
+                        Anti_addiction.LOGGER.info("API 响应中 content 字段为空");
                         return null;
                     }
-                } catch (JsonParseException e) {
-                    Anti_addiction.LOGGER.info("JSON 解析异常: {}", e.getMessage());
-                    Anti_addiction.LOGGER.error("JSON 解析异常: {}", e.getMessage(),e);
+                } else {
+                    Anti_addiction.LOGGER.info("API 响应中没有 candidates 字段或为空");
                     return null;
                 }
-            } else {
-                Anti_addiction.LOGGER.error("API call failed. Status code: {}", statusCode);
-                Anti_addiction.LOGGER.error("Response body: {}", responseBodyString);
+            } catch (JsonParseException e) {
+                Anti_addiction.LOGGER.info("JSON 解析异常: {}", e.getMessage());
+                Anti_addiction.LOGGER.error("JSON 解析异常: {}", e.getMessage(), e);
                 return null;
             }
-
-        } catch (IOException | InterruptedException e) {
-            Anti_addiction.LOGGER.info("internet request error: {}", e.getMessage());
-            Anti_addiction.LOGGER.error("internet request error: {}", e.getMessage(), e);
+        } else {
+            Anti_addiction.LOGGER.error("API call failed. Status code: {}", statusCode);
+            Anti_addiction.LOGGER.error("Response body: {}", responseBodyString);
             return null;
         }
     }
 
-    private static String buildDialogueRequestBody(String model, List<Map<String, Object>> contents) {
-        // 使用 Gson 库更方便地构建 JSON
-        Gson gson = new Gson();
-        Map<String, Object> requestBodyMap = new HashMap<>();
-        requestBodyMap.put("contents", contents);
-        return gson.toJson(requestBodyMap);
+    // 同步接口：等待异步结果，网络错误时和以前一样返回 null
+    private static String joinReply(CompletableFuture<String> replyFuture) {
+        try {
+            return replyFuture.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            Anti_addiction.LOGGER.info("internet request error: {}", cause.getMessage());
+            Anti_addiction.LOGGER.error("internet request error: {}", cause.getMessage(), cause);
+            return null;
+        }
     }
 
     public static void main(String[] args) {
@@ -263,12 +343,10 @@ public class ChatAPI {
         // 设置模型名称
         String modelName = "gemini-pro"; // 使用正确的模型名称
         
-        // 加载配置
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        
         // 如果用户输入了API Key，则覆盖配置文件中的设置
         if (inputApiKey != null && !inputApiKey.isEmpty()) {
-            config.getServerConfig().setApiKey(inputApiKey);
+            final String apiKey = inputApiKey;
+            ConfigManager.override(config -> config.getServerConfig().setApiKey(apiKey)); // 只改内存里的配置，不写回文件
             System.out.println("正在使用输入的API Key进行测试");
         } else {
             System.out.println("正在使用配置文件中的API Key进行测试");
@@ -308,7 +386,7 @@ public class ChatAPI {
             testDialogueChat(modelName);
         }
     }
-    
+
     private static void testDialogueChat(String modelName) {
         try {
             String dialogueId = "test-" + System.currentTimeMillis();
@@ -340,47 +418,3 @@ public class ChatAPI {
         }
     }
 }
-
-
-// 修改 DialogueContext 类以适应 Gemini API 格式
-class DialogueContext {
-    private List<Map<String, Object>> contents;
-
-    public DialogueContext() {
-        this.contents = new ArrayList<>();
-    }
-
-    public List<Map<String, Object>> getContents() {
-        return contents;
-    }
-
-    public void addUserMessage(String text) {
-        Map<String, Object> message = new HashMap<>();
-        message.put("role", "user");
-        
-        List<Map<String, String>> parts = new ArrayList<>();
-        Map<String, String> textPart = new HashMap<>();
-        textPart.put("text", text);
-        parts.add(textPart);
-        
-        message.put("parts", parts);
-        this.contents.add(message);
-    }
-
-    public void addModelMessage(String text) {
-        Map<String, Object> message = new HashMap<>();
-        message.put("role", "model");  // Gemini API 使用 "model" 而不是 "assistant"
-        
-        List<Map<String, String>> parts = new ArrayList<>();
-        Map<String, String> textPart = new HashMap<>();
-        textPart.put("text", text);
-        parts.add(textPart);
-        
-        message.put("parts", parts);
-        this.contents.add(message);
-    }
-
-    public void clearMessages() {
-        this.contents.clear();
-    }
-}
\ No newline at end of file
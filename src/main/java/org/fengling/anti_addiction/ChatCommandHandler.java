@@ -8,6 +8,7 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ChatCommandHandler {
 
@@ -18,9 +19,8 @@ public class ChatCommandHandler {
     }
 
     public int executeChatConfigSet(CommandSourceStack source, String url) {
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        config.getServerConfig().setAiChatServerAddress(url);
-        config.saveConfig("config/mod_config.json");
+        ConfigManager.update(config -> config.getServerConfig().setAiChatServerAddress(url));
+        ChatAPI.responseCache.flush(); // 换了接口，之前缓存的回复不再适用
 
         source.sendSystemMessage(Component.literal("Chat API Server URL set to: " + url).withStyle(ChatFormatting.GREEN));
         Anti_addiction.LOGGER.info("Chat API Server URL set to: {}", url);
@@ -28,9 +28,7 @@ public class ChatCommandHandler {
     }
     
     public int executeChatConfigSetApiKey(CommandSourceStack source, String apiKey) {
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        config.getServerConfig().setApiKey(apiKey);
-        config.saveConfig("config/mod_config.json");
+        ConfigManager.update(config -> config.getServerConfig().setApiKey(apiKey));
 
         source.sendSystemMessage(Component.literal("Chat API Key set successfully").withStyle(ChatFormatting.GREEN));
         Anti_addiction.LOGGER.info("Chat API Key set successfully");
@@ -62,10 +60,14 @@ public class ChatCommandHandler {
 
         String playerDialogueId = player.getUUID().toString();
 
+        if (ConfigManager.server().isStreamChatReplies()) {
+            return streamAiQuery(source, content, modelName, useDialogue, playerDialogueId);
+        }
+
         if (useDialogue) {
-            aiReplyFuture = CompletableFuture.supplyAsync(() -> ChatAPI.getDialogueReply(modelName, content, playerDialogueId));
+            aiReplyFuture = ChatAPI.getDialogueReplyAsync(modelName, content, playerDialogueId);
         } else {
-            aiReplyFuture = CompletableFuture.supplyAsync(() -> ChatAPI.getChatReply(modelName, content));
+            aiReplyFuture = ChatAPI.getChatReplyAsync(modelName, content);
         }
 
         aiReplyFuture.thenAccept(aiReply -> {
@@ -88,6 +90,39 @@ public class ChatCommandHandler {
         return 1;
     }
 
+    // 流式回复：每攒够一句话（或 250 ms）就切回服务器线程发给玩家，玩家等待的只是第一个片段的延迟
+    private int streamAiQuery(CommandSourceStack source, String content, String modelName, boolean useDialogue, String playerDialogueId) {
+        MinecraftServer server = source.getServer();
+        String displayName = modelName.replace("-Thinking", "");
+        AtomicBoolean firstChunk = new AtomicBoolean(true);
+
+        ChatStreamBatcher batcher = new ChatStreamBatcher(text -> server.execute(() -> {
+            MutableComponent chunkComponent = Component.literal(text).withStyle(ChatFormatting.WHITE);
+            if (firstChunk.getAndSet(false)) {
+                chunkComponent = Component.literal(displayName + " Reply: ").withStyle(ChatFormatting.GREEN).append(chunkComponent);
+            }
+            source.sendSystemMessage(chunkComponent);
+        }));
+
+        CompletableFuture<String> aiReplyFuture = useDialogue
+                ? ChatAPI.streamDialogueReplyAsync(modelName, content, playerDialogueId, batcher::append)
+                : ChatAPI.streamChatReplyAsync(modelName, content, batcher::append);
+
+        aiReplyFuture.whenComplete((aiReply, e) -> {
+            batcher.finish();
+            if (e != null) {
+                server.execute(() -> {
+                    commandRegistry.sendErrorMessage(source, "Failed to get " + displayName + " reply, Error: " + e.getMessage());
+                    Anti_addiction.LOGGER.error("Failed to get {} reply", modelName, e);
+                });
+            } else if (aiReply == null) {
+                server.execute(() -> commandRegistry.sendErrorMessage(source, "Failed to get " + displayName + " reply.  Check the server logs."));
+            }
+        });
+
+        return 1;
+    }
+
     public int executeChatClear(CommandSourceStack source) {
         if (!(source.getEntity() instanceof ServerPlayer)) {
             commandRegistry.sendErrorMessage(source, "This command can only be executed by a player.");
@@ -96,8 +131,7 @@ public class ChatCommandHandler {
         ServerPlayer player = (ServerPlayer) source.getEntity();
         String playerDialogueId = player.getUUID().toString();
 
-        if (ChatAPI.dialogueContextMap.containsKey(playerDialogueId)) {
-            ChatAPI.dialogueContextMap.remove(playerDialogueId);
+        if (ChatAPI.dialogues.remove(playerDialogueId)) {
             source.sendSystemMessage(Component.literal("Chat history cleared.").withStyle(ChatFormatting.GREEN));
             Anti_addiction.LOGGER.info("Chat history cleared for player: {}", player.getName().getString());
         } else {
@@ -106,57 +140,44 @@ public class ChatCommandHandler {
         return 1;
     }
     
+    public int executeChatCacheFlush(CommandSourceStack source) {
+        int flushed = ChatAPI.responseCache.flush();
+        source.sendSystemMessage(Component.literal("Response cache flushed (" + flushed + " entries).").withStyle(ChatFormatting.GREEN));
+        Anti_addiction.LOGGER.info("Response cache flushed ({} entries)", flushed);
+        return 1;
+    }
+
     // --- Proxy Command Methods ---
     public int executeChatProxyEnable(CommandSourceStack source, boolean enable) {
-        // Load the current config
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        
-        // Set the proxy enabled status
-        config.getServerConfig().setUseProxy(enable);
-        
-        // Save the config
-        config.saveConfig("config/mod_config.json");
+        // Set the proxy enabled status and save the config
+        ConfigManager.update(config -> config.getServerConfig().setUseProxy(enable));
         
         source.sendSuccess(() -> Component.literal("Proxy " + (enable ? "enabled" : "disabled")), true);
         return 1;
     }
     
     public int executeChatProxyHost(CommandSourceStack source, String host) {
-        // Load the current config
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        
-        // Set the proxy host
-        config.getServerConfig().setProxyHost(host);
-        
-        // Save the config
-        config.saveConfig("config/mod_config.json");
+        // Set the proxy host and save the config
+        ConfigManager.update(config -> config.getServerConfig().setProxyHost(host));
         
         source.sendSuccess(() -> Component.literal("Proxy host set to: " + host), true);
         return 1;
     }
     
     public int executeChatProxyPort(CommandSourceStack source, int port) {
-        // Load the current config
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        
-        // Set the proxy port
-        config.getServerConfig().setProxyPort(port);
-        
-        // Save the config
-        config.saveConfig("config/mod_config.json");
+        // Set the proxy port and save the config
+        ConfigManager.update(config -> config.getServerConfig().setProxyPort(port));
         
         source.sendSuccess(() -> Component.literal("Proxy port set to: " + port), true);
         return 1;
     }
     
     public int executeChatProxyStatus(CommandSourceStack source) {
-        // Load the current config
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        
-        // Get proxy settings
-        boolean enabled = config.getServerConfig().isUseProxy();
-        String host = config.getServerConfig().getProxyHost();
-        int port = config.getServerConfig().getProxyPort();
+        // Get proxy settings from the current config
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        boolean enabled = serverConfig.isUseProxy();
+        String host = serverConfig.getProxyHost();
+        int port = serverConfig.getProxyPort();
         
         // Send status message
         source.sendSuccess(() -> Component.literal("Proxy status:"), false);
@@ -0,0 +1,76 @@
+package org.fengling.anti_addiction;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// 把流式回复的小片段攒成整句再发给玩家：遇到句末标点立即发送，否则最多攒 250 ms
+public class ChatStreamBatcher {
+
+    static final long FLUSH_INTERVAL_MILLIS = 250;
+
+    private final Consumer<String> sink;
+    private final StringBuilder pending = new StringBuilder();
+    private ScheduledFuture<?> flushTask;
+
+    public ChatStreamBatcher(Consumer<String> sink) {
+        this.sink = sink;
+    }
+
+    public synchronized void append(String text) {
+        pending.append(text);
+        int end = lastSentenceEnd(pending);
+        if (end >= 0) {
+            emit(pending.substring(0, end + 1));
+            pending.delete(0, end + 1);
+        }
+
+        if (pending.length() == 0) {
+            cancelFlush();
+        } else if (flushTask == null || flushTask.isDone()) {
+            flushTask = ModScheduler.schedule("chat stream flush", this::flush, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 流结束时调用，把剩下的半句话也发出去
+    public synchronized void finish() {
+        cancelFlush();
+        flush();
+    }
+
+    private synchronized void flush() {
+        flushTask = null;
+        if (pending.length() > 0) {
+            emit(pending.toString());
+            pending.setLength(0);
+        }
+    }
+
+    private void cancelFlush() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+
+    private void emit(String text) {
+        String trimmed = text.trim();
+        if (!trimmed.isEmpty()) {
+            sink.accept(trimmed);
+        }
+    }
+
+    // 最后一个句末位置；英文标点后面要跟空白才算，避免把 3.14 或网址拆开
+    static int lastSentenceEnd(CharSequence text) {
+        for (int i = text.length() - 1; i >= 0; i--) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '。' || c == '！' || c == '？') {
+                return i;
+            }
+            if ((c == '.' || c == '!' || c == '?') && i + 1 < text.length() && Character.isWhitespace(text.charAt(i + 1))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
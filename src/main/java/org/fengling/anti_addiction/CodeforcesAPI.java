@@ -2,16 +2,20 @@ package org.fengling.anti_addiction;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class CodeforcesAPI {
 
@@ -19,6 +23,24 @@ public class CodeforcesAPI {
     private static final String CONTEST_LIST_API_URL = "https://codeforces.com/api/contest.list";
     private static final String MIRROR_CODEFORCES_URL = "https://mirror.codeforces.com/"; // mirror.codeforces.com 网址
 
+    // 同时发起的 contest.list 刷新只发一次请求；contest.list 有几 MB，由后台任务定时合并进 contestIndex，/cf contest 直接查索引
+    private static final SingleFlight<String, Object> flights = new SingleFlight<>();
+    private static final String CONTEST_LIST_KEY = "contest.list";
+    // /cf contest 显示的已开始比赛的时间范围
+    public static final long RECENT_CONTEST_SECONDS = 3 * 24 * 60 * 60;
+    private static final ContestIndex contestIndex = new ContestIndex(Paths.get("config/codeforces_contests.dat"));
+    private static ScheduledFuture<?> contestRefreshTask;
+    // /cf query 浏览过的网页文本，按 URL 缓存，见 getMirrorCodeforcesPageSourceAsync
+    private static final PageCache pageCache = new PageCache(Paths.get("config/page_cache"));
+    // 不同 handle 的查询在 50 ms 内合并成一个 user.info 请求
+    private static final UserInfoBatcher userInfoBatcher = new UserInfoBatcher((handles, priority) -> fetchAsync(USER_INFO_API_URL + String.join(";", handles), priority));
+    // Codeforces 限制每个 IP 大约每 2 秒一次 API 调用；所有 API 请求都从这里排队发出
+    private static final RateLimiter rateLimiter = new RateLimiter("Codeforces API", () -> ConfigManager.server().getCodeforcesRequestIntervalMillis(), 1);
+    // rating 只在比赛后变化：userInfoFreshMinutes 内直接返回，之后先返回旧值再在后台刷新；不存在的 handle 缓存 codeforcesCacheSeconds 秒
+    private static final UserInfoCache userInfoCache = new UserInfoCache(userInfoBatcher::lookup,
+            () -> ConfigManager.server().getUserInfoFreshMinutes() * 60_000L,
+            () -> ConfigManager.server().getCodeforcesCacheSeconds() * 1000L);
+
     // --- User Info Functionality ---
 
     // ... (UserInfo, CodeforcesResponse, getUserInfoJson, parseUserInfoJson 类和方法保持不变)
@@ -57,64 +79,73 @@ public class CodeforcesAPI {
 
     public static class CodeforcesResponse {
         public String status;
+        public String comment; // status 为 FAILED 时的原因
         public List<UserInfo> result;
 
         @Override
         public String toString() { // For debugging
             return "CodeforcesResponse{" +
                     "status='" + status + '\'' +
+                    ", comment='" + comment + '\'' +
                     ", result=" + result +
                     '}';
         }
     }
 
     public static String getUserInfoJson(String handle) {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(USER_INFO_API_URL + handle))
-                .build();
-
         try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            return response.body();
-        } catch (IOException | InterruptedException e) {
-            Anti_addiction.LOGGER.error("Error fetching Codeforces user data: {}", e.getMessage());
+            return new String(fetchAsync(USER_INFO_API_URL + handle, RateLimiter.Priority.INTERACTIVE).join(), StandardCharsets.UTF_8);
+        } catch (CompletionException e) {
+            Anti_addiction.LOGGER.error("Error fetching Codeforces user data: {}", e.getCause().getMessage());
             return null;  // Or handle the error differently
         }
     }
 
-    public static CodeforcesResponse parseUserInfoJson(String json) {
-        CodeforcesResponse response = new CodeforcesResponse();
-        response.result = new ArrayList<>();
+    /**
+     * Looks up {@code user.info} for one handle through {@link UserInfoCache}: cached users (fresh or
+     * stale) are returned without waiting, concurrent lookups of the same handle share one request, and
+     * lookups of different handles arriving close together are combined into one request.
+     */
+    public static CompletableFuture<CodeforcesResponse> getUserInfoAsync(String handle) {
+        return userInfoCache.get(handle).thenApply(user -> toUserInfoResponse(handle, user));
+    }
 
-        try {
-            Map<String, Object> parsedData = (Map<String, Object>) GenericJsonParser.parse(json);
-
-            response.status = (String) parsedData.get("status");
-
-            List<Map<String, Object>> results = (List<Map<String, Object>>) parsedData.get("result");
-            if (results != null) {
-                for (Map<String, Object> result : results) {
-                    UserInfo userInfo = new UserInfo();
-                    userInfo.contribution = ((Number) result.get("contribution")).intValue();
-                    userInfo.lastOnlineTimeSeconds = ((Number) result.get("lastOnlineTimeSeconds")).longValue();
-                    userInfo.organization = (String) result.get("organization");
-                    userInfo.rating = ((Number) result.get("rating")).intValue();
-                    userInfo.friendOfCount = ((Number) result.get("friendOfCount")).intValue();
-                    userInfo.titlePhoto = (String) result.get("titlePhoto");
-                    userInfo.rank = (String) result.get("rank");
-                    userInfo.handle = (String) result.get("handle");
-                    userInfo.maxRating = ((Number) result.get("maxRating")).intValue();
-                    userInfo.avatar = (String) result.get("avatar");
-                    userInfo.registrationTimeSeconds = ((Number) result.get("registrationTimeSeconds")).longValue();
-                    userInfo.maxRank = (String) result.get("maxRank");
-
-                    response.result.add(userInfo);
-                }
+    // 绑定了 Codeforces ID 的 handle 常驻缓存，服务器启动和玩家绑定新 ID 时调用
+    public static void pinBondedHandles() {
+        List<String> handles = new ArrayList<>();
+        for (ModConfig.PlayerConfig playerConfig : ConfigManager.get().getPlayerConfigs()) {
+            if (playerConfig.getCodeforcesID() != null && !playerConfig.getCodeforcesID().isEmpty()) {
+                handles.add(playerConfig.getCodeforcesID());
             }
+        }
+        userInfoCache.pin(handles);
+    }
+
+    public static UserInfoCache userInfoCache() {
+        return userInfoCache;
+    }
+
+    // 批量请求拆出来的单个结果，包装成和单独请求一样的响应
+    private static CodeforcesResponse toUserInfoResponse(String handle, UserInfo user) {
+        CodeforcesResponse response = new CodeforcesResponse();
+        response.result = new ArrayList<>();
+        if (user != null) {
+            response.status = "OK";
+            response.result.add(user);
+        } else {
+            response.status = "FAILED";
+            response.comment = "handles: User with handle " + handle + " not found";
+        }
+        return response;
+    }
 
-            return response;
+    public static long userInfoRequestCount() {
+        return userInfoBatcher.requestsSent();
+    }
 
+    public static CodeforcesResponse parseUserInfoJson(String json) {
+        try {
+            return CodeforcesJsonDecoder.decodeUserInfo(json.getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
             Anti_addiction.LOGGER.error("Error parsing UserInfo JSON: {}", e.getMessage());
             return null;
@@ -177,52 +208,100 @@ public class CodeforcesAPI {
 
 
     public static String getRecentContestsJson() {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(CONTEST_LIST_API_URL))
-                .build();
-
         try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            return response.body();
-        } catch (IOException | InterruptedException e) {
-            Anti_addiction.LOGGER.error("Error fetching Codeforces contest list: {}", e.getMessage());
+            return new String(fetchAsync(CONTEST_LIST_API_URL, RateLimiter.Priority.INTERACTIVE).join(), StandardCharsets.UTF_8);
+        } catch (CompletionException e) {
+            Anti_addiction.LOGGER.error("Error fetching Codeforces contest list: {}", e.getCause().getMessage());
             return null;
         }
     }
 
-    public static ContestListResponse parseContestListJson(String json) {
+    /**
+     * Returns the upcoming contests and those started in the last {@link #RECENT_CONTEST_SECONDS}, served
+     * from the local contest index. The index is loaded from its snapshot at startup and refreshed in the
+     * background every {@code contestRefreshMinutes}; only an empty index makes the caller wait for the
+     * network, and a stale one is answered as is while a refresh runs.
+     */
+    public static CompletableFuture<ContestListResponse> getContestListAsync() {
+        if (contestIndex.isEmpty()) {
+            return refreshContestIndex(RateLimiter.Priority.INTERACTIVE).thenApply(changed -> recentContests());
+        }
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        long ttlMillis = serverConfig.getCodeforcesCacheSeconds() * 1000L;
+        if (serverConfig.getContestRefreshMinutes() > 0) {
+            // 后台刷新失败一次也不用急着现场下载
+            ttlMillis = Math.max(ttlMillis, serverConfig.getContestRefreshMinutes() * 2 * 60_000L);
+        }
+        if (System.currentTimeMillis() - contestIndex.refreshedAtMillis() >= ttlMillis) {
+            refreshContestList();
+        }
+        return CompletableFuture.completedFuture(recentContests());
+    }
+
+    public static ContestIndex contestIndex() {
+        return contestIndex;
+    }
+
+    private static ContestListResponse recentContests() {
         ContestListResponse response = new ContestListResponse();
-        response.result = new ArrayList<>();
+        response.status = "OK";
+        response.result = contestIndex.startedSince(System.currentTimeMillis() / 1000 - RECENT_CONTEST_SECONDS);
+        return response;
+    }
 
-        try {
-            Map<String, Object> parsedData = (Map<String, Object>) GenericJsonParser.parse(json);
-            response.status = (String) parsedData.get("status");
-            List<Map<String, Object>> results = (List<Map<String, Object>>) parsedData.get("result");
-
-            if (results != null) {
-                for (Map<String, Object> contestData : results) {
-                    ContestInfo contestInfo = new ContestInfo();
-                    contestInfo.id = ((Number) contestData.get("id")).intValue();
-                    contestInfo.name = (String) contestData.get("name");
-                    contestInfo.type = (String) contestData.get("type");
-                    contestInfo.phase = (String) contestData.get("phase");
-                    contestInfo.startTimeSeconds = ((Number) contestData.get("startTimeSeconds")).longValue();
-                    contestInfo.durationSeconds = ((Number) contestData.get("durationSeconds")).intValue();
-                    contestInfo.preparedBy = (String) contestData.get("preparedBy");
-                    contestInfo.websiteUrl = (String) contestData.get("websiteUrl");
-                    contestInfo.description = (String) contestData.get("description");
-                    contestInfo.difficulty = (String) contestData.get("difficulty");
-                    contestInfo.icpcRegion = (String) contestData.get("icpcRegion");
-                    contestInfo.country = (String) contestData.get("country");
-                    contestInfo.city = (String) contestData.get("city");
-                    contestInfo.season = (String) contestData.get("season");
-
-                    response.result.add(contestInfo);
-                }
+    // 先从快照加载索引；快照还新鲜时第一次刷新推迟到它过期
+    public static synchronized void startContestRefresh() {
+        if (contestIndex.isEmpty()) {
+            contestIndex.load();
+        }
+        int refreshMinutes = ConfigManager.server().getContestRefreshMinutes();
+        if (contestRefreshTask == null && refreshMinutes > 0) {
+            long ageMillis = System.currentTimeMillis() - contestIndex.refreshedAtMillis();
+            long initialDelayMillis = Math.max(0, refreshMinutes * 60_000L - ageMillis);
+            contestRefreshTask = ModScheduler.scheduleWithFixedDelay("contest list refresh", CodeforcesAPI::refreshContestList,
+                    initialDelayMillis, refreshMinutes * 60_000L, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static synchronized void stopContestRefresh() {
+        if (contestRefreshTask != null) {
+            contestRefreshTask.cancel(false);
+            contestRefreshTask = null;
+        }
+    }
+
+    private static void refreshContestList() {
+        long start = System.nanoTime();
+        refreshContestIndex(RateLimiter.Priority.BACKGROUND).whenComplete((changed, e) -> {
+            if (e != null) {
+                Anti_addiction.LOGGER.warn("Background contest list refresh failed: {}", e.getMessage());
+            } else {
+                Anti_addiction.LOGGER.info("Contest index refreshed: {} changed, {} contests, {} ms", changed, contestIndex.size(), (System.nanoTime() - start) / 1_000_000);
             }
-            return response;
+        });
+    }
+
+    // 下载 contest.list 并把变化合并进索引，结果是变化的比赛数；和同时发起的刷新共用一个请求
+    // 列表从新到旧排列，解析到第一个已经稳定的比赛（索引里有相同记录且结束超过一周）就停止，索引为空时才完整解析
+    private static CompletableFuture<Integer> refreshContestIndex(RateLimiter.Priority priority) {
+        return flights.run(CONTEST_LIST_KEY, () -> fetchAsync(CONTEST_LIST_API_URL, priority).thenApply(body -> {
+            boolean complete = contestIndex.isEmpty();
+            ContestListResponse response;
+            try {
+                response = CodeforcesJsonDecoder.decodeContestList(body, complete ? contest -> false : contestIndex::isSettled);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            if (!"OK".equals(response.status)) {
+                throw new CompletionException(new IOException("contest.list returned " + response.status));
+            }
+            return (Object) contestIndex.merge(response.result, complete);
+        })).thenApply(changed -> (Integer) changed);
+    }
 
+    public static ContestListResponse parseContestListJson(String json) {
+        try {
+            return CodeforcesJsonDecoder.decodeContestList(json.getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
             Anti_addiction.LOGGER.error("Error parsing ContestList JSON: {}", e.getMessage());
             return null;
@@ -230,44 +309,119 @@ public class CodeforcesAPI {
     }
 
 
+    // --- Shared fetching and caching ---
+
+    // 经过限流器发出；被限流的响应会退避后重试，重试用完后把最后一次的响应体交给调用方
+    // 响应体保持 UTF-8 字节，由 CodeforcesJsonDecoder 直接解析，不先解码成几 MB 的 String
+    private static CompletableFuture<byte[]> fetchAsync(String url, RateLimiter.Priority priority) {
+        HttpRequest request = HttpClientRegistry.newRequest(URI.create(url)).build();
+        return rateLimiter.submit(priority, () -> HttpClientRegistry.get().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()), CodeforcesAPI::isThrottled)
+                .thenApply(HttpResponse::body);
+    }
+
+    // 429/503，或者 API 返回 FAILED 且原因是调用频率超限；FAILED 的响应都很短，大的响应体不用检查
+    private static boolean isThrottled(HttpResponse<byte[]> response) {
+        int status = response.statusCode();
+        if (status == 429 || status == 503) {
+            return true;
+        }
+        byte[] body = response.body();
+        if (body == null || body.length > 4096) {
+            return false;
+        }
+        String text = new String(body, StandardCharsets.UTF_8);
+        return text.contains("\"FAILED\"") && text.contains("Call limit exceeded");
+    }
+
+    public static RateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    public static long coalescedRequestCount() {
+        return flights.coalescedCount();
+    }
+
     // --- Mirror Codeforces Page Source ---
 
     /**
-     * 获取 mirror.codeforces.com 网页的 HTML 源代码.
+     * 获取 mirror.codeforces.com 网页的文本内容（去掉标签、脚本和样式，最多 browseTextMaxChars 个字符）.
      *
-     * @return 网页源代码字符串，如果获取失败则返回 null.
+     * @return 网页文本，如果获取失败则返回 null.
      */
     public static String getMirrorCodeforcesPageSource(String webPageUrl) {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(webPageUrl))
-                .build();
+        try {
+            return getMirrorCodeforcesPageSourceAsync(webPageUrl).join();
+        } catch (CompletionException e) {
+            Anti_addiction.LOGGER.error("Error fetching webpage content from: {}", webPageUrl, e.getCause());
+            return null;
+        }
+    }
 
+    // 异步版本：边下载边提取文本（HtmlTextExtractor），提取到 browseTextMaxChars 个字符后取消下载
+    // 提取好的文本放进 pageCache：pageCacheFreshMinutes 内直接返回，之后带 If-None-Match / If-Modified-Since 重新验证，
+    // 页面没变时服务器返回不带正文的 304；重新验证失败时退回到缓存的旧文本
+    public static CompletableFuture<String> getMirrorCodeforcesPageSourceAsync(String webPageUrl) {
+        return getMirrorCodeforcesPageSourceAsync(webPageUrl, ConfigManager.server().getPageCacheFreshMinutes() * 60_000L);
+    }
+
+    // freshMillis 内的缓存直接返回，0 表示每次都重新验证
+    public static CompletableFuture<String> getMirrorCodeforcesPageSourceAsync(String webPageUrl, long freshMillis) {
+        HttpRequest.Builder builder;
         try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            String html = response.body();
+            builder = HttpClientRegistry.newRequest(URI.create(webPageUrl));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e); // LLM 给出的 URL 可能不合法
+        }
 
-            StringBuilder textContent = new StringBuilder();
-            boolean inTag = false; // 标记当前是否在 HTML 标签内
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        int maxChars = serverConfig.getBrowseTextMaxChars();
+        long maxBytes = serverConfig.getPageCacheMaxKb() * 1024L;
+        if (maxBytes <= 0) {
+            return HttpClientRegistry.get().sendAsync(builder.build(), HtmlTextExtractor.handler(maxChars)).thenApply(HttpResponse::body);
+        }
 
-            for (int i = 0; i < html.length(); i++) {
-                char currentChar = html.charAt(i);
+        boolean useDisk = serverConfig.isPageCacheOnDisk();
+        PageCache.Page cachedPage = pageCache.get(webPageUrl, maxBytes, useDisk);
+        if (cachedPage != null && System.currentTimeMillis() - cachedPage.fetchedAtMillis < freshMillis) {
+            pageCache.recordHit();
+            return CompletableFuture.completedFuture(cachedPage.text);
+        }
+        if (cachedPage != null && cachedPage.etag != null) {
+            builder.header("If-None-Match", cachedPage.etag);
+        }
+        if (cachedPage != null && cachedPage.lastModified != null) {
+            builder.header("If-Modified-Since", cachedPage.lastModified);
+        }
 
-                if (currentChar == '<') {
-                    inTag = true; // 进入 HTML 标签
-                } else if (currentChar == '>') {
-                    inTag = false; // 结束 HTML 标签
-                } else if (!inTag) {
-                    textContent.append(currentChar); // 如果不在 HTML 标签内，则将字符添加到文本内容中
+        HttpResponse.BodyHandler<String> handler = responseInfo -> responseInfo.statusCode() == 304
+                ? HttpResponse.BodySubscribers.replacing(null)
+                : HtmlTextExtractor.handler(maxChars).apply(responseInfo);
+        return HttpClientRegistry.get().sendAsync(builder.build(), handler).handle((response, e) -> {
+            if (e != null) {
+                if (cachedPage == null) {
+                    throw new CompletionException(e);
                 }
+                Anti_addiction.LOGGER.warn("Revalidating {} failed, using the cached copy: {}", webPageUrl, e.getMessage());
+                return cachedPage.text;
             }
+            if (response.statusCode() == 304 && cachedPage != null) {
+                pageCache.recordRevalidated();
+                return pageCache.touch(cachedPage, maxBytes, useDisk).text;
+            }
+            pageCache.recordMiss();
+            String text = response.body();
+            if (response.statusCode() == 200 && text != null) {
+                pageCache.put(new PageCache.Page(webPageUrl, text,
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null),
+                        System.currentTimeMillis()), maxBytes, useDisk);
+            }
+            return text;
+        });
+    }
 
-            return textContent.toString().trim(); // 返回提取的文本内容，并去除首尾空格
-
-        } catch (IOException | InterruptedException e) {
-            Anti_addiction.LOGGER.error("Error fetching webpage content from: {}", webPageUrl, e);
-            return null;
-        }
+    public static PageCache pageCache() {
+        return pageCache;
     }
 
 
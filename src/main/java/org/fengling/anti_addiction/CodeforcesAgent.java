@@ -86,8 +86,7 @@ public class CodeforcesAgent {
             String promptTemplate = "Determine if the question below is related to the Codeforces programming contest website (especially mirror.codeforces.com). Question: '%s'.  Answer **EXACTLY** with 'Yes' or 'No' **ONLY**. Do not provide any explanations or additional words.";
             String prompt = String.format(promptTemplate, escapeStringForJson(query));
             LOGGER.info("CheckerAgent Prompt: \n{}", prompt); // AI thinking - Checker prompt
-            return CompletableFuture.supplyAsync(() -> {
-                String response = chatAPI.getChatReply(MODEL_NAME, prompt);
+            return chatAPI.getChatReplyAsync(MODEL_NAME, prompt).thenApply(response -> {
                 LOGGER.info("CheckerAgent Response: {}", response); // AI thinking - Checker response
                 return response != null && response.trim().equalsIgnoreCase("Yes");
             });
@@ -105,8 +104,7 @@ public class CodeforcesAgent {
             String promptTemplate = "For the Codeforces question: '%s', suggest the *most direct* source to get the answer.  Ideally, if the answer can be obtained directly and efficiently through the Codeforces API, suggest the **complete and valid Codeforces API URL** (e.g., 'https://codeforces.com/api/contest.list'). If browsing a webpage is more appropriate, then suggest a specific and relevant full URL **exclusively from mirror.codeforces.com (including https://mirror.codeforces.com/)**.  **Ensure the answer is a valid URL. Return ONLY the valid URL.** No explanation needed, and **do not suggest URLs from codeforces.com, only use mirror.codeforces.com for webpages.**";
             String prompt = String.format(promptTemplate, escapeStringForJson(codeforcesQuery));
             LOGGER.info("PlannerAgent Prompt: \n{}", prompt); // AI thinking - Planner prompt
-            return CompletableFuture.supplyAsync(() -> {
-                String response = chatAPI.getChatReply(MODEL_NAME, prompt);
+            return chatAPI.getChatReplyAsync(MODEL_NAME, prompt).thenApply(response -> {
                 LOGGER.info("PlannerAgent Response: {}", response); // AI thinking - Planner response
                 return response;
             });
@@ -122,18 +120,22 @@ public class CodeforcesAgent {
         }
 
         public CompletableFuture<String> browseUrlAndGetContent(String urlToBrowse) { // New method for browsing and content retrieval
-            return CompletableFuture.supplyAsync(() -> {
-                LOGGER.info("Executor Agent browsing URL: {}", urlToBrowse); // Player feedback already in handleCodeforcesQuery
-                String webpageContent = CodeforcesAPI.getMirrorCodeforcesPageSource(urlToBrowse); // Use CodeforcesAPI to fetch webpage content from mirror site
-                if (webpageContent != null) {
-                    LOGGER.info("Webpage content fetched successfully (length: {} characters).", webpageContent.length());
-                    return webpageContent;
-                } else {
-                    String errorMessage = "Failed to fetch content from URL: " + urlToBrowse;
-                    LOGGER.error(errorMessage);
-                    return errorMessage; // Return error message as content
-                }
-            });
+            LOGGER.info("Executor Agent browsing URL: {}", urlToBrowse); // Player feedback already in handleCodeforcesQuery
+            return CodeforcesAPI.getMirrorCodeforcesPageSourceAsync(urlToBrowse) // Use CodeforcesAPI to fetch webpage content from mirror site
+                    .exceptionally(e -> {
+                        LOGGER.error("Error fetching webpage content from: {}", urlToBrowse, e);
+                        return null;
+                    })
+                    .thenApply(webpageContent -> {
+                        if (webpageContent != null) {
+                            LOGGER.info("Webpage content fetched successfully (length: {} characters).", webpageContent.length());
+                            return webpageContent;
+                        } else {
+                            String errorMessage = "Failed to fetch content from URL: " + urlToBrowse;
+                            LOGGER.error(errorMessage);
+                            return errorMessage; // Return error message as content
+                        }
+                    });
         }
     }
 
@@ -149,8 +151,7 @@ public class CodeforcesAgent {
             String promptTemplate = "Summarize the following webpage content to answer the Codeforces question: '%s'.\\n\\nWebpage Content:\\n'%s'\\n\\nProvide a concise and direct answer based on the webpage content.";
             String prompt = String.format(promptTemplate, escapeStringForJson(userQuery), escapeStringForJson(webpageContent));
             LOGGER.info("SummarizerAgent Prompt: \n{}", prompt); // AI thinking - Summarizer prompt
-            return CompletableFuture.supplyAsync(() -> {
-                String response = chatAPI.getChatReply(MODEL_NAME, prompt);
+            return chatAPI.getChatReplyAsync(MODEL_NAME, prompt).thenApply(response -> {
                 LOGGER.info("SummarizerAgent Response: {}", response); // AI thinking - Summarizer response
                 return response;
             });
@@ -11,6 +11,8 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -28,19 +30,8 @@ public class CodeforcesCommandHandler {
     public int executeCodeforcesInfo(CommandSourceStack source, String handle) {
         Anti_addiction.LOGGER.info("Attempt to get {}'s info.", handle);
 
-        CompletableFuture.supplyAsync(() -> CodeforcesAPI.getUserInfoJson(handle))
-                .thenApply(userInfoJson -> {
-                    if (userInfoJson != null) {
-                        try {
-                            return CodeforcesAPI.parseUserInfoJson(userInfoJson);
-                        } catch (Exception e) {
-                            Anti_addiction.LOGGER.error("JSON Parsing exception", e);
-                            return null;
-                        }
-                    } else {
-                        return null;
-                    }
-                })
+        // 同一个 handle 的并发查询共用一个请求，短时间内重复查询直接读缓存
+        CodeforcesAPI.getUserInfoAsync(handle)
                 .thenAccept(response -> {
                     MinecraftServer server = source.getServer();
                     server.execute(() -> {
@@ -85,7 +76,8 @@ public class CodeforcesCommandHandler {
             }
         } else {
             String status = (response != null) ? response.status : "Unknown";
-            commandRegistry.sendErrorMessage(source, "Codeforces API Error (Status): " + status);
+            String comment = (response != null && response.comment != null) ? " (" + response.comment + ")" : "";
+            commandRegistry.sendErrorMessage(source, "Codeforces API Error (Status): " + status + comment);
             Anti_addiction.LOGGER.info("Fail2.");
         }
     }
@@ -93,19 +85,8 @@ public class CodeforcesCommandHandler {
     public int executeCodeforcesContest(CommandSourceStack source) {
         Anti_addiction.LOGGER.info("Attempt to get recent Codeforces contests.");
 
-        CompletableFuture.supplyAsync(CodeforcesAPI::getRecentContestsJson)
-                .thenApply(contestListJson -> {
-                    if (contestListJson != null) {
-                        try {
-                            return CodeforcesAPI.parseContestListJson(contestListJson);
-                        } catch (Exception e) {
-                            Anti_addiction.LOGGER.error("JSON Parsing exception for contest list", e);
-                            return null;
-                        }
-                    } else {
-                        return null;
-                    }
-                })
+        // 比赛列表由后台定时刷新，通常直接从内存返回
+        CodeforcesAPI.getContestListAsync()
                 .thenAccept(contestResponse -> {
                     MinecraftServer server = source.getServer();
                     server.execute(() -> {
@@ -134,7 +115,7 @@ public class CodeforcesCommandHandler {
                 source.sendSystemMessage(topBorder);
 
                 long currentTimeSeconds = System.currentTimeMillis() / 1000;
-                long threeDaysAgoSeconds = currentTimeSeconds - (3 * 24 * 60 * 60);
+                long threeDaysAgoSeconds = currentTimeSeconds - CodeforcesAPI.RECENT_CONTEST_SECONDS;
                 DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
 
                 for (CodeforcesAPI.ContestInfo contest : contests) {
@@ -164,6 +145,62 @@ public class CodeforcesCommandHandler {
         }
     }
 
+    // 所有绑定了 Codeforces ID 的玩家的 rating，按 rating 从高到低；各个查询会被合并成一个 user.info 请求
+    public int executeCodeforcesRatings(CommandSourceStack source) {
+        List<ModConfig.PlayerConfig> bonded = new ArrayList<>();
+        for (ModConfig.PlayerConfig playerConfig : ConfigManager.get().getPlayerConfigs()) {
+            if (playerConfig.getCodeforcesID() != null && !playerConfig.getCodeforcesID().isEmpty()) {
+                bonded.add(playerConfig);
+            }
+        }
+        if (bonded.isEmpty()) {
+            commandRegistry.sendErrorMessage(source, "No player has bonded a Codeforces ID yet.");
+            return 0;
+        }
+
+        List<CompletableFuture<CodeforcesAPI.CodeforcesResponse>> lookups = new ArrayList<>();
+        for (ModConfig.PlayerConfig playerConfig : bonded) {
+            lookups.add(CodeforcesAPI.getUserInfoAsync(playerConfig.getCodeforcesID())
+                    .exceptionally(e -> null)); // 单个查询失败只影响这一行
+        }
+
+        CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            List<MutableComponent> rows = new ArrayList<>();
+            List<Integer> ratings = new ArrayList<>();
+            for (int i = 0; i < bonded.size(); i++) {
+                CodeforcesAPI.CodeforcesResponse response = lookups.get(i).join();
+                ModConfig.PlayerConfig playerConfig = bonded.get(i);
+                MutableComponent row = Component.literal(playerConfig.getPlayerName()).withStyle(ChatFormatting.GREEN)
+                        .append(Component.literal(" (" + playerConfig.getCodeforcesID() + "): ").withStyle(ChatFormatting.GRAY));
+                if (response != null && "OK".equals(response.status) && !response.result.isEmpty()) {
+                    CodeforcesAPI.UserInfo user = response.result.get(0);
+                    row.append(Component.literal(String.valueOf(user.rating)).withStyle(ChatFormatting.AQUA))
+                            .append(Component.literal(user.rank != null ? " " + user.rank : "").withStyle(ChatFormatting.GOLD));
+                    ratings.add(user.rating);
+                } else {
+                    row.append(Component.literal(response != null ? "not found" : "unavailable").withStyle(ChatFormatting.RED));
+                    ratings.add(Integer.MIN_VALUE);
+                }
+                rows.add(row);
+            }
+
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < rows.size(); i++) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparingInt((Integer i) -> ratings.get(i)).reversed());
+
+            source.getServer().execute(() -> {
+                source.sendSystemMessage(Component.literal("------------- Codeforces Ratings -------------").withStyle(ChatFormatting.GRAY));
+                for (int i : order) {
+                    source.sendSystemMessage(rows.get(i));
+                }
+                source.sendSystemMessage(Component.literal("----------------------------------------------").withStyle(ChatFormatting.GRAY));
+            });
+        });
+        return 1;
+    }
+
     public int executeCodeforcesBond(CommandSourceStack source, String cfId) {
         if (!(source.getEntity() instanceof ServerPlayer)) {
             commandRegistry.sendErrorMessage(source, "This command can only be executed by a player.");
@@ -174,24 +211,8 @@ public class CodeforcesCommandHandler {
         UUID playerUUID = player.getUUID();
         String playerName = player.getName().getString();
 
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        List<ModConfig.PlayerConfig> playerConfigs = config.getPlayerConfigs();
-        ModConfig.PlayerConfig playerConfig = null;
-
-        for (ModConfig.PlayerConfig pc : playerConfigs) {
-            if (pc.getPlayerUuid().equals(playerUUID)) {
-                playerConfig = pc;
-                break;
-            }
-        }
-
-        if (playerConfig == null) {
-            playerConfig = new ModConfig.PlayerConfig(playerUUID, playerName, 0, null);
-            playerConfigs.add(playerConfig);
-        }
-
-        playerConfig.setCodeforcesID(cfId);
-        config.saveConfig("config/mod_config.json");
+        ConfigManager.update(config -> config.getOrCreatePlayerConfig(playerUUID, playerName).setCodeforcesID(cfId));
+        CodeforcesAPI.pinBondedHandles();
 
         source.sendSystemMessage(Component.literal("Successfully bonded your Codeforces ID to: " + cfId).withStyle(ChatFormatting.GREEN));
         Anti_addiction.LOGGER.info("Player {} bonded Codeforces ID: {}", playerName, cfId);
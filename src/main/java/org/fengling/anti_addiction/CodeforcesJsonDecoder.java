@@ -0,0 +1,220 @@
+package org.fengling.anti_addiction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+// 把 Codeforces API 的响应直接从 UTF-8 字节绑定到 ContestInfo / UserInfo，不先构建 Map 树再转换
+//
+// 用 GenericJsonParser 的游标逐个读 key，key 按字节和已知字段名比较；用不到的字段（frozen、relativeTimeSeconds、kind 等）
+// 原地跳过，不创建 String 或数字对象。contest.list 按开始时间从新到旧排列，stopAt 为真时立即停止解析，
+// 后面几 MB 的历史比赛连扫描都不需要。
+public class CodeforcesJsonDecoder {
+
+    private static final byte[][] ENVELOPE_FIELDS = names("status", "comment", "result");
+    private static final byte[][] CONTEST_FIELDS = names("id", "name", "type", "phase", "startTimeSeconds", "durationSeconds",
+            "preparedBy", "websiteUrl", "description", "difficulty", "icpcRegion", "country", "city", "season");
+    private static final byte[][] USER_FIELDS = names("contribution", "lastOnlineTimeSeconds", "organization", "rating",
+            "friendOfCount", "titlePhoto", "rank", "handle", "maxRating", "avatar", "registrationTimeSeconds", "maxRank");
+
+    private static final int END_OF_OBJECT = -2;
+
+    private interface ElementReader<T> {
+        T read(GenericJsonParser parser, int c) throws IOException;
+    }
+
+    private static class Envelope<T> {
+        String status;
+        String comment;
+        final List<T> result = new ArrayList<>();
+    }
+
+    public static CodeforcesAPI.ContestListResponse decodeContestList(byte[] utf8) throws IOException {
+        return decodeContestList(utf8, contest -> false);
+    }
+
+    /**
+     * Decodes {@code contest.list}, stopping at the first contest for which {@code stopAt} is true. That
+     * contest and everything after it are left out of the result, and the rest of the input is not read.
+     */
+    public static CodeforcesAPI.ContestListResponse decodeContestList(byte[] utf8, Predicate<CodeforcesAPI.ContestInfo> stopAt) throws IOException {
+        Envelope<CodeforcesAPI.ContestInfo> envelope = decode(utf8, CodeforcesJsonDecoder::readContest, stopAt);
+        CodeforcesAPI.ContestListResponse response = new CodeforcesAPI.ContestListResponse();
+        response.status = envelope.status;
+        response.result = envelope.result;
+        return response;
+    }
+
+    public static CodeforcesAPI.CodeforcesResponse decodeUserInfo(byte[] utf8) throws IOException {
+        Envelope<CodeforcesAPI.UserInfo> envelope = decode(utf8, CodeforcesJsonDecoder::readUser, user -> false);
+        CodeforcesAPI.CodeforcesResponse response = new CodeforcesAPI.CodeforcesResponse();
+        response.status = envelope.status;
+        response.comment = envelope.comment;
+        response.result = envelope.result;
+        return response;
+    }
+
+    // {"status":"OK","result":[...]}；Codeforces 总是把 status 放在 result 前面，提前停止时 status 已经读到了
+    private static <T> Envelope<T> decode(byte[] utf8, ElementReader<T> elements, Predicate<T> stopAt) throws IOException {
+        GenericJsonParser parser = new GenericJsonParser(utf8, 0, utf8.length);
+        Envelope<T> envelope = new Envelope<>();
+        for (int key = firstField(parser, parser.nextToken(), ENVELOPE_FIELDS); key != END_OF_OBJECT; key = nextField(parser, ENVELOPE_FIELDS)) {
+            int c = parser.nextToken();
+            switch (key) {
+                case 0:
+                    envelope.status = readString(parser, c);
+                    break;
+                case 1:
+                    envelope.comment = readString(parser, c);
+                    break;
+                case 2:
+                    if (readArray(parser, c, elements, stopAt, envelope.result)) {
+                        return envelope;
+                    }
+                    break;
+                default:
+                    parser.skipValue(c);
+            }
+        }
+        return envelope;
+    }
+
+    private static CodeforcesAPI.ContestInfo readContest(GenericJsonParser parser, int c) throws IOException {
+        CodeforcesAPI.ContestInfo contest = new CodeforcesAPI.ContestInfo();
+        for (int key = firstField(parser, c, CONTEST_FIELDS); key != END_OF_OBJECT; key = nextField(parser, CONTEST_FIELDS)) {
+            int v = parser.nextToken();
+            switch (key) {
+                case 0: contest.id = (int) readLong(parser, v); break;
+                case 1: contest.name = readString(parser, v); break;
+                case 2: contest.type = readString(parser, v); break;
+                case 3: contest.phase = readString(parser, v); break;
+                case 4: contest.startTimeSeconds = readLong(parser, v); break;
+                case 5: contest.durationSeconds = (int) readLong(parser, v); break;
+                case 6: contest.preparedBy = readString(parser, v); break;
+                case 7: contest.websiteUrl = readString(parser, v); break;
+                case 8: contest.description = readString(parser, v); break;
+                case 9: contest.difficulty = readString(parser, v); break;
+                case 10: contest.icpcRegion = readString(parser, v); break;
+                case 11: contest.country = readString(parser, v); break;
+                case 12: contest.city = readString(parser, v); break;
+                case 13: contest.season = readString(parser, v); break;
+                default: parser.skipValue(v);
+            }
+        }
+        return contest;
+    }
+
+    private static CodeforcesAPI.UserInfo readUser(GenericJsonParser parser, int c) throws IOException {
+        CodeforcesAPI.UserInfo user = new CodeforcesAPI.UserInfo();
+        for (int key = firstField(parser, c, USER_FIELDS); key != END_OF_OBJECT; key = nextField(parser, USER_FIELDS)) {
+            int v = parser.nextToken();
+            switch (key) {
+                case 0: user.contribution = (int) readLong(parser, v); break;
+                case 1: user.lastOnlineTimeSeconds = readLong(parser, v); break;
+                case 2: user.organization = readString(parser, v); break;
+                case 3: user.rating = (int) readLong(parser, v); break; // 没打过比赛的用户没有 rating/maxRating
+                case 4: user.friendOfCount = (int) readLong(parser, v); break;
+                case 5: user.titlePhoto = readString(parser, v); break;
+                case 6: user.rank = readString(parser, v); break;
+                case 7: user.handle = readString(parser, v); break;
+                case 8: user.maxRating = (int) readLong(parser, v); break;
+                case 9: user.avatar = readString(parser, v); break;
+                case 10: user.registrationTimeSeconds = readLong(parser, v); break;
+                case 11: user.maxRank = readString(parser, v); break;
+                default: parser.skipValue(v);
+            }
+        }
+        return user;
+    }
+
+    // c 是对象开头的 '{'；读出第一个 key 和冒号，返回它在 names 里的下标（未知字段为 -1），空对象返回 END_OF_OBJECT
+    private static int firstField(GenericJsonParser parser, int c, byte[][] names) throws IOException {
+        if (c != '{') {
+            throw parser.error("Expected '{'");
+        }
+        c = parser.nextToken();
+        return c == '}' ? END_OF_OBJECT : field(parser, c, names);
+    }
+
+    // 上一个值已经读完；读出下一个 key，对象结束时返回 END_OF_OBJECT
+    private static int nextField(GenericJsonParser parser, byte[][] names) throws IOException {
+        int c = parser.nextToken();
+        if (c == '}') {
+            return END_OF_OBJECT;
+        }
+        if (c != ',') {
+            throw parser.error("Expected ',' or '}' after value");
+        }
+        return field(parser, parser.nextToken(), names);
+    }
+
+    private static int field(GenericJsonParser parser, int c, byte[][] names) throws IOException {
+        if (c != '"') {
+            throw parser.error("Expected string key");
+        }
+        int key = parser.matchKey(names);
+        if (parser.nextToken() != ':') {
+            throw parser.error("Expected ':' after key");
+        }
+        return key;
+    }
+
+    private static <T> boolean readArray(GenericJsonParser parser, int c, ElementReader<T> elements, Predicate<T> stopAt, List<T> out) throws IOException {
+        if (c == 'n') {
+            parser.skipValue(c);
+            return false;
+        }
+        if (c != '[') {
+            throw parser.error("Expected '['");
+        }
+        c = parser.nextToken();
+        if (c == ']') {
+            return false;
+        }
+        while (true) {
+            T element = elements.read(parser, c);
+            if (stopAt.test(element)) {
+                return true;
+            }
+            out.add(element);
+
+            c = parser.nextToken();
+            if (c == ']') {
+                return false;
+            }
+            if (c != ',') {
+                throw parser.error("Expected ',' or ']' after value");
+            }
+            c = parser.nextToken();
+        }
+    }
+
+    private static String readString(GenericJsonParser parser, int c) throws IOException {
+        if (c == '"') {
+            return parser.parseString();
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            return parser.parseNumber(c).toString(); // difficulty 在 API 里是数字，ContestInfo 里是 String
+        }
+        parser.skipValue(c); // null，或者类型不对的值
+        return null;
+    }
+
+    private static long readLong(GenericJsonParser parser, int c) throws IOException {
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            return parser.parseNumber(c).longValue();
+        }
+        parser.skipValue(c);
+        return 0;
+    }
+
+    private static byte[][] names(String... names) {
+        byte[][] bytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            bytes[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+}
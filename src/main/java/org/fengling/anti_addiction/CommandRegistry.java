@@ -21,12 +21,14 @@ public class CommandRegistry {
     private PlaytimeCommandHandler playtimeCommandHandler;
     private CodeforcesCommandHandler codeforcesCommandHandler;
     private ChatCommandHandler chatCommandHandler;
+    private StatsCommandHandler statsCommandHandler;
 
     @SubscribeEvent
     public void onRegisterCommands(RegisterCommandsEvent event) {
         playtimeCommandHandler = new PlaytimeCommandHandler(this);
         codeforcesCommandHandler = new CodeforcesCommandHandler(this);
         chatCommandHandler = new ChatCommandHandler(this);
+        statsCommandHandler = new StatsCommandHandler(this);
 
         // Root command /aa and alias /antiaddiction (renamed from anti_addiction)
         LiteralArgumentBuilder<CommandSourceStack> antiaddictionCommand = Commands.literal("antiaddiction");
@@ -67,7 +69,26 @@ public class CommandRegistry {
                 .executes(ctx -> playtimeCommandHandler.executePlaytimeClearAll(ctx.getSource()))
         );
 
+        // /aa playtime export
+        playtimeCommand.then(Commands.literal("export")
+                .requires(source -> source.hasPermission(4)) // OP only
+                .executes(ctx -> playtimeCommandHandler.executePlaytimeExport(ctx.getSource()))
+        );
+
+        // /aa playtime display <show>
+        playtimeCommand.then(Commands.literal("display")
+                .then(Commands.argument("show", BoolArgumentType.bool())
+                        .executes(ctx -> playtimeCommandHandler.executePlaytimeDisplay(ctx.getSource(), BoolArgumentType.getBool(ctx, "show")))
+                )
+        );
+
         aaCommand.then(playtimeCommand); // Nest playtime commands under /aa
+
+        // /aa stats
+        aaCommand.then(Commands.literal("stats")
+                .requires(source -> source.hasPermission(4)) // OP only
+                .executes(ctx -> statsCommandHandler.executeStats(ctx.getSource()))
+        );
         antiaddictionCommand.redirect(aaCommand.build()); // Alias /antiaddiction to /aa
 
         event.getDispatcher().register(aaCommand);
@@ -91,6 +112,10 @@ public class CommandRegistry {
                 .then(Commands.argument("id", StringArgumentType.string())
                         .executes(context -> codeforcesCommandHandler.executeCodeforcesBond(context.getSource(), StringArgumentType.getString(context, "id")))));
 
+        // Add /codeforces ratings subcommand
+        codeforcesCommand.then(Commands.literal("ratings")
+                .executes(context -> codeforcesCommandHandler.executeCodeforcesRatings(context.getSource())));
+
         // Add /codeforces query subcommand
         codeforcesCommand.then(Commands.literal("query")
                 .then(Commands.argument("content", StringArgumentType.string())
@@ -149,6 +174,12 @@ public class CommandRegistry {
         chatCommand.then(Commands.literal("clear")
                 .executes(context -> chatCommandHandler.executeChatClear(context.getSource())));
 
+        // Add /chat cache flush subcommand
+        chatCommand.then(Commands.literal("cache")
+                .requires(source -> source.hasPermission(3)) // Admin permission
+                .then(Commands.literal("flush")
+                        .executes(context -> chatCommandHandler.executeChatCacheFlush(context.getSource()))));
+
         // Register /chat command
         event.getDispatcher().register(chatCommand);
     }
@@ -0,0 +1,101 @@
+package org.fengling.anti_addiction;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+// 进程内共享的配置缓存：只解析一次 mod_config.json，文件 mtime 变化或管理员命令修改时才重新加载
+public class ConfigManager {
+
+    public static final String CONFIG_PATH = "config/mod_config.json";
+
+    // 最多每秒检查一次文件 mtime，避免每个 tick 都去 stat 文件
+    private static final long MTIME_CHECK_INTERVAL_NANOS = 1_000_000_000L;
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private static volatile ModConfig snapshot;
+    private static volatile long nextCheckNanos;
+    private static long lastModified;
+
+    /**
+     * Returns the current config snapshot. The returned object is shared by every caller and is frozen:
+     * its setters throw {@link UnsupportedOperationException}; use {@link #update(Consumer)} to change settings.
+     */
+    public static ModConfig get() {
+        ModConfig current = snapshot;
+        if (current == null || System.nanoTime() - nextCheckNanos >= 0) {
+            current = refresh();
+        }
+        return current;
+    }
+
+    public static ModConfig.ServerConfig server() {
+        return get().getServerConfig();
+    }
+
+    /**
+     * Applies {@code editor} to a private copy of the current config, saves it to disk and publishes it
+     * as the new snapshot.
+     */
+    public static synchronized ModConfig update(Consumer<ModConfig> editor) {
+        ModConfig copy = GSON.fromJson(GSON.toJson(get()), ModConfig.class);
+        copy.setPlayerConfigs(new ArrayList<>(copy.getPlayerConfigs()));
+        editor.accept(copy);
+        copy.saveConfig(CONFIG_PATH);
+        publish(copy, new File(CONFIG_PATH).lastModified());
+        Anti_addiction.LOGGER.info("Config updated and saved to {}", CONFIG_PATH);
+        return snapshot;
+    }
+
+    /**
+     * Like {@link #update(Consumer)} but does not write the file: the edited copy is only published in
+     * memory, until the file changes on disk. Used by the standalone test harnesses.
+     */
+    static synchronized ModConfig override(Consumer<ModConfig> editor) {
+        ModConfig copy = GSON.fromJson(GSON.toJson(get()), ModConfig.class);
+        copy.setPlayerConfigs(new ArrayList<>(copy.getPlayerConfigs()));
+        editor.accept(copy);
+        publish(copy, lastModified);
+        return snapshot;
+    }
+
+    // Forces the next get() to re-check the file, e.g. after it was edited by hand.
+    public static void invalidate() {
+        nextCheckNanos = System.nanoTime();
+    }
+
+    private static synchronized ModConfig refresh() {
+        nextCheckNanos = System.nanoTime() + MTIME_CHECK_INTERVAL_NANOS;
+
+        File configFile = new File(CONFIG_PATH);
+        long mtime = configFile.lastModified(); // 0 if the file does not exist
+        if (snapshot != null && mtime == lastModified) {
+            return snapshot;
+        }
+
+        try {
+            ModConfig loaded = ModConfig.loadConfig(CONFIG_PATH);
+            publish(loaded != null ? loaded : new ModConfig(), configFile.lastModified());
+            Anti_addiction.LOGGER.info("Config loaded from {}", CONFIG_PATH);
+        } catch (JsonParseException e) {
+            // 配置文件格式错误时保留上一次的快照
+            Anti_addiction.LOGGER.error("Failed to parse {}, keeping previous config: {}", CONFIG_PATH, e.getMessage());
+            lastModified = mtime;
+            if (snapshot == null) {
+                publish(new ModConfig(), mtime);
+            }
+        }
+        return snapshot;
+    }
+
+    private static void publish(ModConfig config, long mtime) {
+        config.freeze();
+        lastModified = mtime;
+        snapshot = config;
+    }
+}
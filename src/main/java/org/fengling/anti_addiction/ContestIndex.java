@@ -0,0 +1,284 @@
+package org.fengling.anti_addiction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// Codeforces 比赛的本地索引：按 id 存放，另外按开始时间从新到旧排好序，查询不用再扫整个 contest.list
+//
+// 每次刷新只合并有变化的比赛（新比赛、phase 变化等），没有变化时什么都不做；有变化时换上新的只读视图，
+// 并把快照写到磁盘，服务器启动时先从快照加载，第一次 /cf contest 不用等网络。
+// 查询读的是 volatile 的不可变视图，不加锁；合并和写快照在 synchronized 里串行。
+//
+// 快照格式：magic, version, 保存时间 (long), 比赛数 (int)，然后每个比赛依次写各字段，字符串前面带一个是否为 null 的标记。
+public class ContestIndex {
+
+    private static final int MAGIC = 0x41414349; // "AACI"
+    private static final int VERSION = 1;
+    // 结束超过这么久的比赛不会再变化，刷新时遇到它就可以停止解析
+    static final long SETTLED_AFTER_SECONDS = 7 * 24 * 60 * 60;
+
+    private static final Comparator<CodeforcesAPI.ContestInfo> NEWEST_FIRST =
+            Comparator.comparingLong((CodeforcesAPI.ContestInfo c) -> c.startTimeSeconds).reversed().thenComparingInt(c -> -c.id);
+
+    private final Path snapshotPath;
+    private volatile View view = new View(Collections.emptyMap());
+    private volatile long refreshedAtMillis;
+
+    // 合并时整体替换，创建后不再修改
+    private static class View {
+        final Map<Integer, CodeforcesAPI.ContestInfo> byId;
+        final CodeforcesAPI.ContestInfo[] byStart; // 从新到旧
+        final Map<String, List<CodeforcesAPI.ContestInfo>> byType;
+
+        View(Map<Integer, CodeforcesAPI.ContestInfo> byId) {
+            this.byId = byId;
+            this.byStart = byId.values().toArray(new CodeforcesAPI.ContestInfo[0]);
+            Arrays.sort(byStart, NEWEST_FIRST);
+            Map<String, List<CodeforcesAPI.ContestInfo>> types = new HashMap<>();
+            for (CodeforcesAPI.ContestInfo contest : byStart) {
+                types.computeIfAbsent(String.valueOf(contest.type), k -> new ArrayList<>()).add(contest);
+            }
+            types.replaceAll((type, contests) -> Collections.unmodifiableList(contests));
+            this.byType = types;
+        }
+    }
+
+    public ContestIndex(Path snapshotPath) {
+        this.snapshotPath = snapshotPath;
+    }
+
+    public int size() {
+        return view.byId.size();
+    }
+
+    public boolean isEmpty() {
+        return view.byId.isEmpty();
+    }
+
+    // 最近一次成功刷新（或快照保存）的时间，从来没有刷新过时为 0
+    public long refreshedAtMillis() {
+        return refreshedAtMillis;
+    }
+
+    public CodeforcesAPI.ContestInfo get(int id) {
+        return view.byId.get(id);
+    }
+
+    // 还没开始的比赛，最近开始的排在前面
+    public List<CodeforcesAPI.ContestInfo> upcoming() {
+        List<CodeforcesAPI.ContestInfo> result = new ArrayList<>();
+        for (CodeforcesAPI.ContestInfo contest : view.byStart) {
+            if ("BEFORE".equals(contest.phase)) {
+                result.add(contest);
+            } else if (contest.startTimeSeconds <= System.currentTimeMillis() / 1000) {
+                break; // 后面都是已经开始的
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Returns every contest starting at or after {@code sinceEpochSeconds}, upcoming ones included, newest
+     * first. This is what {@code /cf contest} shows.
+     */
+    public List<CodeforcesAPI.ContestInfo> startedSince(long sinceEpochSeconds) {
+        CodeforcesAPI.ContestInfo[] contests = view.byStart;
+        // 二分查找第一个早于 sinceEpochSeconds 的比赛
+        int low = 0;
+        int high = contests.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (contests[mid].startTimeSeconds >= sinceEpochSeconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Arrays.asList(Arrays.copyOf(contests, low));
+    }
+
+    public List<CodeforcesAPI.ContestInfo> lastDays(int days) {
+        return startedSince(System.currentTimeMillis() / 1000 - days * 24L * 60 * 60);
+    }
+
+    // type 是 CF / ICPC / IOI，newest first
+    public List<CodeforcesAPI.ContestInfo> byType(String type) {
+        return view.byType.getOrDefault(type, Collections.emptyList());
+    }
+
+    // 刷新时的停止条件：索引里已经有一模一样的记录，并且比赛结束很久了，更早的比赛也不会再变
+    public boolean isSettled(CodeforcesAPI.ContestInfo contest) {
+        CodeforcesAPI.ContestInfo known = view.byId.get(contest.id);
+        return known != null && "FINISHED".equals(contest.phase)
+                && contest.startTimeSeconds + contest.durationSeconds < System.currentTimeMillis() / 1000 - SETTLED_AFTER_SECONDS
+                && sameContest(known, contest);
+    }
+
+    /**
+     * Merges a freshly downloaded contest list and returns the number of contests that were added, changed
+     * or removed. {@code complete} means the list is the whole of {@code contest.list}; only then are
+     * contests missing from it dropped. The snapshot is rewritten only if something changed.
+     */
+    public synchronized int merge(List<CodeforcesAPI.ContestInfo> contests, boolean complete) {
+        Map<Integer, CodeforcesAPI.ContestInfo> current = view.byId;
+        Map<Integer, CodeforcesAPI.ContestInfo> changed = new HashMap<>();
+        for (CodeforcesAPI.ContestInfo contest : contests) {
+            CodeforcesAPI.ContestInfo known = current.get(contest.id);
+            if (known == null || !sameContest(known, contest)) {
+                changed.put(contest.id, contest);
+            }
+        }
+        Set<Integer> removed = new HashSet<>();
+        if (complete) {
+            Set<Integer> seen = new HashSet<>();
+            for (CodeforcesAPI.ContestInfo contest : contests) {
+                seen.add(contest.id);
+            }
+            for (Integer id : current.keySet()) {
+                if (!seen.contains(id)) {
+                    removed.add(id);
+                }
+            }
+        }
+
+        refreshedAtMillis = System.currentTimeMillis();
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+        Map<Integer, CodeforcesAPI.ContestInfo> next = new HashMap<>(current);
+        next.putAll(changed);
+        next.keySet().removeAll(removed);
+        view = new View(Collections.unmodifiableMap(next));
+        save();
+        return changed.size() + removed.size();
+    }
+
+    // 启动时调用；没有快照或快照损坏时索引保持为空，等第一次刷新
+    public synchronized void load() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(snapshotPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Anti_addiction.LOGGER.error("Ignoring unreadable contest snapshot {}", snapshotPath);
+                return;
+            }
+            long savedAtMillis = in.readLong();
+            int count = in.readInt();
+            Map<Integer, CodeforcesAPI.ContestInfo> contests = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                CodeforcesAPI.ContestInfo contest = readContest(in);
+                contests.put(contest.id, contest);
+            }
+            view = new View(Collections.unmodifiableMap(contests));
+            refreshedAtMillis = savedAtMillis;
+            Anti_addiction.LOGGER.info("Loaded {} contests from {}", count, snapshotPath);
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to read contest snapshot {}", snapshotPath, e);
+        }
+    }
+
+    // 先写临时文件再原子替换，崩溃时不会留下写了一半的快照
+    private void save() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(view.byStart.length * 96 + 20);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(refreshedAtMillis);
+            out.writeInt(view.byStart.length);
+            for (CodeforcesAPI.ContestInfo contest : view.byStart) {
+                writeContest(out, contest);
+            }
+            out.flush();
+
+            Files.createDirectories(snapshotPath.toAbsolutePath().getParent());
+            Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            Files.write(tempPath, bytes.toByteArray());
+            Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to write contest snapshot {}", snapshotPath, e);
+        }
+    }
+
+    private static void writeContest(DataOutputStream out, CodeforcesAPI.ContestInfo contest) throws IOException {
+        out.writeInt(contest.id);
+        writeString(out, contest.name);
+        writeString(out, contest.type);
+        writeString(out, contest.phase);
+        out.writeLong(contest.startTimeSeconds);
+        out.writeInt(contest.durationSeconds);
+        writeString(out, contest.preparedBy);
+        writeString(out, contest.websiteUrl);
+        writeString(out, contest.description);
+        writeString(out, contest.difficulty);
+        writeString(out, contest.icpcRegion);
+        writeString(out, contest.country);
+        writeString(out, contest.city);
+        writeString(out, contest.season);
+    }
+
+    private static CodeforcesAPI.ContestInfo readContest(DataInputStream in) throws IOException {
+        CodeforcesAPI.ContestInfo contest = new CodeforcesAPI.ContestInfo();
+        contest.id = in.readInt();
+        contest.name = readString(in);
+        contest.type = readString(in);
+        contest.phase = readString(in);
+        contest.startTimeSeconds = in.readLong();
+        contest.durationSeconds = in.readInt();
+        contest.preparedBy = readString(in);
+        contest.websiteUrl = readString(in);
+        contest.description = readString(in);
+        contest.difficulty = readString(in);
+        contest.icpcRegion = readString(in);
+        contest.country = readString(in);
+        contest.city = readString(in);
+        contest.season = readString(in);
+        return contest;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static boolean sameContest(CodeforcesAPI.ContestInfo a, CodeforcesAPI.ContestInfo b) {
+        return a.id == b.id
+                && a.startTimeSeconds == b.startTimeSeconds
+                && a.durationSeconds == b.durationSeconds
+                && Objects.equals(a.phase, b.phase)
+                && Objects.equals(a.name, b.name)
+                && Objects.equals(a.type, b.type)
+                && Objects.equals(a.preparedBy, b.preparedBy)
+                && Objects.equals(a.websiteUrl, b.websiteUrl)
+                && Objects.equals(a.description, b.description)
+                && Objects.equals(a.difficulty, b.difficulty)
+                && Objects.equals(a.icpcRegion, b.icpcRegion)
+                && Objects.equals(a.country, b.country)
+                && Objects.equals(a.city, b.city)
+                && Objects.equals(a.season, b.season);
+    }
+}
@@ -0,0 +1,261 @@
+package org.fengling.anti_addiction;
+
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+// 修改 DialogueContext 类以适应 Gemini API 格式
+// 每一轮的 JSON 在加入时就序列化好并缓存，发请求时直接拼接，不再每次把整段历史重新交给 Gson
+//
+// 同一个对话的请求通过 tail 串成一条链，前一个请求结束（成功或失败）后下一个才开始；
+// close() 之后不再接受新请求，还在排队的请求以 CancellationException 结束，迟到的回复也会被丢弃。
+// attach() 之后每一轮、每次裁剪和摘要都会同步写进 DialogueStore 里的对话文件。
+class DialogueContext {
+    private static final Gson GSON = new Gson();
+
+    private final List<Turn> turns = new ArrayList<>();
+    private int charCount;
+    // 当前历史在对话文件里占的字节数（文件头 + 每轮的记录），用来在内存里执行 dialogueFileMaxKb
+    private long fileBytes = DialogueStore.HEADER_SIZE;
+    private volatile long lastAccessMillis = System.currentTimeMillis();
+    private boolean compacting;
+    private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+    private boolean closed;
+    private DialogueStore.DialogueLog log;
+
+    static class Turn {
+        final String role;
+        final String text;
+        final String json;
+        final int recordBytes;
+
+        Turn(String role, String text) {
+            this.role = role;
+            this.text = text;
+            this.recordBytes = DialogueStore.RECORD_HEADER_SIZE + text.getBytes(StandardCharsets.UTF_8).length;
+            Map<String, Object> message = new HashMap<>();
+            message.put("role", role);
+            message.put("parts", List.of(Map.of("text", text)));
+            this.json = GSON.toJson(message);
+        }
+    }
+
+    public synchronized void addUserMessage(String text) {
+        if (!closed) {
+            append(new Turn("user", text));
+        }
+    }
+
+    public synchronized void addModelMessage(String text) {
+        if (!closed) {
+            append(new Turn("model", text));  // Gemini API 使用 "model" 而不是 "assistant"
+        }
+    }
+
+    // 恢复磁盘上保存的历史，之后的修改都写进 log。只在对话的第一个请求里调用。
+    synchronized void restore(List<Turn> savedTurns, DialogueStore.DialogueLog log) {
+        if (closed) {
+            return;
+        }
+        for (Turn turn : savedTurns) {
+            add(turn);
+        }
+        this.log = log;
+    }
+
+    // 把 step 排在这个对话之前所有请求的后面；对话已关闭时返回 null，由调用方换一个新的上下文重试
+    <T> CompletableFuture<T> enqueue(Function<DialogueContext, CompletableFuture<T>> step) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<?> previous;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            previous = tail;
+            tail = result;
+        }
+
+        // step 在锁外执行，前一个请求的回调线程会直接发出下一个请求
+        previous.handle((ignored, e) -> null).thenCompose(ignored -> {
+            if (isClosed()) {
+                return CompletableFuture.failedFuture(new CancellationException("Dialogue was cleared"));
+            }
+            return step.apply(this);
+        }).whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    synchronized boolean isBusy() {
+        return !tail.isDone();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // 清空并关闭对话
+    synchronized void close() {
+        closed = true;
+        turns.clear();
+        charCount = 0;
+        fileBytes = DialogueStore.HEADER_SIZE;
+    }
+
+    public synchronized void clearMessages() {
+        if (log != null) {
+            log.drop(turns.size());
+        }
+        turns.clear();
+        charCount = 0;
+        fileBytes = DialogueStore.HEADER_SIZE;
+    }
+
+    public synchronized int getCharCount() {
+        return charCount;
+    }
+
+    public synchronized int getTurnCount() {
+        return turns.size();
+    }
+
+    long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    void touch() {
+        lastAccessMillis = System.currentTimeMillis();
+    }
+
+    // {"contents":[...]}，由缓存的每轮 JSON 拼接而成
+    public synchronized String toRequestBody() {
+        StringBuilder body = new StringBuilder(charCount + turns.size() * 48 + 16).append("{\"contents\":[");
+        for (int i = 0; i < turns.size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(turns.get(i).json);
+        }
+        return body.append("]}").toString();
+    }
+
+    // 超出字符预算时从最早的一轮开始丢弃，一问一答成对丢弃；最新的一条消息总是保留
+    public synchronized int trimToBudget(int maxChars) {
+        int dropped = 0;
+        while (charCount > maxChars && turns.size() > 1) {
+            dropped += removeOldestExchange();
+        }
+        if (log != null) {
+            log.drop(dropped);
+        }
+        return dropped;
+    }
+
+    // 取出最早的、约占一半字符的若干完整问答，交给模型总结；已有压缩在进行时返回 null
+    synchronized List<Turn> beginCompaction() {
+        if (compacting) {
+            return null;
+        }
+        List<Turn> oldTurns = new ArrayList<>();
+        int chars = 0;
+        int i = 0;
+        while (i + 1 < turns.size() - 1 && chars < charCount / 2) {
+            oldTurns.add(turns.get(i));
+            oldTurns.add(turns.get(i + 1));
+            chars += turns.get(i).text.length() + turns.get(i + 1).text.length();
+            i += 2;
+        }
+        if (oldTurns.isEmpty()) {
+            return null;
+        }
+        compacting = true;
+        return oldTurns;
+    }
+
+    // 用摘要替换被总结的那几轮；如果它们在此期间已被裁掉或清空，就放弃这次摘要
+    synchronized boolean finishCompaction(List<Turn> oldTurns, String summary) {
+        compacting = false;
+        if (summary == null || summary.isEmpty() || turns.size() < oldTurns.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldTurns.size(); i++) {
+            if (turns.get(i) != oldTurns.get(i)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < oldTurns.size(); i++) {
+            removeFirst();
+        }
+        // 保持 user/model 交替
+        Turn summaryTurn = new Turn("user", "Summary of our earlier conversation: " + summary);
+        Turn ackTurn = new Turn("model", "OK, I will keep that in mind.");
+        turns.add(0, ackTurn);
+        turns.add(0, summaryTurn);
+        charCount += summaryTurn.text.length() + ackTurn.text.length();
+        fileBytes += summaryTurn.recordBytes + ackTurn.recordBytes;
+        if (log != null) {
+            log.rewrite(new ArrayList<>(turns));
+        }
+        return true;
+    }
+
+    synchronized void abortCompaction() {
+        compacting = false;
+    }
+
+    private void append(Turn turn) {
+        add(turn);
+        if (log != null) {
+            log.append(turn);
+            enforceFileLimit();
+        }
+    }
+
+    // 对话文件超过 dialogueFileMaxKb 时，在内存里从最早的一轮开始成对丢弃，直到回到上限的一半（留出余量，
+    // 避免接下来每次追加都要重写），再用剩下的历史重写文件，这样磁盘上的记录和内存里的轮次始终一致
+    private void enforceFileLimit() {
+        long maxBytes = DialogueStore.maxFileBytes();
+        if (fileBytes <= maxBytes) {
+            return;
+        }
+        while (fileBytes > maxBytes / 2 && turns.size() > 1) {
+            removeOldestExchange();
+        }
+        log.rewrite(new ArrayList<>(turns));
+    }
+
+    private void add(Turn turn) {
+        turns.add(turn);
+        charCount += turn.text.length();
+        fileBytes += turn.recordBytes;
+    }
+
+    // 一问一答成对丢弃，最新的一条消息总是保留
+    private int removeOldestExchange() {
+        int dropped = removeFirst();
+        if (turns.size() > 1 && "model".equals(turns.get(0).role)) {
+            dropped += removeFirst();
+        }
+        return dropped;
+    }
+
+    private int removeFirst() {
+        Turn removed = turns.remove(0);
+        charCount -= removed.text.length();
+        fileBytes -= removed.recordBytes;
+        return 1;
+    }
+}
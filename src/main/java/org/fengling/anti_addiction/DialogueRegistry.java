@@ -0,0 +1,142 @@
+package org.fengling.anti_addiction;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// 按对话 ID (玩家 UUID) 保存 DialogueContext：空闲超过 dialogueIdleMinutes 的对话会被清理，
+// 总数超过 maxDialogues 时淘汰最久没用过的空闲对话。空闲清理由 startEvictor() 的定时任务执行，
+// 新建对话时也顺便检查一次，所以即使玩家一直是同一批人，空闲的上下文和缓存的每轮 JSON 也会被释放。
+//
+// 线程安全：查找和插入走 ConcurrentHashMap，不同玩家的请求互不阻塞；同一个对话的请求由 DialogueContext 排队。
+// remove() 先把上下文从表里摘掉再关闭它，之后提交的请求一定落在新的上下文里，所以清空是线性一致的。
+//
+// 开启 persistDialogues 时，新建的上下文先排一个从 DialogueStore 加载历史的步骤，
+// 所以重启后玩家第一次 /chat 才去读文件，之后的请求都排在加载之后。被淘汰的对话只是从内存里移除，文件保留。
+class DialogueRegistry {
+
+    private static final long EVICT_INTERVAL_SECONDS = 60;
+
+    private final ConcurrentHashMap<String, DialogueContext> contexts = new ConcurrentHashMap<>();
+    private final DialogueStore store;
+    private ScheduledFuture<?> evictTask;
+
+    DialogueRegistry() {
+        this(null);
+    }
+
+    DialogueRegistry(DialogueStore store) {
+        this.store = store;
+    }
+
+    DialogueStore getStore() {
+        return store;
+    }
+
+    /**
+     * Queues {@code step} behind every earlier request of the dialogue and returns its result. If the
+     * dialogue is cleared while the step is still waiting, the future fails with a
+     * {@link CancellationException}.
+     */
+    <T> CompletableFuture<T> submit(String dialogueId, Function<DialogueContext, CompletableFuture<T>> step) {
+        while (true) {
+            CompletableFuture<T> result = getOrCreate(dialogueId).enqueue(step);
+            if (result != null) {
+                return result;
+            }
+            // 拿到上下文之后它被清空或淘汰了，换新的上下文重试
+        }
+    }
+
+    DialogueContext getOrCreate(String dialogueId) {
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        DialogueContext context = contexts.get(dialogueId);
+        if (context == null) {
+            evictIdle(System.currentTimeMillis());
+            context = contexts.computeIfAbsent(dialogueId, this::create);
+            evictOverCapacity(Math.max(1, serverConfig.getMaxDialogues()), context);
+        }
+        context.touch();
+        return context;
+    }
+
+    boolean remove(String dialogueId) {
+        DialogueContext context = contexts.remove(dialogueId);
+        if (context != null) {
+            context.close();
+        }
+        boolean saved = store != null && store.exists(dialogueId);
+        if (store != null) {
+            store.delete(dialogueId);
+        }
+        return context != null || saved;
+    }
+
+    int size() {
+        return contexts.size();
+    }
+
+    synchronized void startEvictor() {
+        if (evictTask == null) {
+            evictTask = ModScheduler.scheduleWithFixedDelay("dialogue eviction", () -> evictIdle(System.currentTimeMillis()),
+                    EVICT_INTERVAL_SECONDS, EVICT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    synchronized void stopEvictor() {
+        if (evictTask != null) {
+            evictTask.cancel(false);
+            evictTask = null;
+        }
+    }
+
+    // 在 computeIfAbsent 里执行，加载步骤一定是这个上下文的第一个请求
+    private DialogueContext create(String dialogueId) {
+        DialogueContext context = new DialogueContext();
+        if (store != null && ConfigManager.server().isPersistDialogues()) {
+            DialogueStore.DialogueLog log = store.log(dialogueId);
+            context.enqueue(ctx -> store.load(dialogueId).thenAccept(savedTurns -> ctx.restore(savedTurns, log)));
+        }
+        return context;
+    }
+
+    // 移除到 now 为止空闲超过 dialogueIdleMinutes 的对话，正在等待回复的对话不动
+    void evictIdle(long now) {
+        long idleMillis = ConfigManager.server().getDialogueIdleMinutes() * 60_000L;
+        if (idleMillis <= 0) {
+            return;
+        }
+        for (Map.Entry<String, DialogueContext> entry : contexts.entrySet()) {
+            DialogueContext context = entry.getValue();
+            if (now - context.getLastAccessMillis() >= idleMillis && !context.isBusy() && contexts.remove(entry.getKey(), context)) {
+                context.close();
+                Anti_addiction.LOGGER.info("Evicting idle dialogue {}", entry.getKey());
+            }
+        }
+    }
+
+    // 淘汰最久没用过的对话，正在等待回复的对话和刚创建的对话不动
+    private void evictOverCapacity(int maxDialogues, DialogueContext keep) {
+        while (contexts.size() > maxDialogues) {
+            Map.Entry<String, DialogueContext> eldest = null;
+            for (Map.Entry<String, DialogueContext> entry : contexts.entrySet()) {
+                DialogueContext context = entry.getValue();
+                if (context != keep && !context.isBusy()
+                        && (eldest == null || context.getLastAccessMillis() < eldest.getValue().getLastAccessMillis())) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            if (contexts.remove(eldest.getKey(), eldest.getValue())) {
+                eldest.getValue().close();
+                Anti_addiction.LOGGER.info("Evicting dialogue {} (more than {} dialogues)", eldest.getKey(), maxDialogues);
+            }
+        }
+    }
+}
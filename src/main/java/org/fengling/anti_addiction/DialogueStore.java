@@ -0,0 +1,314 @@
+package org.fengling.anti_addiction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// 对话历史持久化：每个对话一个只追加的文件 config/dialogues/<id>.dlg，服务器重启或崩溃后对话还能接着聊
+//
+// 文件头 8 字节：magic, version；之后是长度前缀的记录：payload 长度(4) + op(1) + payload。
+// USER/MODEL 的 payload 是 UTF-8 文本，DROP 的 payload 是从最前面丢掉的轮数 (int)，
+// 对应内存里 trimToBudget 的裁剪；模型摘要替换旧轮次时整体重写文件。
+// 后台压缩线程定期把死记录多的文件重写成只含当前历史的新文件；文件因为死记录超过 dialogueFileMaxKb 时立即压缩。
+// 当前历史本身超过上限时由 DialogueContext 在内存里丢弃最早的几轮再重写文件，这里从不单独丢弃轮次。
+//
+// 线程模型：记录在调用线程上编码好，读写文件都在单独的 IO 线程上按提交顺序执行，
+// 所以同一个对话的追加、删除和重新加载不会互相穿插。
+public class DialogueStore {
+
+    private static final int MAGIC = 0x4141444C; // "AADL"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    // payload 长度(4) + op(1)
+    static final int RECORD_HEADER_SIZE = 5;
+    static final byte OP_USER = 1;
+    static final byte OP_MODEL = 2;
+    static final byte OP_DROP = 3;
+    private static final String EXTENSION = ".dlg";
+    private static final long COMPACT_INTERVAL_MINUTES = 10;
+
+    private final Path directory;
+    private final ExecutorService ioExecutor;
+    private ScheduledFuture<?> compactTask;
+
+    public DialogueStore(Path directory) {
+        this.directory = directory;
+        this.ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "anti_addiction-dialogue-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 某个对话在磁盘上的追加日志。只负责编码和提交，写文件在 IO 线程上完成。
+    class DialogueLog {
+        private final Path path;
+
+        private DialogueLog(Path path) {
+            this.path = path;
+        }
+
+        void append(DialogueContext.Turn turn) {
+            byte[] record = encodeTurn(turn);
+            ioExecutor.execute(() -> appendRecord(path, record));
+        }
+
+        void drop(int turns) {
+            if (turns <= 0) {
+                return;
+            }
+            byte[] record = ByteBuffer.allocate(RECORD_HEADER_SIZE + 4).putInt(4).put(OP_DROP).putInt(turns).array();
+            ioExecutor.execute(() -> appendRecord(path, record));
+        }
+
+        void rewrite(List<DialogueContext.Turn> turns) {
+            List<byte[]> records = new ArrayList<>(turns.size());
+            for (DialogueContext.Turn turn : turns) {
+                records.add(encodeTurn(turn));
+            }
+            ioExecutor.execute(() -> {
+                try {
+                    writeFile(path, records);
+                } catch (IOException e) {
+                    Anti_addiction.LOGGER.error("Failed to rewrite dialogue file {}", path, e);
+                }
+            });
+        }
+    }
+
+    DialogueLog log(String dialogueId) {
+        return new DialogueLog(pathOf(dialogueId));
+    }
+
+    /**
+     * Reads the saved turns of a dialogue on the IO thread. Completes with an empty list when the
+     * dialogue has no file or the file is unreadable.
+     */
+    CompletableFuture<List<DialogueContext.Turn>> load(String dialogueId) {
+        Path path = pathOf(dialogueId);
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            List<DialogueContext.Turn> turns = readTurns(path);
+            if (!turns.isEmpty()) {
+                Anti_addiction.LOGGER.info("Dialogue {} restored: {} turns in {} ms", dialogueId, turns.size(), (System.nanoTime() - start) / 1_000_000);
+            }
+            return turns;
+        }, ioExecutor);
+    }
+
+    // 删除对话文件；排在之前提交的追加之后执行
+    void delete(String dialogueId) {
+        Path path = pathOf(dialogueId);
+        ioExecutor.execute(() -> {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                Anti_addiction.LOGGER.error("Failed to delete dialogue file {}", path, e);
+            }
+        });
+    }
+
+    boolean exists(String dialogueId) {
+        return Files.exists(pathOf(dialogueId));
+    }
+
+    public synchronized void startCompactor() {
+        if (compactTask == null) {
+            compactTask = ModScheduler.scheduleWithFixedDelay("dialogue compaction", () -> ioExecutor.execute(this::compactAll),
+                    COMPACT_INTERVAL_MINUTES, COMPACT_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    // 停止后台压缩并等待已提交的写入完成。IO 线程本身保留，单人游戏里服务器还会再次启动。
+    public void stop() {
+        synchronized (this) {
+            if (compactTask != null) {
+                compactTask.cancel(false);
+                compactTask = null;
+            }
+        }
+        try {
+            CompletableFuture.runAsync(() -> {}, ioExecutor).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            Anti_addiction.LOGGER.error("Timed out waiting for dialogue history to be written");
+        }
+    }
+
+    // --- IO thread ---
+
+    private void appendRecord(Path path, byte[] record) {
+        try {
+            if (!Files.exists(path)) {
+                writeFile(path, List.of());
+            }
+            long size;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                size = channel.size();
+            }
+            if (size > maxFileBytes()) {
+                compact(path);
+            }
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to append to dialogue file {}", path, e);
+        }
+    }
+
+    private void compactAll() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        int compacted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path path : files) {
+                if (compact(path)) {
+                    compacted++;
+                }
+            }
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to list dialogue files in {}", directory, e);
+        }
+        if (compacted > 0) {
+            Anti_addiction.LOGGER.info("Compacted {} dialogue files", compacted);
+        }
+    }
+
+    // 死记录占一半以上，或者去掉死记录就能回到上限以内时重写；只去掉死记录，返回是否重写了
+    boolean compact(Path path) {
+        try {
+            long fileSize = Files.size(path);
+            List<DialogueContext.Turn> turns = readTurns(path);
+            List<byte[]> records = new ArrayList<>(turns.size());
+            long liveSize = HEADER_SIZE;
+            for (DialogueContext.Turn turn : turns) {
+                byte[] record = encodeTurn(turn);
+                records.add(record);
+                liveSize += record.length;
+            }
+
+            long maxBytes = maxFileBytes();
+            boolean fitsAfterCompaction = fileSize > maxBytes && liveSize <= maxBytes;
+            if (fileSize - liveSize <= liveSize && !fitsAfterCompaction) {
+                return false;
+            }
+            writeFile(path, records);
+            return true;
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to compact dialogue file {}", path, e);
+            return false;
+        }
+    }
+
+    private List<DialogueContext.Turn> readTurns(Path path) {
+        List<DialogueContext.Turn> turns = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return turns;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            ByteBuffer data = ByteBuffer.allocate((int) Math.min(fileSize, Integer.MAX_VALUE));
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // read the whole file
+            }
+            data.flip();
+            if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC || data.getInt() != VERSION) {
+                Anti_addiction.LOGGER.error("Ignoring unreadable dialogue file {}", path);
+                return turns;
+            }
+            while (data.remaining() >= RECORD_HEADER_SIZE) {
+                int start = data.position();
+                int length = data.getInt();
+                byte op = data.get();
+                if (length < 0 || length > data.remaining()) {
+                    data.position(start);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                data.get(payload);
+                applyRecord(turns, op, payload);
+            }
+            if (data.hasRemaining()) {
+                // 崩溃时写了一半的记录，直接丢掉
+                Anti_addiction.LOGGER.warn("Discarding torn dialogue record in {} ({} bytes)", path, data.remaining());
+                channel.truncate(data.position());
+            }
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to read dialogue file {}", path, e);
+        }
+        return turns;
+    }
+
+    private static void applyRecord(List<DialogueContext.Turn> turns, byte op, byte[] payload) {
+        switch (op) {
+            case OP_USER:
+                turns.add(new DialogueContext.Turn("user", new String(payload, StandardCharsets.UTF_8)));
+                break;
+            case OP_MODEL:
+                turns.add(new DialogueContext.Turn("model", new String(payload, StandardCharsets.UTF_8)));
+                break;
+            case OP_DROP:
+                int count = Math.min(ByteBuffer.wrap(payload).getInt(), turns.size());
+                turns.subList(0, count).clear();
+                break;
+            default:
+                Anti_addiction.LOGGER.warn("Skipping unknown dialogue record type {}", op);
+        }
+    }
+
+    private void writeFile(Path path, List<byte[]> records) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (byte[] record : records) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(true);
+        }
+        PlayTimeBinaryFile.replace(tempPath, path);
+    }
+
+    private static byte[] encodeTurn(DialogueContext.Turn turn) {
+        byte[] text = turn.text.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE + text.length)
+                .putInt(text.length)
+                .put("model".equals(turn.role) ? OP_MODEL : OP_USER)
+                .put(text)
+                .array();
+    }
+
+    static long maxFileBytes() {
+        return Math.max(4, ConfigManager.server().getDialogueFileMaxKb()) * 1024L;
+    }
+
+    // 对话 ID 是玩家 UUID；其他字符一律替换掉，保证文件名合法
+    private Path pathOf(String dialogueId) {
+        return directory.resolve(dialogueId.replaceAll("[^A-Za-z0-9_-]", "_") + EXTENSION);
+    }
+}
@@ -0,0 +1,108 @@
+package org.fengling.anti_addiction;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+// 逐行解析 streamGenerateContent?alt=sse 返回的 server-sent events，每个事件里的文本片段一到就交给 onText
+//
+// HttpClient 按顺序调用 onNext，所以这里不需要同步。
+class GeminiStreamSubscriber implements Flow.Subscriber<String> {
+
+    private final Consumer<String> onText;
+    private final long startNanos = System.nanoTime();
+    private final StringBuilder eventData = new StringBuilder();
+    private final StringBuilder fullText = new StringBuilder();
+    private boolean receivedText;
+
+    GeminiStreamSubscriber(Consumer<String> onText) {
+        this.onText = onText;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String line) {
+        if (line.isEmpty()) {
+            dispatchEvent(); // 空行表示一个事件结束
+        } else if (line.startsWith("data:")) {
+            if (eventData.length() > 0) {
+                eventData.append('\n');
+            }
+            eventData.append(line.startsWith("data: ") ? line.substring(6) : line.substring(5));
+        }
+        // event:, id:, retry: 和以 ':' 开头的注释行都用不到
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        // 由 sendAsync 返回的 future 以异常结束，这里不需要处理
+    }
+
+    @Override
+    public void onComplete() {
+        dispatchEvent();
+    }
+
+    // 完整的回复文本，没有收到任何文本时返回 null
+    String getText() {
+        String text = fullText.toString().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private void dispatchEvent() {
+        if (eventData.length() == 0) {
+            return;
+        }
+        String data = eventData.toString();
+        eventData.setLength(0);
+
+        String text = extractText(data);
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        if (!receivedText) {
+            receivedText = true;
+            Anti_addiction.LOGGER.info("First streamed chunk after {} ms", (System.nanoTime() - startNanos) / 1_000_000);
+        }
+        fullText.append(text);
+        try {
+            onText.accept(text);
+        } catch (RuntimeException e) {
+            Anti_addiction.LOGGER.error("Failed to deliver streamed chunk", e);
+        }
+    }
+
+    private static String extractText(String data) {
+        try {
+            JsonObject response = JsonParser.parseString(data).getAsJsonObject();
+            JsonArray candidates = response.getAsJsonArray("candidates");
+            if (candidates == null || candidates.isEmpty()) {
+                return null;
+            }
+            JsonObject content = candidates.get(0).getAsJsonObject().getAsJsonObject("content");
+            if (content == null || content.getAsJsonArray("parts") == null) {
+                return null;
+            }
+            StringBuilder text = new StringBuilder();
+            for (JsonElement part : content.getAsJsonArray("parts")) {
+                JsonElement partText = part.getAsJsonObject().get("text");
+                if (partText != null && !partText.isJsonNull()) {
+                    text.append(partText.getAsString());
+                }
+            }
+            return text.toString();
+        } catch (JsonParseException | IllegalStateException | ClassCastException e) {
+            Anti_addiction.LOGGER.warn("Skipping malformed stream event: {}", e.getMessage());
+            return null;
+        }
+    }
+}
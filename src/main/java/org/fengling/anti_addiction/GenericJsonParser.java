@@ -1,220 +1,353 @@
 package org.fengling.anti_addiction;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+// 直接在 UTF-8 字节上解析 JSON：游标在 byte[] 上前进，不经过 Reader，也不逐字符 mark/reset
+// 结果和以前一样是 HashMap / ArrayList / String / Integer / Long / Double / Boolean / null 组成的树
+//
+// 字符串先走 ASCII 快速路径：没有转义和非 ASCII 字节时直接从字节数组切出 String；
+// 整数在扫描时就地累加，只有小数和指数才交给 Double.parseDouble。
+// 同一个包里的 CodeforcesJsonDecoder 直接用下面这些游标方法按字段绑定，不构建中间的树。
 public class GenericJsonParser {
 
+    private final byte[] buf;
+    private final int end;
+    private int pos;
+    private StringBuilder scratch; // 慢路径字符串复用的缓冲区
+
+    GenericJsonParser(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
     public static Object parse(String json) throws IOException {
-        try (StringReader reader = new StringReader(json)) {
-            return parseValue(reader, next(reader));
+        return parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Object parse(byte[] utf8) throws IOException {
+        return parse(utf8, 0, utf8.length);
+    }
+
+    public static Object parse(byte[] utf8, int offset, int length) throws IOException {
+        GenericJsonParser parser = new GenericJsonParser(utf8, offset, length);
+        Object value = parser.parseValue(parser.nextToken());
+        if (parser.skipWhitespace() < parser.end) {
+            throw parser.error("Unexpected data after JSON value");
         }
+        return value;
     }
 
-    private static Map<String, Object> parseJsonObject(StringReader reader) throws IOException {
-        Map<String, Object> object = new HashMap<>();
+    // 读取 buffer 的剩余部分，不改变它的 position
+    public static Object parse(ByteBuffer utf8) throws IOException {
+        if (utf8.hasArray()) {
+            return parse(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining());
+        }
+        byte[] copy = new byte[utf8.remaining()];
+        utf8.duplicate().get(copy);
+        return parse(copy);
+    }
 
-        char c = next(reader);
-//        Anti_addiction.LOGGER.info("Parsing value: {}", c);
+    Object parseValue(int c) throws IOException {
+        switch (c) {
+            case '"':
+                return parseString();
+            case '{':
+                return parseObject();
+            case '[':
+                return parseArray();
+            case 't':
+                expectLiteral("rue");
+                return Boolean.TRUE;
+            case 'f':
+                expectLiteral("alse");
+                return Boolean.FALSE;
+            case 'n':
+                expectLiteral("ull");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return parseNumber(c);
+                }
+                throw error(c < 0 ? "Unexpected end of JSON" : "Unexpected character: " + (char) c);
+        }
+    }
 
-        while (c != '}') {
-            String key = parseString(reader);
-            c = next(reader);
-            if (c != ':') {
-                throw new IOException("Expected ':' after key");
+    private Map<String, Object> parseObject() throws IOException {
+        Map<String, Object> object = new HashMap<>();
+        int c = nextToken();
+        if (c == '}') {
+            return object;
+        }
+        while (true) {
+            if (c != '"') {
+                throw error("Expected string key");
             }
+            String key = parseString();
+            if (nextToken() != ':') {
+                throw error("Expected ':' after key");
+            }
+            object.put(key, parseValue(nextToken()));
 
-            Object value = parseValue(reader, next(reader));
-            object.put(key, value);
-
-            c = next(reader);
-            if (c == ',') {
-                c = next(reader);
-            } else if (c != '}') {
-                throw new IOException("Expected ',' or '}' after value");
+            c = nextToken();
+            if (c == '}') {
+                return object;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}' after value");
             }
+            c = nextToken();
         }
-
-        return object;
     }
 
-    private static List<Object> parseJsonArray(StringReader reader) throws IOException {
+    private List<Object> parseArray() throws IOException {
         List<Object> array = new ArrayList<>();
+        int c = nextToken();
+        if (c == ']') {
+            return array;
+        }
+        while (true) {
+            array.add(parseValue(c));
 
-        char c = next(reader);
-
-        while (c != ']') {
-            Object value = parseValue(reader, c);
-            array.add(value);
-
-            c = next(reader);
-            if (c == ',') {
-                c = next(reader);
-            } else if (c != ']') {
-                throw new IOException("Expected ',' or ']' after value");
+            c = nextToken();
+            if (c == ']') {
+                return array;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']' after value");
             }
+            c = nextToken();
         }
-
-        return array;
     }
 
-    private static Object parseValue(StringReader reader, char c) throws IOException {
-//        Anti_addiction.LOGGER.info("Parsing value: {}", c);
-
-        if (c == '"') {
-            return parseString(reader);
-        } else if (Character.isDigit(c) || c == '-') {
-            return parseNumber(reader, c);
-        } else if (c == '{') {
-            return parseJsonObject(reader);
-        } else if (c == '[') {
-            return parseJsonArray(reader);
-        } else if (c == 't' || c == 'f') {
-            return parseBoolean(reader, c);
-        } else if (c == 'n') {
-            return parseNull(reader);
-        } else {
-            throw new IOException("Unexpected character: " + c);
+    // 开头的引号已经读过
+    String parseString() throws IOException {
+        int start = pos;
+        // ASCII 快速路径
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b == '"') {
+                String s = new String(buf, start, pos - start, StandardCharsets.ISO_8859_1);
+                pos++;
+                return s;
+            }
+            if (b == '\\' || b < 0) {
+                break;
+            }
+            pos++;
+        }
+        if (pos >= end) {
+            throw error("Unterminated string");
         }
-    }
-
-    private static String parseString(StringReader reader) throws IOException {
-        StringBuilder sb = new StringBuilder();
 
+        StringBuilder sb = scratch != null ? scratch : (scratch = new StringBuilder(64));
+        sb.setLength(0);
+        sb.append(new String(buf, start, pos - start, StandardCharsets.ISO_8859_1));
         while (true) {
-            char c = (char) reader.read();
-
-            if (c == '"') {
-                break;
+            if (pos >= end) {
+                throw error("Unterminated string");
             }
-
-            if (c == '\\') {
-                c = (char) reader.read();
-                switch (c) {
-                    case '"':
-                        sb.append('"');
-                        break;
-                    case '\\':
-                        sb.append('\\');
-                        break;
-                    case '/':
-                        sb.append('/');
-                        break;
-                    case 'b':
-                        sb.append('\b');
-                        break;
-                    case 'f':
-                        sb.append('\f');
-                        break;
-                    case 'n':
-                        sb.append('\n');
-                        break;
-                    case 'r':
-                        sb.append('\r');
-                        break;
-                    case 't':
-                        sb.append('\t');
-                        break;
-                    case 'u':
-                        // Handle Unicode escape sequence
-                        StringBuilder hexCode = new StringBuilder();
-                        for (int i = 0; i < 4; i++) {
-                            c = (char) reader.read();
-                            if (Character.digit(c, 16) == -1) {
-                                throw new IOException("Invalid Unicode escape sequence: expected 4 hex digits but got: " + hexCode.toString() + c);
-                            }
-                            hexCode.append(c);
-                        }
-                        try {
-                            int unicodeValue = Integer.parseInt(hexCode.toString(), 16);
-                            sb.append((char) unicodeValue);
-                        } catch (NumberFormatException e) {
-                            throw new IOException("Invalid Unicode escape sequence: could not parse hex value: " + hexCode.toString());
-                        }
-                        break;
-                    default:
-                        throw new IOException("Invalid escape sequence: \\" + c);
-                }
+            byte b = buf[pos];
+            if (b == '"') {
+                pos++;
+                return sb.toString();
+            }
+            if (b == '\\') {
+                pos++;
+                appendEscape(sb);
             } else {
-                sb.append(c);
+                // 一段没有引号和反斜杠的原始字节，按 UTF-8 一次解码
+                int runStart = pos;
+                while (pos < end && buf[pos] != '"' && buf[pos] != '\\') {
+                    pos++;
+                }
+                sb.append(new String(buf, runStart, pos - runStart, StandardCharsets.UTF_8));
             }
         }
-
-        return sb.toString();
     }
 
-    private static Number parseNumber(StringReader reader, char firstChar) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        sb.append(firstChar);
+    private void appendEscape(StringBuilder sb) throws IOException {
+        if (pos >= end) {
+            throw error("Unterminated string");
+        }
+        byte c = buf[pos++];
+        switch (c) {
+            case '"':
+                sb.append('"');
+                break;
+            case '\\':
+                sb.append('\\');
+                break;
+            case '/':
+                sb.append('/');
+                break;
+            case 'b':
+                sb.append('\b');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 't':
+                sb.append('\t');
+                break;
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = pos < end ? Character.digit(buf[pos++], 16) : -1;
+                    if (digit < 0) {
+                        throw error("Invalid Unicode escape sequence: expected 4 hex digits");
+                    }
+                    code = (code << 4) | digit;
+                }
+                sb.append((char) code);
+                break;
+            default:
+                throw error("Invalid escape sequence: \\" + (char) c);
+        }
+    }
 
-        while (true) {
-            reader.mark(1);  // mark the current position to allow rewinding.
+    // 第一个字符已经读过；整数就地累加，超过 long 范围或带小数/指数时退回到字符串解析
+    Number parseNumber(int first) throws IOException {
+        int start = pos - 1;
+        boolean negative = first == '-';
+        long value = negative ? 0 : first - '0';
+        int digits = negative ? 0 : 1;
+        boolean integral = true;
 
-            char c = (char) reader.read();
-            if (Character.isDigit(c) || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
-                sb.append(c); // 添加数字字符到字符串
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits++;
+            } else if (b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-') {
+                integral = false;
             } else {
-                reader.reset();  // rewind to before the non-digit character
                 break;
             }
+            pos++;
         }
 
+        if (integral && digits > 0 && digits <= 18) {
+            long signed = negative ? -value : value;
+            if (signed >= Integer.MIN_VALUE && signed <= Integer.MAX_VALUE) {
+                return (int) signed;
+            }
+            return signed;
+        }
 
-        String numberStr = sb.toString();
+        String text = new String(buf, start, pos - start, StandardCharsets.ISO_8859_1);
         try {
-            if (numberStr.contains(".") || numberStr.contains("e") || numberStr.contains("E")) {
-                return Double.parseDouble(numberStr);
-            } else {
-                try {
-                    return Integer.parseInt(numberStr);
-                } catch (NumberFormatException e) {
-                    return Long.parseLong(numberStr);
-                }
+            return integral ? (Number) Long.parseLong(text) : (Number) Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number format: " + text);
+        }
+    }
 
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (pos >= end || buf[pos++] != rest.charAt(i)) {
+                throw error("Invalid literal");
             }
-        } catch (NumberFormatException e) {
-            throw new IOException("Invalid number format: " + numberStr);
         }
     }
 
+    // 读对象的 key 并和 names 逐字节比较，返回匹配的下标，没有匹配时返回 -1。开头的引号已经读过。
+    // 不为 key 创建 String；带转义的 key 不会出现在 Codeforces 的响应里，按不匹配处理。
+    int matchKey(byte[][] names) throws IOException {
+        int start = pos;
+        skipString();
+        int length = pos - 1 - start;
+        for (int i = 0; i < names.length; i++) {
+            byte[] name = names[i];
+            if (name.length == length && java.util.Arrays.equals(buf, start, start + length, name, 0, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-    private static Boolean parseBoolean(StringReader reader, char firstChar) throws IOException {
-        if (firstChar == 't') {
-            if (reader.read() == 'r' && reader.read() == 'u' && reader.read() == 'e') {
-                return true;
-            } else {
-                throw new IOException("Expected 'true'");
+    // 跳过一个值而不创建任何对象，c 是它的第一个字节
+    void skipValue(int c) throws IOException {
+        switch (c) {
+            case '"':
+                skipString();
+                return;
+            case '{':
+            case '[':
+                int depth = 1;
+                while (depth > 0) {
+                    if (pos >= end) {
+                        throw error("Unexpected end of JSON");
+                    }
+                    byte b = buf[pos++];
+                    if (b == '"') {
+                        skipString();
+                    } else if (b == '{' || b == '[') {
+                        depth++;
+                    } else if (b == '}' || b == ']') {
+                        depth--;
+                    }
+                }
+                return;
+            default:
+                // 数字和 true/false/null：跳到下一个分隔符
+                if (c < 0) {
+                    throw error("Unexpected end of JSON");
+                }
+                while (pos < end) {
+                    byte b = buf[pos];
+                    if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                        break;
+                    }
+                    pos++;
+                }
+        }
+    }
+
+    // 开头的引号已经读过，停在结尾引号之后
+    private void skipString() throws IOException {
+        while (pos < end) {
+            byte b = buf[pos++];
+            if (b == '"') {
+                return;
             }
-        } else if (firstChar == 'f') {
-            if (reader.read() == 'a' && reader.read() == 'l' && reader.read() == 's' && reader.read() == 'e') {
-                return false;
-            } else {
-                throw new IOException("Expected 'false'");
+            if (b == '\\') {
+                pos++;
             }
-        } else {
-            throw new IOException("Expected 'true' or 'false'");
         }
+        throw error("Unterminated string");
     }
 
-    private static Object parseNull(StringReader reader) throws IOException {
-        if (reader.read() == 'u' && reader.read() == 'l' && reader.read() == 'l') {
-            return null;
-        } else {
-            throw new IOException("Expected 'null'");
-        }
+    // 跳过空白并读出下一个字节，到末尾时返回 -1
+    int nextToken() {
+        skipWhitespace();
+        return pos < end ? buf[pos++] & 0xFF : -1;
     }
 
-    private static char next(StringReader reader) throws IOException {
-        reader.mark(1);
-        char c = (char) reader.read();
-        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
-            reader.mark(1);
-            c = (char) reader.read();
+    private int skipWhitespace() {
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                break;
+            }
+            pos++;
         }
-        return c;
+        return pos;
+    }
+
+    IOException error(String message) {
+        return new IOException(message + " at byte " + pos);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,324 @@
+package org.fengling.anti_addiction;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+// 边下载边把 HTML 转成纯文本的 BodySubscriber：不把整个网页读进 String
+//
+// 字节按块增量解码（跨块的多字节字符留到下一块），然后逐字符过一个小状态机：
+// 去掉标签、注释和 <script>/<style> 的内容，解码常见实体和数字实体，连续空白合并成一个空格，
+// 块级标签变成换行。提取的文本达到 maxChars，或者下载超过 MAX_BYTES 时取消下载，返回已有的文本。
+//
+// HttpClient 按顺序调用 onNext，所以这里不需要同步。
+class HtmlTextExtractor implements HttpResponse.BodySubscriber<String> {
+
+    // 即使文本不够，下载这么多字节后也停止（例如大段内联脚本）
+    static final long MAX_BYTES = 4L * 1024 * 1024;
+
+    private static final Set<String> BLOCK_TAGS = Set.of("br", "p", "div", "li", "ul", "ol", "tr", "td", "th", "table",
+            "h1", "h2", "h3", "h4", "h5", "h6", "pre", "section", "article", "header", "footer", "nav", "hr", "title", "dt", "dd");
+    private static final int MAX_TAG_NAME = 16;
+    private static final int MAX_ENTITY = 10;
+
+    private enum State { TEXT, TAG_NAME, TAG, COMMENT, RAW, ENTITY }
+
+    private final int maxChars;
+    private final CharsetDecoder decoder;
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+    private final CompletableFuture<String> body = new CompletableFuture<>();
+    private final StringBuilder text = new StringBuilder();
+    private ByteBuffer leftover; // 上一块末尾不完整的字符
+    private Flow.Subscription subscription;
+    private long bytesRead;
+
+    private State state = State.TEXT;
+    private final StringBuilder tagName = new StringBuilder();
+    private final StringBuilder entity = new StringBuilder();
+    private char quote; // 标签里属性值的引号，0 表示不在引号里
+    private String rawEnd; // 在 <script>/<style> 里时等待的结束标签，例如 "</script"
+    private int rawMatched;
+    private int commentDashes;
+    private int pendingSpace; // 0 没有，1 空格，2 换行
+
+    HtmlTextExtractor(Charset charset, int maxChars) {
+        this.maxChars = Math.max(1, maxChars);
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // 按 Content-Type 里的 charset 解码，没有写时按 UTF-8
+    static HttpResponse.BodyHandler<String> handler(int maxChars) {
+        return responseInfo -> new HtmlTextExtractor(charsetOf(responseInfo.headers()), maxChars);
+    }
+
+    @Override
+    public CompletionStage<String> getBody() {
+        return body;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (body.isDone()) {
+            return;
+        }
+        for (ByteBuffer buffer : buffers) {
+            bytesRead += buffer.remaining();
+            decode(buffer, false);
+            if (text.length() >= maxChars || bytesRead >= MAX_BYTES) {
+                finish(true);
+                return;
+            }
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        body.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (!body.isDone()) {
+            decode(ByteBuffer.allocate(0), true);
+            finish(false);
+        }
+    }
+
+    private void finish(boolean cancel) {
+        if (text.length() > maxChars) {
+            text.setLength(maxChars);
+        }
+        String result = text.toString();
+        if (cancel) {
+            subscription.cancel(); // 关闭连接，剩下的部分不再下载
+        }
+        Anti_addiction.LOGGER.debug("Extracted {} chars of text from {} bytes of HTML{}", result.length(), bytesRead, cancel ? " (download cancelled)" : "");
+        body.complete(result);
+    }
+
+    private void decode(ByteBuffer buffer, boolean endOfInput) {
+        ByteBuffer in = buffer;
+        if (leftover != null) {
+            in = ByteBuffer.allocate(leftover.remaining() + buffer.remaining()).put(leftover).put(buffer).flip();
+            leftover = null;
+        }
+        while (true) {
+            CoderResult result = decoder.decode(in, chars, endOfInput);
+            if (endOfInput && result.isUnderflow()) {
+                result = decoder.flush(chars);
+            }
+            chars.flip();
+            while (chars.hasRemaining()) {
+                accept(chars.get());
+            }
+            chars.clear();
+            if (!result.isOverflow()) {
+                break;
+            }
+        }
+        if (in.hasRemaining()) {
+            leftover = ByteBuffer.allocate(in.remaining()).put(in).flip();
+        }
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    state = State.TAG_NAME;
+                    tagName.setLength(0);
+                } else if (c == '&') {
+                    state = State.ENTITY;
+                    entity.setLength(0);
+                } else {
+                    emit(c);
+                }
+                break;
+            case TAG_NAME:
+                if (tagName.length() == 0 && !(Character.isLetter(c) || c == '/' || c == '!')) {
+                    // "a < b" 这样的文本，不是标签
+                    state = State.TEXT;
+                    emit('<');
+                    accept(c);
+                } else if (c == '>' || Character.isWhitespace(c)) {
+                    endTagName();
+                    if (c == '>') {
+                        endTag();
+                    }
+                } else {
+                    if (tagName.length() < MAX_TAG_NAME) {
+                        tagName.append(Character.toLowerCase(c));
+                    }
+                    if (tagName.length() == 3 && "!--".contentEquals(tagName)) {
+                        state = State.COMMENT;
+                        commentDashes = 0;
+                    }
+                }
+                break;
+            case TAG:
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    endTag();
+                }
+                break;
+            case COMMENT:
+                if (c == '>' && commentDashes >= 2) {
+                    state = State.TEXT;
+                }
+                commentDashes = c == '-' ? commentDashes + 1 : 0;
+                break;
+            case RAW:
+                if (Character.toLowerCase(c) == rawEnd.charAt(rawMatched)) {
+                    rawMatched++;
+                    if (rawMatched == rawEnd.length()) {
+                        rawEnd = null;
+                        tagName.setLength(0); // 结束标签剩下的部分按普通标签跳过
+                        state = State.TAG;
+                    }
+                } else {
+                    rawMatched = c == '<' ? 1 : 0;
+                }
+                break;
+            case ENTITY:
+                if (c == ';') {
+                    state = State.TEXT;
+                    emitEntity();
+                } else if (entity.length() < MAX_ENTITY && (Character.isLetterOrDigit(c) || c == '#')) {
+                    entity.append(c);
+                } else {
+                    // 不是实体，原样输出
+                    state = State.TEXT;
+                    emit('&');
+                    for (int i = 0; i < entity.length(); i++) {
+                        emit(entity.charAt(i));
+                    }
+                    accept(c);
+                }
+                break;
+        }
+    }
+
+    // 标签名读完，接下来跳过属性直到 '>'
+    private void endTagName() {
+        state = State.TAG;
+        quote = 0;
+        String name = tagName.toString().replace("/", ""); // </p> 和 <br/> 都按标签名判断
+        if (BLOCK_TAGS.contains(name)) {
+            pendingSpace = 2;
+        }
+    }
+
+    private void endTag() {
+        String name = tagName.toString();
+        if (name.equals("script") || name.equals("style")) {
+            rawEnd = "</" + name;
+            rawMatched = 0;
+            state = State.RAW;
+        } else {
+            state = State.TEXT;
+        }
+    }
+
+    private void emitEntity() {
+        String name = entity.toString();
+        int code = -1;
+        if (name.startsWith("#x") || name.startsWith("#X")) {
+            code = parseCode(name.substring(2), 16);
+        } else if (name.startsWith("#")) {
+            code = parseCode(name.substring(1), 10);
+        } else {
+            switch (name) {
+                case "amp": code = '&'; break;
+                case "lt": code = '<'; break;
+                case "gt": code = '>'; break;
+                case "quot": code = '"'; break;
+                case "apos": code = '\''; break;
+                case "nbsp": code = '\u00A0'; break;
+                case "le": code = '≤'; break;
+                case "ge": code = '≥'; break;
+                case "ne": code = '≠'; break;
+                case "times": code = '×'; break;
+                case "middot": code = '·'; break;
+                case "hellip": code = '…'; break;
+                case "mdash": code = '—'; break;
+                case "ndash": code = '–'; break;
+                case "laquo": code = '«'; break;
+                case "raquo": code = '»'; break;
+                case "copy": code = '©'; break;
+                default: break;
+            }
+        }
+        if (code < 0 || !Character.isValidCodePoint(code)) {
+            emit('&');
+            for (int i = 0; i < name.length(); i++) {
+                emit(name.charAt(i));
+            }
+            emit(';');
+            return;
+        }
+        for (char c : Character.toChars(code)) {
+            emit(c);
+        }
+    }
+
+    private static int parseCode(String digits, int radix) {
+        try {
+            return digits.isEmpty() ? -1 : Integer.parseInt(digits, radix);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // 连续空白只保留一个；包含换行（或块级标签）时保留换行。开头和结尾的空白都不输出
+    private void emit(char c) {
+        if (Character.isWhitespace(c) || c == '\u00A0') {
+            pendingSpace = Math.max(pendingSpace, c == '\n' ? 2 : 1);
+            return;
+        }
+        if (pendingSpace > 0 && text.length() > 0) {
+            text.append(pendingSpace == 2 ? '\n' : ' ');
+        }
+        pendingSpace = 0;
+        text.append(c);
+    }
+
+    private static Charset charsetOf(HttpHeaders headers) {
+        String contentType = headers.firstValue("Content-Type").orElse("");
+        int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index >= 0) {
+            String name = contentType.substring(index + 8).split(";")[0].trim().replace("\"", "");
+            try {
+                return Charset.forName(name);
+            } catch (RuntimeException e) {
+                Anti_addiction.LOGGER.warn("Unknown charset {} in Content-Type, using UTF-8", name);
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
@@ -0,0 +1,77 @@
+package org.fengling.anti_addiction;
+
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+
+// 共享的 HttpClient：ChatAPI 和 CodeforcesAPI 复用同一个客户端的连接池，不再每个请求都重新握手 TLS、新建 selector 线程
+//
+// 客户端按代理设置 (useProxy/proxyHost/proxyPort) 缓存，/chat proxy 修改配置后在下一次请求时重建。
+public class HttpClientRegistry {
+
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    // 单个请求从发出到收到响应头的超时，LLM 回复较慢，留得宽一些
+    public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private static HttpClient client;
+    private static String clientKey;
+    // shutdown() 之后不再创建客户端，直到下一次服务器启动时 start()
+    private static boolean stopped;
+
+    /**
+     * Returns the shared client for the current proxy settings, building a new one if the settings
+     * changed since the last call.
+     *
+     * @throws IllegalStateException if called after {@link #shutdown()} and before the next {@link #start()}
+     */
+    public static synchronized HttpClient get() {
+        if (stopped) {
+            throw new IllegalStateException("HTTP clients are shut down");
+        }
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        String proxyHost = serverConfig.getProxyHost();
+        boolean useProxy = serverConfig.isUseProxy() && proxyHost != null && !proxyHost.isEmpty();
+        String key = useProxy ? proxyHost + ":" + serverConfig.getProxyPort() : "direct";
+
+        if (client == null || !key.equals(clientKey)) {
+            if (serverConfig.isUseProxy() && !useProxy) {
+                Anti_addiction.LOGGER.warn("Proxy enabled but no proxy host specified, using direct connection");
+            }
+            // 旧客户端上还在进行的请求会照常完成，之后随客户端一起被回收
+            client = build(useProxy ? new InetSocketAddress(proxyHost, serverConfig.getProxyPort()) : null);
+            clientKey = key;
+        }
+        return client;
+    }
+
+    // 带默认请求超时的请求构建器
+    public static HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT);
+    }
+
+    public static synchronized void start() {
+        stopped = false;
+    }
+
+    public static synchronized void shutdown() {
+        stopped = true;
+        client = null;
+        clientKey = null;
+        Anti_addiction.LOGGER.info("HTTP clients shut down.");
+    }
+
+    private static HttpClient build(InetSocketAddress proxy) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2) // 服务器不支持时自动回退到 HTTP/1.1
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(IoExecutors.io()); // 异步请求的回调和响应解析都在模组的 IO 执行器上
+        if (proxy != null) {
+            Anti_addiction.LOGGER.info("Using proxy: {}:{}", proxy.getHostString(), proxy.getPort());
+            builder.proxy(ProxySelector.of(proxy));
+        }
+        return builder.build();
+    }
+}
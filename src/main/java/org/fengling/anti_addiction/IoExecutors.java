@@ -0,0 +1,123 @@
+package org.fengling.anti_addiction;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 模组自己的出站 I/O 执行器：LLM、Codeforces API 和镜像网页的请求都在这里跑，不再占用 ForkJoinPool.commonPool()
+//
+// 运行时支持虚拟线程 (Java 21+) 时每个任务一个虚拟线程；Java 17 上退回到有界的平台线程池。
+// 调用方通过 io() 显式传入，例如 CompletableFuture.supplyAsync(task, IoExecutors.io())。
+public class IoExecutors {
+
+    private static final int PLATFORM_THREADS = 16;
+
+    private static final AtomicInteger queuedTasks = new AtomicInteger();
+    private static final AtomicInteger activeTasks = new AtomicInteger();
+    private static final AtomicLong completedTasks = new AtomicLong();
+
+    // 对外的执行器不随服务器重启变化；底层线程池由 start() 创建，没调用过 start() 时（测试、独立运行的 main）在第一次使用时创建
+    private static final Executor IO = IoExecutors::submit;
+
+    private static ExecutorService delegate;
+    private static boolean virtualThreads;
+    // shutdown() 之后拒绝新任务，直到下一次服务器启动时显式 start()，不会在关服途中悄悄重建线程池
+    private static boolean stopped;
+
+    public static Executor io() {
+        return IO;
+    }
+
+    // 已提交但还没开始执行的任务数
+    public static int queueDepth() {
+        return queuedTasks.get();
+    }
+
+    public static int activeTasks() {
+        return activeTasks.get();
+    }
+
+    public static long completedTasks() {
+        return completedTasks.get();
+    }
+
+    public static synchronized boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    // 服务器启动时调用；单人游戏关闭世界后再进入时在这里重新创建线程池
+    public static synchronized void start() {
+        stopped = false;
+        delegate();
+    }
+
+    public static synchronized void shutdown() {
+        stopped = true;
+        if (delegate != null) {
+            delegate.shutdown(); // 已经在跑的请求让它们跑完，结果回到服务器线程时会被忽略
+            delegate = null;
+            Anti_addiction.LOGGER.info("IO executor shut down.");
+        }
+    }
+
+    private static void submit(Runnable task) {
+        queuedTasks.incrementAndGet();
+        try {
+            delegate().execute(() -> {
+                queuedTasks.decrementAndGet();
+                activeTasks.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    activeTasks.decrementAndGet();
+                    completedTasks.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queuedTasks.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private static synchronized ExecutorService delegate() {
+        if (stopped) {
+            throw new RejectedExecutionException("IO executor is shut down");
+        }
+        if (delegate == null) {
+            delegate = createVirtualThreadExecutor();
+            virtualThreads = delegate != null;
+            if (delegate == null) {
+                delegate = createPlatformExecutor();
+            }
+            Anti_addiction.LOGGER.info("IO executor started ({}).", virtualThreads ? "virtual threads" : PLATFORM_THREADS + " platform threads");
+        }
+        return delegate;
+    }
+
+    // 编译目标是 Java 17，所以通过反射调用 Executors.newVirtualThreadPerTaskExecutor
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService createPlatformExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PLATFORM_THREADS, PLATFORM_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "anti_addiction-io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -8,6 +8,7 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -21,23 +22,61 @@ public class ModConfig {
         private int maxPlayTimeMinutes = 60 * 4; // 最大游戏时间，默认 4 小时
         private String playtimeFilePath = "config/playtime.json"; // 游戏时间数据文件路径
         private String resetTime = "05:00:00"; // 每日重置时间，默认早上 5 点
+        private String resetTimeZone = ""; // 每日重置使用的时区，例如 Asia/Shanghai；留空使用服务器系统时区
         private int backupIntervalMinutes = 5; // 备份间隔，默认 5 分钟
+        private String playtimeStoreFormat = "json"; // 游戏时间快照格式：json 或 binary（内存映射的二进制文件）
 
         // Proxy settings
         private boolean useProxy = false;
         private String proxyHost = "";
         private int proxyPort = 8080;
 
+        // Action bar playtime display
+        private String actionBarMode = "changed"; // changed: 仅在显示的 mm:ss 变化时发送; always: 每次结算都发送; off: 不显示
+        private int actionBarRefreshSeconds = 1; // 两次发送之间的最小间隔（秒）
+
+        // AI chat
+        private boolean streamChatReplies = true; // 使用 streamGenerateContent 流式接收回复，边生成边发给玩家
+
+        // Dialogue history
+        private int dialogueMaxChars = 16000; // 每个对话保留的最大字符数（约 4000 token），超出时从最早的一轮开始丢弃
+        private boolean dialogueSummarize = false; // 接近上限时让模型把较早的几轮总结成一段摘要，而不是直接丢弃
+        private int dialogueIdleMinutes = 30; // 对话空闲超过这么多分钟后被清理
+        private int maxDialogues = 100; // 同时保留的对话数上限
+        private boolean persistDialogues = true; // 把对话历史保存到 config/dialogues/，重启后还能接着聊
+        private int dialogueFileMaxKb = 256; // 单个对话文件的大小上限，超过时丢弃最早的几轮
+
+        // Response cache
+        private int responseCacheTtlMinutes = 10; // 单轮 AI 回复缓存的有效期，0 表示不缓存
+        private int responseCacheMaxKb = 1024; // 回复缓存占用的内存上限
+
+        // Codeforces API
+        private int codeforcesCacheSeconds = 60; // Codeforces API 结果和"handle 不存在"的缓存时间，0 表示不缓存
+        private int contestRefreshMinutes = 5; // 后台刷新比赛列表的间隔，0 表示只在查询时下载
+        private int codeforcesRequestIntervalMillis = 2000; // 两次 Codeforces API 调用之间的最小间隔
+        private int userInfoFreshMinutes = 30; // user.info 结果在这段时间内直接返回，过期后先返回旧值再在后台刷新
+        private int browseTextMaxChars = 10000; // /cf query 浏览网页时最多提取的文本字符数，读够后停止下载
+        private int pageCacheMaxKb = 2048; // /cf query 浏览过的网页文本的内存缓存上限，0 表示不缓存
+        private int pageCacheFreshMinutes = 5; // 这段时间内直接使用缓存的网页，之后用 ETag/Last-Modified 重新验证
+        private boolean pageCacheOnDisk = false; // 同时把缓存的网页存到 config/page_cache/，重启后还能重新验证
+
+        private transient boolean frozen; // 发布成共享快照后为 true，Gson 不会序列化它，所以 update 拿到的副本可以修改
+
         public ServerConfig() {
             // 默认构造函数，Gson 需要
         }
 
+        void freeze() {
+            frozen = true;
+        }
+
         // Getters and Setters for Server Config
         public boolean isEnableAntiAddiction() {
             return enableAntiAddiction;
         }
 
         public void setEnableAntiAddiction(boolean enableAntiAddiction) {
+            checkMutable(frozen);
             this.enableAntiAddiction = enableAntiAddiction;
         }
 
@@ -46,6 +85,7 @@ public class ModConfig {
         }
 
         public void setAiChatServerAddress(String aiChatServerAddress) {
+            checkMutable(frozen);
             this.aiChatServerAddress = aiChatServerAddress;
         }
 
@@ -54,6 +94,7 @@ public class ModConfig {
         }
 
         public void setApiKey(String apiKey) {
+            checkMutable(frozen);
             this.apiKey = apiKey;
         }
 
@@ -62,6 +103,7 @@ public class ModConfig {
         }
 
         public void setMaxPlayTimeMinutes(int maxPlayTimeMinutes) {
+            checkMutable(frozen);
             this.maxPlayTimeMinutes = maxPlayTimeMinutes;
         }
 
@@ -70,6 +112,7 @@ public class ModConfig {
         }
 
         public void setPlaytimeFilePath(String playtimeFilePath) {
+            checkMutable(frozen);
             this.playtimeFilePath = playtimeFilePath;
         }
 
@@ -78,6 +121,7 @@ public class ModConfig {
         }
 
         public void setResetTime(String resetTime) {
+            checkMutable(frozen);
             this.resetTime = resetTime;
         }
 
@@ -86,6 +130,7 @@ public class ModConfig {
         }
 
         public void setBackupIntervalMinutes(int backupIntervalMinutes) {
+            checkMutable(frozen);
             this.backupIntervalMinutes = backupIntervalMinutes;
         }
 
@@ -95,6 +140,7 @@ public class ModConfig {
         }
 
         public void setUseProxy(boolean useProxy) {
+            checkMutable(frozen);
             this.useProxy = useProxy;
         }
 
@@ -103,6 +149,7 @@ public class ModConfig {
         }
 
         public void setProxyHost(String proxyHost) {
+            checkMutable(frozen);
             this.proxyHost = proxyHost;
         }
 
@@ -111,9 +158,199 @@ public class ModConfig {
         }
 
         public void setProxyPort(int proxyPort) {
+            checkMutable(frozen);
             this.proxyPort = proxyPort;
         }
 
+        public String getActionBarMode() {
+            return actionBarMode;
+        }
+
+        public void setActionBarMode(String actionBarMode) {
+            checkMutable(frozen);
+            this.actionBarMode = actionBarMode;
+        }
+
+        public int getActionBarRefreshSeconds() {
+            return actionBarRefreshSeconds;
+        }
+
+        public void setActionBarRefreshSeconds(int actionBarRefreshSeconds) {
+            checkMutable(frozen);
+            this.actionBarRefreshSeconds = actionBarRefreshSeconds;
+        }
+
+        public String getPlaytimeStoreFormat() {
+            return playtimeStoreFormat;
+        }
+
+        public void setPlaytimeStoreFormat(String playtimeStoreFormat) {
+            checkMutable(frozen);
+            this.playtimeStoreFormat = playtimeStoreFormat;
+        }
+
+        public String getResetTimeZone() {
+            return resetTimeZone;
+        }
+
+        public void setResetTimeZone(String resetTimeZone) {
+            checkMutable(frozen);
+            this.resetTimeZone = resetTimeZone;
+        }
+
+        public boolean isStreamChatReplies() {
+            return streamChatReplies;
+        }
+
+        public void setStreamChatReplies(boolean streamChatReplies) {
+            checkMutable(frozen);
+            this.streamChatReplies = streamChatReplies;
+        }
+
+        public int getDialogueMaxChars() {
+            return dialogueMaxChars;
+        }
+
+        public void setDialogueMaxChars(int dialogueMaxChars) {
+            checkMutable(frozen);
+            this.dialogueMaxChars = dialogueMaxChars;
+        }
+
+        public boolean isDialogueSummarize() {
+            return dialogueSummarize;
+        }
+
+        public void setDialogueSummarize(boolean dialogueSummarize) {
+            checkMutable(frozen);
+            this.dialogueSummarize = dialogueSummarize;
+        }
+
+        public int getDialogueIdleMinutes() {
+            return dialogueIdleMinutes;
+        }
+
+        public void setDialogueIdleMinutes(int dialogueIdleMinutes) {
+            checkMutable(frozen);
+            this.dialogueIdleMinutes = dialogueIdleMinutes;
+        }
+
+        public int getMaxDialogues() {
+            return maxDialogues;
+        }
+
+        public void setMaxDialogues(int maxDialogues) {
+            checkMutable(frozen);
+            this.maxDialogues = maxDialogues;
+        }
+
+        public boolean isPersistDialogues() {
+            return persistDialogues;
+        }
+
+        public void setPersistDialogues(boolean persistDialogues) {
+            checkMutable(frozen);
+            this.persistDialogues = persistDialogues;
+        }
+
+        public int getDialogueFileMaxKb() {
+            return dialogueFileMaxKb;
+        }
+
+        public void setDialogueFileMaxKb(int dialogueFileMaxKb) {
+            checkMutable(frozen);
+            this.dialogueFileMaxKb = dialogueFileMaxKb;
+        }
+
+        public int getResponseCacheTtlMinutes() {
+            return responseCacheTtlMinutes;
+        }
+
+        public void setResponseCacheTtlMinutes(int responseCacheTtlMinutes) {
+            checkMutable(frozen);
+            this.responseCacheTtlMinutes = responseCacheTtlMinutes;
+        }
+
+        public int getResponseCacheMaxKb() {
+            return responseCacheMaxKb;
+        }
+
+        public void setResponseCacheMaxKb(int responseCacheMaxKb) {
+            checkMutable(frozen);
+            this.responseCacheMaxKb = responseCacheMaxKb;
+        }
+
+        public int getCodeforcesCacheSeconds() {
+            return codeforcesCacheSeconds;
+        }
+
+        public void setCodeforcesCacheSeconds(int codeforcesCacheSeconds) {
+            checkMutable(frozen);
+            this.codeforcesCacheSeconds = codeforcesCacheSeconds;
+        }
+
+        public int getContestRefreshMinutes() {
+            return contestRefreshMinutes;
+        }
+
+        public void setContestRefreshMinutes(int contestRefreshMinutes) {
+            checkMutable(frozen);
+            this.contestRefreshMinutes = contestRefreshMinutes;
+        }
+
+        public int getCodeforcesRequestIntervalMillis() {
+            return codeforcesRequestIntervalMillis;
+        }
+
+        public void setCodeforcesRequestIntervalMillis(int codeforcesRequestIntervalMillis) {
+            checkMutable(frozen);
+            this.codeforcesRequestIntervalMillis = codeforcesRequestIntervalMillis;
+        }
+
+        public int getUserInfoFreshMinutes() {
+            return userInfoFreshMinutes;
+        }
+
+        public void setUserInfoFreshMinutes(int userInfoFreshMinutes) {
+            checkMutable(frozen);
+            this.userInfoFreshMinutes = userInfoFreshMinutes;
+        }
+
+        public int getBrowseTextMaxChars() {
+            return browseTextMaxChars;
+        }
+
+        public void setBrowseTextMaxChars(int browseTextMaxChars) {
+            checkMutable(frozen);
+            this.browseTextMaxChars = browseTextMaxChars;
+        }
+
+        public int getPageCacheMaxKb() {
+            return pageCacheMaxKb;
+        }
+
+        public void setPageCacheMaxKb(int pageCacheMaxKb) {
+            checkMutable(frozen);
+            this.pageCacheMaxKb = pageCacheMaxKb;
+        }
+
+        public int getPageCacheFreshMinutes() {
+            return pageCacheFreshMinutes;
+        }
+
+        public void setPageCacheFreshMinutes(int pageCacheFreshMinutes) {
+            checkMutable(frozen);
+            this.pageCacheFreshMinutes = pageCacheFreshMinutes;
+        }
+
+        public boolean isPageCacheOnDisk() {
+            return pageCacheOnDisk;
+        }
+
+        public void setPageCacheOnDisk(boolean pageCacheOnDisk) {
+            checkMutable(frozen);
+            this.pageCacheOnDisk = pageCacheOnDisk;
+        }
+
         @Override
         public String toString() {
             return "ServerConfig{" +
@@ -127,6 +364,27 @@ public class ModConfig {
                     ", useProxy=" + useProxy +
                     ", proxyHost='" + proxyHost + '\'' +
                     ", proxyPort=" + proxyPort +
+                    ", actionBarMode='" + actionBarMode + '\'' +
+                    ", actionBarRefreshSeconds=" + actionBarRefreshSeconds +
+                    ", playtimeStoreFormat='" + playtimeStoreFormat + '\'' +
+                    ", resetTimeZone='" + resetTimeZone + '\'' +
+                    ", streamChatReplies=" + streamChatReplies +
+                    ", dialogueMaxChars=" + dialogueMaxChars +
+                    ", dialogueSummarize=" + dialogueSummarize +
+                    ", dialogueIdleMinutes=" + dialogueIdleMinutes +
+                    ", maxDialogues=" + maxDialogues +
+                    ", persistDialogues=" + persistDialogues +
+                    ", dialogueFileMaxKb=" + dialogueFileMaxKb +
+                    ", responseCacheTtlMinutes=" + responseCacheTtlMinutes +
+                    ", responseCacheMaxKb=" + responseCacheMaxKb +
+                    ", codeforcesCacheSeconds=" + codeforcesCacheSeconds +
+                    ", contestRefreshMinutes=" + contestRefreshMinutes +
+                    ", codeforcesRequestIntervalMillis=" + codeforcesRequestIntervalMillis +
+                    ", userInfoFreshMinutes=" + userInfoFreshMinutes +
+                    ", browseTextMaxChars=" + browseTextMaxChars +
+                    ", pageCacheMaxKb=" + pageCacheMaxKb +
+                    ", pageCacheFreshMinutes=" + pageCacheFreshMinutes +
+                    ", pageCacheOnDisk=" + pageCacheOnDisk +
                     '}';
         }
     }
@@ -137,6 +395,9 @@ public class ModConfig {
         private String playerName;
         private long playedTime;
         private String codeforcesID;
+        private boolean hidePlayTime; // 玩家自行关闭 action bar 上的游戏时间显示
+
+        private transient boolean frozen;
 
         public PlayerConfig() {
             // Default constructor for Gson
@@ -149,12 +410,17 @@ public class ModConfig {
             this.codeforcesID = codeforcesID;
         }
 
+        void freeze() {
+            frozen = true;
+        }
+
         // Getters and Setters for Player Config
         public UUID getPlayerUuid() {
             return playerUuid;
         }
 
         public void setPlayerUuid(UUID playerUuid) {
+            checkMutable(frozen);
             this.playerUuid = playerUuid;
         }
 
@@ -163,6 +429,7 @@ public class ModConfig {
         }
 
         public void setPlayerName(String playerName) {
+            checkMutable(frozen);
             this.playerName = playerName;
         }
 
@@ -171,6 +438,7 @@ public class ModConfig {
         }
 
         public void setPlayedTime(long playedTime) {
+            checkMutable(frozen);
             this.playedTime = playedTime;
         }
 
@@ -179,9 +447,19 @@ public class ModConfig {
         }
 
         public void setCodeforcesID(String codeforcesID) {
+            checkMutable(frozen);
             this.codeforcesID = codeforcesID;
         }
 
+        public boolean isHidePlayTime() {
+            return hidePlayTime;
+        }
+
+        public void setHidePlayTime(boolean hidePlayTime) {
+            checkMutable(frozen);
+            this.hidePlayTime = hidePlayTime;
+        }
+
         @Override
         public String toString() {
             return "PlayerConfig{" +
@@ -189,12 +467,14 @@ public class ModConfig {
                     ", playerName='" + playerName + '\'' +
                     ", playedTime=" + playedTime +
                     ", codeforcesID='" + codeforcesID + '\'' +
+                    ", hidePlayTime=" + hidePlayTime +
                     '}';
         }
     }
 
     private ServerConfig serverConfig;
     private List<PlayerConfig> playerConfigs;
+    private transient boolean frozen;
 
     public ModConfig() {
         this.serverConfig = new ServerConfig(); // Default server config
@@ -207,6 +487,7 @@ public class ModConfig {
     }
 
     public void setServerConfig(ServerConfig serverConfig) {
+        checkMutable(frozen);
         this.serverConfig = serverConfig;
     }
 
@@ -215,9 +496,52 @@ public class ModConfig {
     }
 
     public void setPlayerConfigs(List<PlayerConfig> playerConfigs) {
+        checkMutable(frozen);
         this.playerConfigs = playerConfigs;
     }
 
+    // 由 ConfigManager 在发布快照时调用：之后这个对象、服务器配置和每个玩家配置的 setter 都会抛异常，
+    // 玩家列表也换成只读的，只能通过 ConfigManager.update 拿到可修改的副本
+    void freeze() {
+        if (serverConfig == null) {
+            serverConfig = new ServerConfig();
+        }
+        if (playerConfigs == null) {
+            playerConfigs = new ArrayList<>();
+        }
+        serverConfig.freeze();
+        for (PlayerConfig playerConfig : playerConfigs) {
+            playerConfig.freeze();
+        }
+        playerConfigs = Collections.unmodifiableList(playerConfigs);
+        frozen = true;
+    }
+
+    private static void checkMutable(boolean frozen) {
+        if (frozen) {
+            throw new UnsupportedOperationException("Shared config snapshot is read-only, use ConfigManager.update");
+        }
+    }
+
+    public PlayerConfig findPlayerConfig(UUID playerUuid) {
+        for (PlayerConfig pc : playerConfigs) {
+            if (playerUuid.equals(pc.getPlayerUuid())) {
+                return pc;
+            }
+        }
+        return null;
+    }
+
+    // Only valid on a copy handed out by ConfigManager.update, the shared snapshot is read-only.
+    public PlayerConfig getOrCreatePlayerConfig(UUID playerUuid, String playerName) {
+        PlayerConfig playerConfig = findPlayerConfig(playerUuid);
+        if (playerConfig == null) {
+            playerConfig = new PlayerConfig(playerUuid, playerName, 0, null);
+            playerConfigs.add(playerConfig);
+        }
+        return playerConfig;
+    }
+
     // Load config from JSON file
     public static ModConfig loadConfig(String filePath) {
         Gson gson = new GsonBuilder().setPrettyPrinting().create();
@@ -0,0 +1,164 @@
+package org.fengling.anti_addiction;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// 模组共享的定时线程：备份、每日重置等后台任务都在这一个线程上调度，取代每个功能各开一个 java.util.Timer
+//
+// 任务在调度线程上执行，需要碰游戏状态时应通过 server.execute 切回服务器线程。
+// 服务器停止后线程会被关闭，下次启动时按需重新创建（单人游戏里同一个进程会多次开关服务器）。
+public class ModScheduler {
+
+    // 每日任务最多隔这么久按墙上时钟重新检查一次，宿主机休眠或系统时间被调整后也能及时触发
+    private static final long MAX_DAILY_WAIT_MILLIS = 60_000L;
+
+    private static ScheduledExecutorService executor;
+
+    public static synchronized ScheduledExecutorService executor() {
+        if (executor == null || executor.isShutdown()) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "anti_addiction-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Runs {@code task} every {@code period} after the previous run finished. Runs missed while the host
+     * was asleep are not replayed in a burst.
+     */
+    public static ScheduledFuture<?> scheduleWithFixedDelay(String name, Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return executor().scheduleWithFixedDelay(guarded(name, task), initialDelay, period, unit);
+    }
+
+    public static ScheduledFuture<?> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+        return executor().schedule(guarded(name, task), delay, unit);
+    }
+
+    /**
+     * Runs {@code task} once a day at {@code time} in {@code zone}. The next run is recomputed from the
+     * wall clock after every run, so it stays on the configured local time across DST changes. The task
+     * receives the scheduled time it is running for.
+     */
+    public static DailyTask scheduleDaily(String name, LocalTime time, ZoneId zone, Consumer<ZonedDateTime> task) {
+        DailyTask dailyTask = new DailyTask(name, time, zone, task);
+        dailyTask.scheduleNext(ZonedDateTime.now(zone));
+        return dailyTask;
+    }
+
+    // 下一次 time 出现的时刻（严格晚于 now）。夏令时跳过的时间顺延到跳变之后。
+    public static ZonedDateTime nextOccurrence(ZonedDateTime now, LocalTime time) {
+        ZonedDateTime candidate = ZonedDateTime.of(now.toLocalDate(), time, now.getZone());
+        if (!candidate.isAfter(now)) {
+            candidate = ZonedDateTime.of(now.toLocalDate().plusDays(1), time, now.getZone());
+        }
+        return candidate;
+    }
+
+    // 最近一次已经过去的 time 时刻（不晚于 now）
+    public static ZonedDateTime previousOccurrence(ZonedDateTime now, LocalTime time) {
+        ZonedDateTime candidate = ZonedDateTime.of(now.toLocalDate(), time, now.getZone());
+        if (candidate.isAfter(now)) {
+            candidate = ZonedDateTime.of(now.toLocalDate().minusDays(1), time, now.getZone());
+        }
+        return candidate;
+    }
+
+    // 还没执行的任务被取消，持有它们的 ScheduledFuture 的调用方能通过 isDone() 知道任务不会再运行，
+    // 下次使用时重新调度（shutdownNow 本身只把它们从队列里拿走，不会标记为完成）
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            for (Runnable dropped : executor.shutdownNow()) {
+                if (dropped instanceof Future<?> future) {
+                    future.cancel(false);
+                }
+            }
+            executor = null;
+            Anti_addiction.LOGGER.info("Scheduler stopped.");
+        }
+    }
+
+    // 任务抛出的异常会让 ScheduledExecutorService 静默地取消周期任务，这里记录下来并吞掉
+    private static Runnable guarded(String name, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                Anti_addiction.LOGGER.error("Scheduled task '{}' failed", name, t);
+            }
+        };
+    }
+
+    public static class DailyTask {
+        private final String name;
+        private final LocalTime time;
+        private final ZoneId zone;
+        private final Consumer<ZonedDateTime> task;
+        private volatile ZonedDateTime nextRun;
+        private volatile ScheduledFuture<?> pending;
+        private volatile boolean cancelled;
+
+        private DailyTask(String name, LocalTime time, ZoneId zone, Consumer<ZonedDateTime> task) {
+            this.name = name;
+            this.time = time;
+            this.zone = zone;
+            this.task = task;
+        }
+
+        public ZonedDateTime getNextRun() {
+            return nextRun;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> current = pending;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+
+        private void scheduleNext(ZonedDateTime now) {
+            nextRun = nextOccurrence(now, time);
+            Anti_addiction.LOGGER.info("Daily task '{}' next run at {}", name, nextRun);
+            waitForNextRun();
+        }
+
+        // 分段等待：延迟按单调时钟计算，而目标是墙上时间，所以每次醒来都重新比较一次
+        private void waitForNextRun() {
+            if (cancelled) {
+                return;
+            }
+            long delay = ChronoUnit.MILLIS.between(ZonedDateTime.now(zone), nextRun);
+            pending = schedule(name, this::check, Math.max(0, Math.min(delay, MAX_DAILY_WAIT_MILLIS)), TimeUnit.MILLISECONDS);
+        }
+
+        private void check() {
+            if (cancelled) {
+                return;
+            }
+            ZonedDateTime now = ZonedDateTime.now(zone);
+            if (now.isBefore(nextRun)) {
+                waitForNextRun();
+                return;
+            }
+            // 不管错过了多久都只执行一次，下一次从当前时间重新计算
+            ZonedDateTime scheduledAt = nextRun;
+            try {
+                task.accept(scheduledAt);
+            } catch (Throwable t) {
+                Anti_addiction.LOGGER.error("Daily task '{}' failed", name, t);
+            }
+            scheduleNext(now);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package org.fengling.anti_addiction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// /cf query 浏览过的网页：按 URL 缓存提取好的文本和 ETag / Last-Modified
+//
+// 内存里是按字节计的 LRU；打开磁盘层时每个页面另存一个文件 config/page_cache/<sha256(url)>.page，
+// 内存里没有时从磁盘读回来并放回内存，服务器重启后仍然可以用 If-None-Match / If-Modified-Since 重新验证。
+// 缓存只负责存取和统计，什么时候重新验证、怎样发条件请求由调用方 (CodeforcesAPI) 决定。
+//
+// 磁盘文件格式：magic, version, 保存时间 (long)，然后是 url, etag, lastModified, text，
+// 每个字符串是 int 长度 + UTF-8 字节，长度 -1 表示 null。
+public class PageCache {
+
+    private static final int MAGIC = 0x41415043; // "AAPC"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".page";
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    static final int MAX_DISK_FILES = 256;
+
+    private final Path directory;
+    private final LinkedHashMap<String, Page> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public static class Page {
+        public final String url;
+        public final String text;
+        public final String etag;
+        public final String lastModified;
+        public final long fetchedAtMillis;
+
+        public Page(String url, String text, String etag, String lastModified, long fetchedAtMillis) {
+            this.url = url;
+            this.text = text;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAtMillis = fetchedAtMillis;
+        }
+
+        Page withFetchedAt(long fetchedAtMillis) {
+            return new Page(url, text, etag, lastModified, fetchedAtMillis);
+        }
+
+        int sizeBytes() {
+            return (url.length() + text.length()) * 2 + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    public PageCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // 先查内存，再查磁盘（useDisk 为真时）；没有时返回 null。只查找，不计入命中率
+    // 磁盘上读到的页面放回内存的 LRU，之后的查询不用再读文件
+    public Page get(String url, long maxBytes, boolean useDisk) {
+        synchronized (this) {
+            Page page = pages.get(url);
+            if (page != null || !useDisk) {
+                return page;
+            }
+        }
+        Page page = readFile(url);
+        if (page == null) {
+            return null;
+        }
+        synchronized (this) {
+            Page newer = pages.get(url); // 读文件期间可能已经 put 了更新的版本
+            if (newer != null) {
+                return newer;
+            }
+            putInMemory(page, maxBytes);
+        }
+        return page;
+    }
+
+    public void put(Page page, long maxBytes, boolean useDisk) {
+        if (!putInMemory(page, maxBytes)) {
+            return;
+        }
+        if (useDisk) {
+            IoExecutors.io().execute(() -> writeFile(page));
+        }
+    }
+
+    // 304：内容没变，只更新获取时间
+    public Page touch(Page page, long maxBytes, boolean useDisk) {
+        Page touched = page.withFetchedAt(System.currentTimeMillis());
+        put(touched, maxBytes, useDisk);
+        return touched;
+    }
+
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    public void recordRevalidated() {
+        revalidated.incrementAndGet();
+    }
+
+    public void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    public synchronized int size() {
+        return pages.size();
+    }
+
+    public synchronized long sizeBytes() {
+        return bytes;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long revalidatedCount() {
+        return revalidated.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    // 没有下载正文的比例：直接命中加上 304
+    public double hitRate() {
+        long served = hits.get() + revalidated.get();
+        long total = served + misses.get();
+        return total == 0 ? 0 : (double) served / total;
+    }
+
+    // 放进内存并按最近使用淘汰到 maxBytes 以内；比整个预算还大的页面不缓存，返回 false
+    private synchronized boolean putInMemory(Page page, long maxBytes) {
+        if (page.sizeBytes() > maxBytes) {
+            return false;
+        }
+        Page previous = pages.put(page.url, page);
+        if (previous != null) {
+            bytes -= previous.sizeBytes();
+        }
+        bytes += page.sizeBytes();
+        Iterator<Map.Entry<String, Page>> iterator = pages.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Page eldest = iterator.next().getValue();
+            if (eldest != page) {
+                bytes -= eldest.sizeBytes();
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    private Path pathOf(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + EXTENSION.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return directory.resolve(name.append(EXTENSION).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // 每个 JVM 都必须支持 SHA-256
+        }
+    }
+
+    private Page readFile(String url) {
+        Path path = pathOf(url);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Anti_addiction.LOGGER.warn("Ignoring unreadable page cache file {}", path);
+                return null;
+            }
+            long fetchedAtMillis = in.readLong();
+            String storedUrl = readString(in);
+            String etag = readString(in);
+            String lastModified = readString(in);
+            String text = readString(in);
+            return url.equals(storedUrl) && text != null ? new Page(url, text, etag, lastModified, fetchedAtMillis) : null;
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.warn("Failed to read page cache file {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeFile(Page page) {
+        Path path = pathOf(page.url);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(page.text.length() + 256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(page.fetchedAtMillis);
+            writeString(out, page.url);
+            writeString(out, page.etag);
+            writeString(out, page.lastModified);
+            writeString(out, page.text);
+            out.flush();
+
+            Files.createDirectories(directory);
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tempPath, bytes.toByteArray());
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            pruneFiles();
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to write page cache file {}", path, e);
+        }
+    }
+
+    // 文件太多时删掉最久没写过的
+    private void pruneFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            stream.forEach(files::add);
+        }
+        if (files.size() <= MAX_DISK_FILES) {
+            return;
+        }
+        Map<Path, FileTime> modified = new LinkedHashMap<>();
+        for (Path file : files) {
+            modified.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort(Comparator.comparing(modified::get));
+        for (Path file : files.subList(0, files.size() - MAX_DISK_FILES)) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,400 @@
+package org.fengling.anti_addiction;
+
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// 二进制游戏时间文件：内存映射的开放寻址哈希表，每条记录固定 20 字节 (UUID msb + lsb + int)
+// 登录/登出时玩家的槽位直接原地更新，整表快照则写成新一代的文件；加载时也不需要解析文本
+//
+// playtime.bin 本身只是 16 字节的指针文件：magic, version, generation (long)，表在 playtime.bin.<generation> 里。
+// 映射着的文件在 Windows 上不能被重命名覆盖，所以重建时从不替换当前映射的文件：新表写进下一代文件并 fsync，
+// 再原子替换指针文件（它从不映射），然后重新映射并删掉旧的一代。崩溃时指针要么指向旧表要么指向新表，
+// 没被指向的那一代在下次打开时删掉。旧版本直接把表放在 playtime.bin 里，打开时复制成第 1 代。
+//
+// 表文件头 16 字节：magic, version, capacity, count；之后是 capacity 个槽位，msb 和 lsb 都为 0 表示空槽。
+// 只在 PlayTimeStore 的 IO 线程上使用。
+public class PlayTimeBinaryFile implements Closeable {
+
+    private static final int MAGIC = 0x41415054; // "AAPT"
+    private static final int POINTER_MAGIC = 0x41415047; // "AAPG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 20;
+    private static final int MIN_CAPACITY = 1024;
+
+    private final Path path; // 指针文件
+    private long generation;
+    private boolean dirty; // 上次重建后原地改过槽位，关闭时更新指针文件的 mtime
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int mask;
+    private int count;
+
+    private PlayTimeBinaryFile(Path path) {
+        this.path = path;
+    }
+
+    // 打开已有文件；文件不存在时创建一个空表
+    public static PlayTimeBinaryFile open(Path path) throws IOException {
+        PlayTimeBinaryFile file = new PlayTimeBinaryFile(path);
+        file.generation = readPointer(path);
+        file.mapExisting();
+        file.deleteOtherGenerations();
+        return file;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void readInto(PlayTimeTable table) {
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offsetOf(slot);
+            long msb = map.getLong(offset);
+            long lsb = map.getLong(offset + 8);
+            if (msb != 0 || lsb != 0) {
+                table.put(msb, lsb, map.getInt(offset + 16));
+            }
+        }
+    }
+
+    public Map<UUID, Integer> toMap() {
+        Map<UUID, Integer> result = new HashMap<>(count * 2);
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offsetOf(slot);
+            long msb = map.getLong(offset);
+            long lsb = map.getLong(offset + 8);
+            if (msb != 0 || lsb != 0) {
+                result.put(new UUID(msb, lsb), map.getInt(offset + 16));
+            }
+        }
+        return result;
+    }
+
+    // 原地更新玩家的槽位：已有玩家只改 4 字节的值。新玩家会让表超过负载上限时，
+    // 先按 applySnapshot 的方式扩容重写整个文件，不会静默丢掉这次写入。
+    public void put(long msb, long lsb, int value) throws IOException {
+        int offset = offsetOf(findSlot(msb, lsb));
+        if (isEmpty(offset)) {
+            if ((count + 1) * 2 > capacity) {
+                Map<UUID, Integer> grown = toMap();
+                grown.put(new UUID(msb, lsb), value);
+                rebuild(grown);
+                return;
+            }
+            map.putInt(offset + 16, value);
+            map.putLong(offset + 8, lsb);
+            map.putLong(offset, msb);
+            setCount(count + 1);
+            dirty = true;
+            return;
+        }
+        map.putInt(offset + 16, value);
+        dirty = true;
+    }
+
+    // 把内存中的快照写进文件：新表写成下一代文件后切换指针，崩溃时磁盘上要么是旧表要么是新表，
+    // 不会出现原地搬动槽位写到一半留下的重复记录。内容和文件相同时不重写。
+    public void applySnapshot(Map<UUID, Integer> snapshot) throws IOException {
+        if (!matches(snapshot)) {
+            rebuild(snapshot);
+        }
+    }
+
+    public void force() {
+        map.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        unmap();
+        if (dirty) {
+            // 原地更新只改表文件，PlayTimeStore 比较的是 playtime.bin 和 playtime.json 的 mtime
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            dirty = false;
+        }
+    }
+
+    // 当前映射的表文件，测试用
+    Path dataPath() {
+        return dataPath(generation);
+    }
+
+    MappedByteBuffer mapping() {
+        return map;
+    }
+
+    // --- JSON import / export ---
+
+    public static Map<UUID, Integer> readJson(Path jsonPath) throws IOException {
+        try {
+            String content = new String(Files.readAllBytes(jsonPath), StandardCharsets.UTF_8);
+            Map<UUID, Integer> loaded = new Gson().fromJson(content, new TypeToken<HashMap<UUID, Integer>>(){}.getType());
+            return loaded != null ? loaded : new HashMap<>();
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid playtime JSON: " + jsonPath, e);
+        }
+    }
+
+    public static void writeJson(Path jsonPath, Map<UUID, Integer> playTimes) throws IOException {
+        Path tempPath = jsonPath.resolveSibling(jsonPath.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempPath.toFile());
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            new Gson().toJson(playTimes, writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        replace(tempPath, jsonPath);
+    }
+
+    public void importJson(Path jsonPath) throws IOException {
+        applySnapshot(readJson(jsonPath));
+        force();
+    }
+
+    public void exportJson(Path jsonPath) throws IOException {
+        writeJson(jsonPath, toMap());
+    }
+
+    // --- internals ---
+
+    private void mapExisting() throws IOException {
+        Path dataPath = dataPath();
+        channel = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read the whole header
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException("Not a playtime binary file: " + path);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException("Unsupported playtime binary file version " + version + ": " + dataPath);
+        }
+        capacity = header.getInt();
+        if (Integer.bitCount(capacity) != 1 || channel.size() < HEADER_SIZE + (long) capacity * RECORD_SIZE) {
+            channel.close();
+            throw new IOException("Truncated playtime binary file: " + path);
+        }
+        mask = capacity - 1;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        count = map.getInt(12);
+    }
+
+    private boolean matches(Map<UUID, Integer> snapshot) {
+        if (snapshot.size() != count) {
+            return false;
+        }
+        for (Map.Entry<UUID, Integer> entry : snapshot.entrySet()) {
+            int offset = offsetOf(findSlot(entry.getKey().getMostSignificantBits(), entry.getKey().getLeastSignificantBits()));
+            if (isEmpty(offset) || map.getInt(offset + 16) != entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 写出下一代文件，切换指针后再重新映射。当前映射的文件不会被覆盖或重命名；切换失败时继续用原来的映射
+    private void rebuild(Map<UUID, Integer> snapshot) throws IOException {
+        int oldCapacity = capacity;
+        long next = generation + 1;
+        Path nextPath = dataPath(next);
+        try {
+            writeFile(nextPath, snapshot);
+            writePointer(path, next);
+        } catch (IOException e) {
+            deleteQuietly(nextPath);
+            throw e;
+        }
+        Path oldPath = dataPath();
+        unmap();
+        generation = next;
+        dirty = false;
+        mapExisting();
+        // 在 Windows 上旧的映射被回收之前删不掉，留到下次打开时再删
+        deleteQuietly(oldPath);
+        if (capacity != oldCapacity) {
+            Anti_addiction.LOGGER.info("Playtime binary file resized to {} slots", capacity);
+        }
+    }
+
+    private void unmap() throws IOException {
+        if (map != null) {
+            map.force();
+            map = null; // MappedByteBuffer 没有公开的 unmap，映射要等 GC 回收
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private Path dataPath(long generation) {
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    // 读取指针文件里的当前代数；没有文件时创建空表，旧格式的表复制成第 1 代
+    private static long readPointer(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            writeFile(path.resolveSibling(path.getFileName() + ".1"), new HashMap<>());
+            writePointer(path, 1);
+            return 1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(16);
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && in.read(header) >= 0) {
+                // read the whole pointer
+            }
+        }
+        header.flip();
+        int magic = header.remaining() >= 4 ? header.getInt() : 0;
+        if (magic == MAGIC) {
+            Path first = path.resolveSibling(path.getFileName() + ".1");
+            Path tempPath = path.resolveSibling(path.getFileName() + ".1.tmp");
+            Files.copy(path, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                out.force(true);
+            }
+            replace(tempPath, first);
+            writePointer(path, 1);
+            Anti_addiction.LOGGER.info("Converted playtime binary file {} to {}", path, first);
+            return 1;
+        }
+        if (magic != POINTER_MAGIC || header.remaining() < 12) {
+            throw new IOException("Not a playtime binary file: " + path);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported playtime binary file version " + version + ": " + path);
+        }
+        return header.getLong();
+    }
+
+    private static void writePointer(Path path, long generation) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(16).putInt(POINTER_MAGIC).putInt(VERSION).putLong(generation);
+        buffer.flip();
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        replace(tempPath, path);
+    }
+
+    // 删掉指针没有指向的表文件：崩溃前写了一半的下一代，或者上次没删掉的旧一代
+    private void deleteOtherGenerations() {
+        String prefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path.toAbsolutePath().getParent(), prefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                if (suffix.matches("\\d+") && Long.parseLong(suffix) != generation) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.debug("Cannot list old playtime binary files for {}", path, e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.debug("Cannot delete old playtime binary file {}", file, e);
+        }
+    }
+
+    private static void writeFile(Path target, Map<UUID, Integer> playTimes) throws IOException {
+        int newCapacity = MIN_CAPACITY;
+        while (newCapacity < playTimes.size() * 4) {
+            newCapacity <<= 1;
+        }
+        int newMask = newCapacity - 1;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + newCapacity * RECORD_SIZE);
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, newCapacity).putInt(12, playTimes.size());
+        for (Map.Entry<UUID, Integer> entry : playTimes.entrySet()) {
+            long msb = entry.getKey().getMostSignificantBits();
+            long lsb = entry.getKey().getLeastSignificantBits();
+            int slot = PlayTimeTable.hash(msb, lsb) & newMask;
+            while (buffer.getLong(HEADER_SIZE + slot * RECORD_SIZE) != 0 || buffer.getLong(HEADER_SIZE + slot * RECORD_SIZE + 8) != 0) {
+                slot = (slot + 1) & newMask;
+            }
+            int offset = HEADER_SIZE + slot * RECORD_SIZE;
+            buffer.putLong(offset, msb).putLong(offset + 8, lsb).putInt(offset + 16, entry.getValue());
+        }
+
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+    }
+
+    static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // 重命名本身也要落盘，调用方随后才会清空日志；有的平台不能打开目录，这时只能依赖文件系统
+        Path directory = target.toAbsolutePath().getParent();
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.debug("Cannot sync directory {}", directory, e);
+        }
+    }
+
+    private int findSlot(long msb, long lsb) {
+        int slot = PlayTimeTable.hash(msb, lsb) & mask;
+        while (true) {
+            int offset = offsetOf(slot);
+            if (isEmpty(offset) || (map.getLong(offset) == msb && map.getLong(offset + 8) == lsb)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean isEmpty(int offset) {
+        return map.getLong(offset) == 0 && map.getLong(offset + 8) == 0;
+    }
+
+    private void setCount(int newCount) {
+        count = newCount;
+        map.putInt(12, newCount);
+    }
+
+    private static int offsetOf(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
@@ -1,11 +1,10 @@
 package org.fengling.anti_addiction;
 
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import net.minecraft.commands.Commands;
 import net.minecraft.commands.arguments.EntityArgument;
 import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.TickEvent;
@@ -16,36 +15,69 @@ import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraft.network.protocol.game.ClientboundSetActionBarTextPacket;
 import net.minecraft.network.protocol.game.ClientboundSetTitlesAnimationPacket;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.Writer;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Instant;
 import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class PlayTimeKick {
 
-    Map<UUID, Integer> playerPlayTimes = new HashMap<>();
-    private Timer backupTimer;
-    private Timer resetTimer;
+    // 游戏时间的存储单位仍然是 tick (50 ms)，与 playtime.json 和 /aa playtime set 保持兼容
+    private static final long NANOS_PER_TICK = 50_000_000L;
+    // 每秒结算一次在线时间
+    private static final long ACCRUAL_INTERVAL_NANOS = 1_000_000_000L;
+    // 单次结算的上限，防止宿主机休眠后一次性给所有人记上几个小时
+    private static final long MAX_ACCRUAL_NANOS = 60_000_000_000L;
+
+    // 缓存的 action bar 文本最多覆盖 24 小时，超出后现建
+    private static final int MAX_CACHED_DISPLAY_SECONDS = 24 * 60 * 60;
+
+    // playerPlayTimes 只在服务器线程上读写，定时任务通过 server.execute 切回服务器线程
+    PlayTimeTable playerPlayTimes = new PlayTimeTable();
+    private PlayTimeStore playTimeStore;
+    private MinecraftServer server;
+    private final Map<UUID, DisplayState> displayStates = new HashMap<>();
+    private Component[] playTimeComponents = new Component[0];
+    private long lastAccrualNanos;
+    private long accrualRemainderNanos;
+    // 备份和每日重置共用 ModScheduler 的调度线程
+    private ScheduledFuture<?> backupTask;
+    private ModScheduler.DailyTask resetTask;
 
     @SubscribeEvent
     public void onServerStarting(ServerStartingEvent event)
     {
         // Do something when the server starts
         Anti_addiction.LOGGER.info("HELLO from server starting");
+        server = event.getServer();
         loadPlayTimes();
+        lastAccrualNanos = 0;
+        accrualRemainderNanos = 0;
+        catchUpMissedReset();
         scheduleBackup();
         scheduleDailyReset();
     }
 
     @SubscribeEvent
     public void onServerStopping(ServerStoppingEvent event) {
+        if (backupTask != null) {
+            backupTask.cancel(false);
+            backupTask = null;
+        }
+        if (resetTask != null) {
+            resetTask.cancel();
+            resetTask = null;
+        }
         savePlayTimes();
+        if (playTimeStore != null) {
+            playTimeStore.close();
+        }
     }
 
     @SubscribeEvent
@@ -56,118 +88,265 @@ public class PlayTimeKick {
             String playerName = player.getName().getString();
             Anti_addiction.LOGGER.info("Player {} has logged in.", playerName);
 
-            UUID playerId = player.getUUID();
-            int playTime = playerPlayTimes.getOrDefault(playerId, 0);
+            // 登录时就插入条目，之后每秒的结算不会再扩容表
+            playerPlayTimes.putIfAbsent(player.getUUID(), 0);
+            if (playTimeStore != null) {
+                playTimeStore.updateInPlace(player.getUUID(), playerPlayTimes.get(player.getUUID()));
+            }
+            displayStates.put(player.getUUID(), createDisplayState(player));
+            checkAndKickPlayer(player, playerPlayTimes.get(player.getUUID()));
+        }
+    }
 
-            playerPlayTimes.put(playerId, playTime);
-            checkAndKickPlayer(player);
+    @SubscribeEvent
+    public void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+        UUID playerId = event.getEntity().getUUID();
+        displayStates.remove(playerId);
+        if (playTimeStore != null) {
+            playTimeStore.updateInPlace(playerId, playerPlayTimes.get(playerId));
         }
     }
 
     @SubscribeEvent
-    public void onPlayerTick(TickEvent.PlayerTickEvent event) {
-        if (event.phase == TickEvent.Phase.END && event.player instanceof ServerPlayer) {
-            ServerPlayer player = (ServerPlayer) event.player;
-            UUID playerId = player.getUUID();
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (lastAccrualNanos == 0) {
+            lastAccrualNanos = now;
+            return;
+        }
+
+        long elapsed = now - lastAccrualNanos;
+        if (elapsed < ACCRUAL_INTERVAL_NANOS) {
+            return;
+        }
+        lastAccrualNanos = now;
 
-            int playTime = playerPlayTimes.getOrDefault(playerId, 0);
-            playTime++;
-            playerPlayTimes.put(playerId, playTime);
+        // 按实际经过的时间结算，服务器卡顿时 tick 变慢也不会少算
+        elapsed = Math.min(elapsed, MAX_ACCRUAL_NANOS) + accrualRemainderNanos;
+        int elapsedTicks = (int) (elapsed / NANOS_PER_TICK);
+        accrualRemainderNanos = elapsed % NANOS_PER_TICK;
 
-            checkAndKickPlayer(player);
+        accruePlayTime(event.getServer(), elapsedTicks, now);
 
-            displayPlayTime(player, playTime / 20);
+        // 只把这一秒里变化过的玩家追加到日志
+        if (playTimeStore != null) {
+            playTimeStore.appendDirty(playerPlayTimes);
         }
     }
 
-    private void checkAndKickPlayer(ServerPlayer player) {
-        UUID playerId = player.getUUID();
-        int playTime = playerPlayTimes.getOrDefault(playerId, 0);
+    // now 是这次结算的时间戳，刷新间隔也用它比较，否则两次读时钟之间的抖动会让 1 秒的刷新漏发一次
+    private void accruePlayTime(MinecraftServer server, int elapsedTicks, long now) {
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        int maxPlayTicks = serverConfig.getMaxPlayTimeMinutes() * 60 * 20;
+        String displayMode = serverConfig.getActionBarMode();
+        boolean displayEnabled = !"off".equalsIgnoreCase(displayMode);
+        boolean onlyWhenChanged = !"always".equalsIgnoreCase(displayMode);
+        long refreshNanos = Math.max(0, serverConfig.getActionBarRefreshSeconds()) * 1_000_000_000L;
 
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        int maxPlayTimeMinutes = config.getServerConfig().getMaxPlayTimeMinutes();
+        // 复制一份在线列表，踢人时不会影响遍历
+        List<ServerPlayer> players = new ArrayList<>(server.getPlayerList().getPlayers());
+        for (int i = 0; i < players.size(); i++) {
+            ServerPlayer player = players.get(i);
+            int playTime = playerPlayTimes.add(player.getUUID(), elapsedTicks);
+
+            if (playTime >= maxPlayTicks) {
+                kickPlayer(player);
+            } else if (displayEnabled) {
+                displayPlayTime(player, playTime / 20, onlyWhenChanged, refreshNanos, now);
+            }
+        }
+    }
+
+    private void checkAndKickPlayer(ServerPlayer player, int playTime) {
+        int maxPlayTimeMinutes = ConfigManager.server().getMaxPlayTimeMinutes();
 
         if (playTime >= maxPlayTimeMinutes * 60 * 20) {
-            player.connection.disconnect(Component.literal("您今天的在线时间已达到上限"));
+            kickPlayer(player);
+        }
+    }
+
+    private void kickPlayer(ServerPlayer player) {
+        player.connection.disconnect(Component.literal("您今天的在线时间已达到上限"));
+    }
+
+    private void displayPlayTime(ServerPlayer player, int playTime, boolean onlyWhenChanged, long refreshNanos, long now) {
+        DisplayState state = displayStates.get(player.getUUID());
+        if (state == null) {
+            state = createDisplayState(player);
+            displayStates.put(player.getUUID(), state);
+        }
+
+        if (state.hidden) {
+            return;
+        }
+        // 显示的 mm:ss 没变就不重复发包
+        if (onlyWhenChanged && playTime == state.lastShownSeconds) {
+            return;
+        }
+        if (state.lastShownSeconds >= 0 && now - state.lastSentNanos < refreshNanos) {
+            return;
+        }
+
+        player.connection.send(new ClientboundSetActionBarTextPacket(playTimeComponent(playTime)));
+        if (!state.titlesAnimationSent) {
+            player.connection.send(new ClientboundSetTitlesAnimationPacket(0, 70, 20));
+            state.titlesAnimationSent = true;
+        }
+        state.lastShownSeconds = playTime;
+        state.lastSentNanos = now;
+    }
+
+    // 同一秒数的文本在所有玩家之间共享，只构建一次
+    private Component playTimeComponent(int playTime) {
+        if (playTime >= MAX_CACHED_DISPLAY_SECONDS) {
+            return buildPlayTimeComponent(playTime);
         }
+        if (playTime >= playTimeComponents.length) {
+            int newLength = Math.max(playTime + 1, playTimeComponents.length * 2);
+            playTimeComponents = Arrays.copyOf(playTimeComponents, Math.min(newLength, MAX_CACHED_DISPLAY_SECONDS));
+        }
+        Component component = playTimeComponents[playTime];
+        if (component == null) {
+            component = buildPlayTimeComponent(playTime);
+            playTimeComponents[playTime] = component;
+        }
+        return component;
     }
 
-    private void displayPlayTime(ServerPlayer player, int playTime) {
-        // 计算小时和分钟
+    private static Component buildPlayTimeComponent(int playTime) {
+        // 计算分钟和秒
         int minutes = playTime / 60;
         int second = playTime % 60;
 
-        Component actionbar = Component.literal("已玩时间:" + String.format("%02d:%02d", minutes, second));
+        return Component.literal("已玩时间:" + String.format("%02d:%02d", minutes, second));
+    }
 
-        player.connection.send(new ClientboundSetActionBarTextPacket(actionbar));
-        player.connection.send(new ClientboundSetTitlesAnimationPacket(0, 70, 20));
+    void setPlayTimeHidden(UUID playerId, boolean hidden) {
+        DisplayState state = displayStates.get(playerId);
+        if (state != null) {
+            state.hidden = hidden;
+        }
+    }
+
+    private DisplayState createDisplayState(ServerPlayer player) {
+        DisplayState state = new DisplayState();
+        ModConfig.PlayerConfig playerConfig = ConfigManager.get().findPlayerConfig(player.getUUID());
+        state.hidden = playerConfig != null && playerConfig.isHidePlayTime();
+        return state;
+    }
+
+    // 每个在线玩家的 action bar 发送状态
+    private static class DisplayState {
+        boolean hidden;
+        boolean titlesAnimationSent;
+        int lastShownSeconds = -1;
+        long lastSentNanos;
+    }
+
+    void setPlayTime(UUID playerId, int playTime) {
+        playerPlayTimes.put(playerId, playTime);
+        if (playTimeStore != null) {
+            playTimeStore.appendDirty(playerPlayTimes);
+        }
+    }
+
+    void clearPlayTime(UUID playerId) {
+        playerPlayTimes.remove(playerId);
+        if (playTimeStore != null) {
+            playTimeStore.appendRemove(playerId);
+        }
+    }
+
+    void clearAllPlayTimes() {
+        playerPlayTimes.clear();
+        if (playTimeStore != null) {
+            playTimeStore.appendClear();
+        }
     }
 
     private void loadPlayTimes() {
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        String playtimeFilePath = config.getServerConfig().getPlaytimeFilePath();
-        try {
-            String content = new String(Files.readAllBytes(Paths.get(playtimeFilePath)));
-            playerPlayTimes = new Gson().fromJson(content, new TypeToken<HashMap<UUID, Integer>>(){}.getType());
-            Anti_addiction.LOGGER.info("Play times loaded from file.");
-        } catch (IOException e) {
-            playerPlayTimes = new HashMap<>();
-            Anti_addiction.LOGGER.info("No playtime file found, creating new.");
+        if (playTimeStore != null) {
+            playTimeStore.close();
+        }
+        ModConfig.ServerConfig serverConfig = ConfigManager.server();
+        boolean binaryFormat = "binary".equalsIgnoreCase(serverConfig.getPlaytimeStoreFormat());
+        playTimeStore = new PlayTimeStore(serverConfig.getPlaytimeFilePath(), binaryFormat);
+        playerPlayTimes = playTimeStore.load();
+    }
+
+    void exportPlayTimes(Path target) {
+        if (playTimeStore != null) {
+            playTimeStore.exportJson(playerPlayTimes, target);
         }
     }
 
+    // 压缩：在服务器线程上取快照，写文件在后台 IO 线程完成
     void savePlayTimes() {
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        String playtimeFilePath = config.getServerConfig().getPlaytimeFilePath();
-        try (Writer writer = new FileWriter(playtimeFilePath)) {
-            new Gson().toJson(playerPlayTimes, writer);
-            Anti_addiction.LOGGER.info("Play times saved to file.");
-        } catch (IOException e) {
-            e.printStackTrace();
-            Anti_addiction.LOGGER.error("Failed to save play times to file!", e);
+        if (playTimeStore != null) {
+            playTimeStore.compact(playerPlayTimes);
         }
     }
 
     private void scheduleBackup() {
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        int backupIntervalMinutes = config.getServerConfig().getBackupIntervalMinutes();
-
-        backupTimer = new Timer();
-        backupTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                savePlayTimes();
-            }
-        }, 0, backupIntervalMinutes * 60 * 1000L); // 每x分钟备份一次
+        int backupIntervalMinutes = ConfigManager.server().getBackupIntervalMinutes();
+
+        // 每x分钟压缩一次日志
+        backupTask = ModScheduler.scheduleWithFixedDelay("playtime backup", () -> server.execute(this::savePlayTimes),
+                backupIntervalMinutes, backupIntervalMinutes, TimeUnit.MINUTES);
         Anti_addiction.LOGGER.info("Playtime backup scheduled every {} minutes.", backupIntervalMinutes);
     }
 
     private void scheduleDailyReset() {
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        String resetTimeStr = config.getServerConfig().getResetTime();
-        LocalTime resetTime = LocalTime.parse(resetTimeStr, DateTimeFormatter.ISO_LOCAL_TIME);
+        LocalTime resetTime = parseResetTime();
+        ZoneId zone = resetZone();
+
+        // 每天按配置时区的墙上时间重置，每次执行后重新计算下一次的时间
+        resetTask = ModScheduler.scheduleDaily("playtime reset", resetTime, zone, scheduledAt -> {
+            Anti_addiction.LOGGER.info("Daily playtime reset triggered for {}", scheduledAt);
+            server.execute(() -> resetPlayTimes(scheduledAt.toInstant()));
+        });
+        Anti_addiction.LOGGER.info("Daily playtime reset scheduled for {} ({}).", resetTime, zone);
+    }
 
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime nextResetTime = now.toLocalDate().atTime(resetTime);
+    // 服务器在重置时间点处于关闭状态时，启动后补做一次
+    private void catchUpMissedReset() {
+        ZonedDateTime lastScheduled = ModScheduler.previousOccurrence(ZonedDateTime.now(resetZone()), parseResetTime());
+        Instant lastReset = playTimeStore.readLastReset();
 
-        if (now.toLocalTime().isAfter(resetTime)) {
-            nextResetTime = nextResetTime.plusDays(1);
+        if (lastReset == null) {
+            // 第一次运行，没有记录可比较，只记下当前周期，不清空已有数据
+            playTimeStore.writeLastReset(lastScheduled.toInstant());
+        } else if (lastReset.isBefore(lastScheduled.toInstant())) {
+            Anti_addiction.LOGGER.info("Missed daily playtime reset at {} (last reset {}), resetting now.", lastScheduled, lastReset);
+            resetPlayTimes(lastScheduled.toInstant());
         }
+    }
 
-        long initialDelay = ChronoUnit.MILLIS.between(now, nextResetTime);
+    private void resetPlayTimes(Instant scheduledAt) {
+        clearAllPlayTimes();
+        savePlayTimes();
+        playTimeStore.writeLastReset(scheduledAt);
+        Anti_addiction.LOGGER.info("Playtime reset complete.");
+    }
 
-        Anti_addiction.LOGGER.info("Current time: {}, Next reset time: {}, Initial delay: {} ms", now, nextResetTime, initialDelay);
+    private static LocalTime parseResetTime() {
+        return LocalTime.parse(ConfigManager.server().getResetTime(), DateTimeFormatter.ISO_LOCAL_TIME);
+    }
 
-        resetTimer = new Timer();
-        resetTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                Anti_addiction.LOGGER.info("Daily playtime reset triggered at: {}", LocalDateTime.now());
-                playerPlayTimes.clear();
-                savePlayTimes();
-                Anti_addiction.LOGGER.info("Playtime reset complete.");
-            }
-        }, initialDelay, 24 * 60 * 60 * 1000L); // 每天凌晨定时重置, initialDelay is already in milliseconds
-        Anti_addiction.LOGGER.info("Daily playtime reset scheduled for {}.", resetTimeStr);
+    private static ZoneId resetZone() {
+        String zone = ConfigManager.server().getResetTimeZone();
+        if (zone == null || zone.isBlank()) {
+            return ZoneId.systemDefault();
+        }
+        try {
+            return ZoneId.of(zone);
+        } catch (DateTimeException e) {
+            Anti_addiction.LOGGER.error("Invalid resetTimeZone '{}', using system default", zone);
+            return ZoneId.systemDefault();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,381 @@
+package org.fengling.anti_addiction;
+
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// 游戏时间持久化：快照文件 (playtime.json 或二进制的 playtime.bin) + 追加写的预写日志 (playtime.json.journal)
+// 上一次每日重置的时间记在 playtime.json.reset 里
+// 每秒只把变化过的玩家追加到日志里，定期压缩成新的快照：两种格式都整体重写到临时文件后原子替换，
+// 二进制格式在内容没变时跳过重写
+//
+// 线程模型：除 load() 外的公开方法都只能在服务器线程上调用。它们在调用线程上把数据编码/复制好，
+// 真正的写文件和 fsync 交给单独的 IO 线程按提交顺序执行，所以服务器线程不会被磁盘阻塞，
+// 而 IO 线程也从不接触 PlayTimeTable。
+public class PlayTimeStore {
+
+    // op(1) + UUID msb(8) + UUID lsb(8) + value(4)
+    static final int RECORD_SIZE = 21;
+    static final byte OP_SET = 1;
+    static final byte OP_REMOVE = 2;
+    static final byte OP_CLEAR = 3;
+
+    private final Path snapshotPath;
+    private final Path binaryPath;
+    private final boolean binaryFormat;
+    private final Path journalPath;
+    private final Path resetMarkerPath;
+    private final ExecutorService ioExecutor;
+
+    // 服务器线程上的编码缓冲区
+    private ByteBuffer staging = ByteBuffer.allocate(RECORD_SIZE * 256);
+    // close() 之后 IO 线程已经停止，之后的写入（例如服务器停止后才触发的登出事件）直接丢弃；
+    // 关闭前的最后一次 compact 已经包含了所有玩家的当前值
+    private boolean closed;
+
+    // 以下字段只在 IO 线程上访问（load() 在 IO 线程启动前同步执行）
+    private FileChannel journal;
+    private PlayTimeBinaryFile binaryFile;
+
+    public PlayTimeStore(String snapshotFilePath) {
+        this(snapshotFilePath, false);
+    }
+
+    public PlayTimeStore(String snapshotFilePath, boolean binaryFormat) {
+        this.snapshotPath = Paths.get(snapshotFilePath);
+        this.binaryPath = binaryPathFor(snapshotFilePath);
+        this.binaryFormat = binaryFormat;
+        this.journalPath = Paths.get(snapshotFilePath + ".journal");
+        this.resetMarkerPath = Paths.get(snapshotFilePath + ".reset");
+        this.ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "anti_addiction-playtime-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 读取快照并重放日志，之后打开日志用于追加。在服务器启动时同步调用。
+    public PlayTimeTable load() {
+        PlayTimeTable table = binaryFormat ? readBinarySnapshot() : readSnapshot();
+
+        int replayed = 0;
+        if (Files.exists(journalPath)) {
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long validLength = channel.size() - channel.size() % RECORD_SIZE;
+                ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+                long position = 0;
+                while (position < validLength) {
+                    record.clear();
+                    while (record.hasRemaining()) {
+                        channel.read(record, position + record.position());
+                    }
+                    record.flip();
+                    applyRecord(table, record);
+                    position += RECORD_SIZE;
+                    replayed++;
+                }
+                if (validLength != channel.size()) {
+                    // 崩溃时写了一半的记录，直接丢掉
+                    Anti_addiction.LOGGER.warn("Discarding torn playtime journal tail ({} bytes)", channel.size() - validLength);
+                    channel.truncate(validLength);
+                }
+            } catch (IOException e) {
+                Anti_addiction.LOGGER.error("Failed to replay playtime journal {}", journalPath, e);
+            }
+        }
+        table.markClean();
+        Anti_addiction.LOGGER.info("Play times loaded: {} players, {} journal records replayed.", table.size(), replayed);
+
+        runOnIo(this::openJournal);
+        return table;
+    }
+
+    // Appends a record for every player whose playtime changed since the last call.
+    public void appendDirty(PlayTimeTable table) {
+        table.drainDirty(this::stageSet);
+        submitStaged();
+    }
+
+    public void appendRemove(UUID playerId) {
+        stageRecord(OP_REMOVE, playerId.getMostSignificantBits(), playerId.getLeastSignificantBits(), 0);
+        submitStaged();
+    }
+
+    public void appendClear() {
+        stageRecord(OP_CLEAR, 0, 0, 0);
+        submitStaged();
+    }
+
+    // 在服务器线程上复制一份一致的快照，序列化、原子替换和清空日志都在 IO 线程上完成
+    public void compact(PlayTimeTable table) {
+        Map<UUID, Integer> snapshot = table.toMap();
+        table.markClean();
+        staging.clear();
+        runOnIo(() -> writeSnapshot(snapshot));
+    }
+
+    // 登录/登出时把玩家的当前值直接写进二进制文件里的槽位；JSON 格式下由日志负责
+    public void updateInPlace(UUID playerId, int value) {
+        if (!binaryFormat) {
+            return;
+        }
+        long msb = playerId.getMostSignificantBits();
+        long lsb = playerId.getLeastSignificantBits();
+        runOnIo(() -> {
+            if (binaryFile == null) {
+                return;
+            }
+            try {
+                binaryFile.put(msb, lsb, value);
+            } catch (IOException e) {
+                Anti_addiction.LOGGER.error("Failed to update playtime binary file {}", binaryPath, e);
+            }
+        });
+    }
+
+    // 上一次每日重置对应的计划时间；没有记录时返回 null。在服务器启动时同步调用。
+    public Instant readLastReset() {
+        if (!Files.exists(resetMarkerPath)) {
+            return null;
+        }
+        try {
+            return Instant.parse(new String(Files.readAllBytes(resetMarkerPath), StandardCharsets.UTF_8).trim());
+        } catch (IOException | DateTimeParseException e) {
+            Anti_addiction.LOGGER.error("Failed to read last reset time from {}", resetMarkerPath, e);
+            return null;
+        }
+    }
+
+    // 排在重置产生的清空记录之后写入，崩溃时最多在下次启动时再重置一次
+    public void writeLastReset(Instant resetTime) {
+        runOnIo(() -> {
+            Path tempPath = resetMarkerPath.resolveSibling(resetMarkerPath.getFileName() + ".tmp");
+            try {
+                Files.write(tempPath, resetTime.toString().getBytes(StandardCharsets.UTF_8));
+                PlayTimeBinaryFile.replace(tempPath, resetMarkerPath);
+            } catch (IOException e) {
+                Anti_addiction.LOGGER.error("Failed to record last reset time in {}", resetMarkerPath, e);
+            }
+        });
+    }
+
+    public void exportJson(PlayTimeTable table, Path target) {
+        Map<UUID, Integer> snapshot = table.toMap();
+        runOnIo(() -> {
+            try {
+                PlayTimeBinaryFile.writeJson(target, snapshot);
+                Anti_addiction.LOGGER.info("Play times exported to {} ({} players).", target, snapshot.size());
+            } catch (IOException e) {
+                Anti_addiction.LOGGER.error("Failed to export play times to {}", target, e);
+            }
+        });
+    }
+
+    // 提交最后的写入并等待 IO 线程结束
+    public void close() {
+        if (closed) {
+            return;
+        }
+        submitStaged();
+        ioExecutor.execute(this::closeJournal);
+        closed = true;
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                Anti_addiction.LOGGER.error("Timed out waiting for playtime data to be written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private PlayTimeTable readBinarySnapshot() {
+        try {
+            // 二进制文件不存在或比 playtime.json 旧时，从 JSON 迁移
+            boolean migrate = Files.exists(snapshotPath) && isNewer(snapshotPath, binaryPath);
+            binaryFile = PlayTimeBinaryFile.open(binaryPath);
+            if (migrate) {
+                binaryFile.importJson(snapshotPath);
+                Anti_addiction.LOGGER.info("Migrated {} players from {} to {}", binaryFile.size(), snapshotPath, binaryPath);
+            }
+            PlayTimeTable table = new PlayTimeTable(binaryFile.size());
+            binaryFile.readInto(table);
+            return table;
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to open playtime binary file {}, falling back to JSON", binaryPath, e);
+            binaryFile = null;
+            return readSnapshot();
+        }
+    }
+
+    private PlayTimeTable readSnapshot() {
+        if (Files.exists(binaryPath) && isNewer(binaryPath, snapshotPath)) {
+            // 从二进制格式切回 JSON 时，先读取较新的二进制文件
+            try (PlayTimeBinaryFile file = PlayTimeBinaryFile.open(binaryPath)) {
+                PlayTimeTable table = new PlayTimeTable(file.size());
+                file.readInto(table);
+                return table;
+            } catch (IOException e) {
+                Anti_addiction.LOGGER.error("Failed to read playtime binary file {}", binaryPath, e);
+            }
+        }
+        if (!Files.exists(snapshotPath)) {
+            Anti_addiction.LOGGER.info("No playtime file found, creating new.");
+            return new PlayTimeTable();
+        }
+        try {
+            String content = new String(Files.readAllBytes(snapshotPath), StandardCharsets.UTF_8);
+            Map<UUID, Integer> loaded = new Gson().fromJson(content, new TypeToken<HashMap<UUID, Integer>>(){}.getType());
+            PlayTimeTable table = new PlayTimeTable(loaded != null ? loaded.size() : 0);
+            if (loaded != null) {
+                table.putAll(loaded);
+            }
+            return table;
+        } catch (IOException | JsonParseException e) {
+            Anti_addiction.LOGGER.error("Failed to read playtime file {}, starting from the journal only", snapshotPath, e);
+            return new PlayTimeTable();
+        }
+    }
+
+    private static void applyRecord(PlayTimeTable table, ByteBuffer record) {
+        byte op = record.get();
+        long msb = record.getLong();
+        long lsb = record.getLong();
+        int value = record.getInt();
+        switch (op) {
+            case OP_SET -> table.put(msb, lsb, value);
+            case OP_REMOVE -> table.remove(new UUID(msb, lsb));
+            case OP_CLEAR -> table.clear();
+            default -> Anti_addiction.LOGGER.warn("Unknown playtime journal op {}", op);
+        }
+    }
+
+    // --- Server thread: encoding ---
+
+    private void stageSet(long msb, long lsb, int value) {
+        stageRecord(OP_SET, msb, lsb, value);
+    }
+
+    private void stageRecord(byte op, long msb, long lsb, int value) {
+        if (staging.remaining() < RECORD_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocate(staging.capacity() * 2);
+            staging.flip();
+            grown.put(staging);
+            staging = grown;
+        }
+        staging.put(op).putLong(msb).putLong(lsb).putInt(value);
+    }
+
+    private void submitStaged() {
+        if (staging.position() == 0) {
+            return;
+        }
+        ByteBuffer batch = ByteBuffer.wrap(Arrays.copyOf(staging.array(), staging.position()));
+        staging.clear();
+        runOnIo(() -> appendToJournal(batch));
+    }
+
+    private void runOnIo(Runnable task) {
+        if (closed) {
+            Anti_addiction.LOGGER.debug("Playtime store already closed, dropping write");
+            return;
+        }
+        ioExecutor.execute(task);
+    }
+
+    // --- IO thread: file access ---
+
+    private void openJournal() {
+        try {
+            journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to open playtime journal {}", journalPath, e);
+            journal = null;
+        }
+    }
+
+    private void appendToJournal(ByteBuffer batch) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            while (batch.hasRemaining()) {
+                journal.write(batch);
+            }
+            journal.force(false);
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to append to playtime journal", e);
+        }
+    }
+
+    // 写出完整快照，成功后清空日志；失败时保留日志，下次启动仍可重放
+    private void writeSnapshot(Map<UUID, Integer> snapshot) {
+        try {
+            if (binaryFile != null) {
+                binaryFile.applySnapshot(snapshot);
+                binaryFile.force();
+            } else {
+                // 临时文件 + 原子重命名
+                PlayTimeBinaryFile.writeJson(snapshotPath, snapshot);
+            }
+
+            if (journal != null) {
+                journal.truncate(0);
+                journal.force(true);
+            }
+            Anti_addiction.LOGGER.info("Play times saved to file ({} players).", snapshot.size());
+        } catch (IOException e) {
+            Anti_addiction.LOGGER.error("Failed to save play times to file!", e);
+        }
+    }
+
+    private void closeJournal() {
+        if (binaryFile != null) {
+            try {
+                binaryFile.close();
+            } catch (IOException e) {
+                Anti_addiction.LOGGER.error("Failed to close playtime binary file", e);
+            }
+            binaryFile = null;
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                Anti_addiction.LOGGER.error("Failed to close playtime journal", e);
+            }
+            journal = null;
+        }
+    }
+
+    private static boolean isNewer(Path candidate, Path other) {
+        try {
+            return !Files.exists(other) || Files.getLastModifiedTime(candidate).compareTo(Files.getLastModifiedTime(other)) > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static Path binaryPathFor(String snapshotFilePath) {
+        String base = snapshotFilePath.endsWith(".json") ? snapshotFilePath.substring(0, snapshotFilePath.length() - 5) : snapshotFilePath;
+        return Paths.get(base + ".bin");
+    }
+}
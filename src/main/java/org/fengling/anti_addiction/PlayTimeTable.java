@@ -0,0 +1,240 @@
+package org.fengling.anti_addiction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// UUID -> int 的开放寻址哈希表，键直接存 UUID 的两个 long，读写都不会装箱或分配对象
+public class PlayTimeTable {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] msbs;
+    private long[] lsbs;
+    private int[] values;
+    private boolean[] used;
+    // 自上次 drainDirty 以来值发生变化的槽位，用于增量写日志
+    private boolean[] dirty;
+    private int mask;
+    private int size;
+
+    public interface EntryConsumer {
+        void accept(long msb, long lsb, int value);
+    }
+
+    public PlayTimeTable() {
+        this(MIN_CAPACITY);
+    }
+
+    public PlayTimeTable(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(UUID uuid) {
+        return indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0;
+    }
+
+    public int get(UUID uuid) {
+        return get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    // Returns 0 for unknown players, which is also the playtime they start with.
+    public int get(long msb, long lsb) {
+        int index = indexOf(msb, lsb);
+        return index >= 0 ? values[index] : 0;
+    }
+
+    public void put(UUID uuid, int value) {
+        put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), value);
+    }
+
+    public void put(long msb, long lsb, int value) {
+        int index = insertionIndex(msb, lsb);
+        values[index] = value;
+        dirty[index] = true;
+    }
+
+    // Inserts the player with 0 if absent. Called at login so per-tick updates never grow the table.
+    public void putIfAbsent(UUID uuid, int value) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        if (indexOf(msb, lsb) < 0) {
+            put(msb, lsb, value);
+        }
+    }
+
+    public int add(UUID uuid, int delta) {
+        return add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), delta);
+    }
+
+    public int add(long msb, long lsb, int delta) {
+        int index = insertionIndex(msb, lsb);
+        int value = values[index] + delta;
+        values[index] = value;
+        if (delta != 0) {
+            dirty[index] = true;
+        }
+        return value;
+    }
+
+    public boolean remove(UUID uuid) {
+        int index = indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        if (index < 0) {
+            return false;
+        }
+        deleteAt(index);
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(dirty, false);
+        size = 0;
+    }
+
+    // Visits every entry changed since the last call and marks it clean again.
+    public void drainDirty(EntryConsumer consumer) {
+        for (int i = 0; i < dirty.length; i++) {
+            if (dirty[i]) {
+                dirty[i] = false;
+                consumer.accept(msbs[i], lsbs[i], values[i]);
+            }
+        }
+    }
+
+    public void markClean() {
+        Arrays.fill(dirty, false);
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                consumer.accept(msbs[i], lsbs[i], values[i]);
+            }
+        }
+    }
+
+    public Map<UUID, Integer> toMap() {
+        Map<UUID, Integer> map = new HashMap<>(size * 2);
+        forEach((msb, lsb, value) -> map.put(new UUID(msb, lsb), value));
+        return map;
+    }
+
+    public void putAll(Map<UUID, Integer> map) {
+        for (Map.Entry<UUID, Integer> entry : map.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private int indexOf(long msb, long lsb) {
+        int index = hash(msb, lsb) & mask;
+        while (used[index]) {
+            if (msbs[index] == msb && lsbs[index] == lsb) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int insertionIndex(long msb, long lsb) {
+        int index = hash(msb, lsb) & mask;
+        while (used[index]) {
+            if (msbs[index] == msb && lsbs[index] == lsb) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        if ((size + 1) * 2 > used.length) {
+            rehash(used.length * 2);
+            return insertionIndex(msb, lsb);
+        }
+        used[index] = true;
+        msbs[index] = msb;
+        lsbs[index] = lsb;
+        values[index] = 0;
+        dirty[index] = false;
+        size++;
+        return index;
+    }
+
+    // 线性探测的后移删除，保证删除后探测链不断开
+    private void deleteAt(int index) {
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (used[next]) {
+            int home = hash(msbs[next], lsbs[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                msbs[hole] = msbs[next];
+                lsbs[hole] = lsbs[next];
+                values[hole] = values[next];
+                dirty[hole] = dirty[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[hole] = false;
+        dirty[hole] = false;
+        size--;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldMsbs = msbs;
+        long[] oldLsbs = lsbs;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        boolean[] oldDirty = dirty;
+        allocate(newCapacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int index = hash(oldMsbs[i], oldLsbs[i]) & mask;
+                while (used[index]) {
+                    index = (index + 1) & mask;
+                }
+                used[index] = true;
+                msbs[index] = oldMsbs[i];
+                lsbs[index] = oldLsbs[i];
+                values[index] = oldValues[i];
+                dirty[index] = oldDirty[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        dirty = new boolean[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    static int hash(long msb, long lsb) {
+        long h = msb ^ (lsb * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -4,6 +4,8 @@ import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.network.chat.Component;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.UUID;
 
@@ -16,7 +18,6 @@ public class PlaytimeCommandHandler {
     }
 
     public int executePlaytimeSet(CommandSourceStack source, List<ServerPlayer> targets, int playtimeMinutes) {
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
         PlayTimeKick playtimeTracker = commandRegistry.getPlayTimeKickInstance();
         if (playtimeTracker == null) {
             commandRegistry.sendErrorMessage(source, "Playtime tracker not initialized.");
@@ -24,21 +25,36 @@ public class PlaytimeCommandHandler {
         }
         for (ServerPlayer player : targets) {
             UUID playerId = player.getUUID();
-            playtimeTracker.playerPlayTimes.put(playerId, playtimeMinutes * 60 * 20);
+            playtimeTracker.setPlayTime(playerId, playtimeMinutes * 60 * 20);
             player.sendSystemMessage(Component.literal("已将您的游戏时间设置为 " + playtimeMinutes + " 分钟"));
         }
-        playtimeTracker.savePlayTimes();
         return 1;
     }
 
     public int executePlaytimeSetMaxTime(CommandSourceStack source, int maxTimeMinutes) {
-        ModConfig config = ModConfig.loadConfig("config/mod_config.json");
-        config.getServerConfig().setMaxPlayTimeMinutes(maxTimeMinutes);
-        config.saveConfig("config/mod_config.json");
+        ConfigManager.update(config -> config.getServerConfig().setMaxPlayTimeMinutes(maxTimeMinutes));
         source.sendSystemMessage(Component.literal("最大游戏时间已设置为 " + maxTimeMinutes + " 分钟"));
         return 1;
     }
 
+    public int executePlaytimeDisplay(CommandSourceStack source, boolean show) {
+        ServerPlayer player = source.getPlayer();
+        if (player == null) {
+            commandRegistry.sendErrorMessage(source, "This command can only be executed by a player.");
+            return 0;
+        }
+        UUID playerId = player.getUUID();
+        String playerName = player.getName().getString();
+        ConfigManager.update(config -> config.getOrCreatePlayerConfig(playerId, playerName).setHidePlayTime(!show));
+
+        PlayTimeKick playtimeTracker = commandRegistry.getPlayTimeKickInstance();
+        if (playtimeTracker != null) {
+            playtimeTracker.setPlayTimeHidden(playerId, !show);
+        }
+        source.sendSystemMessage(Component.literal(show ? "已开启游戏时间显示" : "已关闭游戏时间显示"));
+        return 1;
+    }
+
     public int executePlaytimeClear(CommandSourceStack source, List<ServerPlayer> targets) {
         PlayTimeKick playtimeTracker = commandRegistry.getPlayTimeKickInstance();
         if (playtimeTracker == null) {
@@ -47,10 +63,23 @@ public class PlaytimeCommandHandler {
         }
         for (ServerPlayer player : targets) {
             UUID playerId = player.getUUID();
-            playtimeTracker.playerPlayTimes.remove(playerId);
+            playtimeTracker.clearPlayTime(playerId);
             player.sendSystemMessage(Component.literal("已清除您的游戏时间"));
         }
-        playtimeTracker.savePlayTimes();
+        return 1;
+    }
+
+    public int executePlaytimeExport(CommandSourceStack source) {
+        PlayTimeKick playtimeTracker = commandRegistry.getPlayTimeKickInstance();
+        if (playtimeTracker == null) {
+            commandRegistry.sendErrorMessage(source, "Playtime tracker not initialized.");
+            return 0;
+        }
+        String playtimeFilePath = ConfigManager.server().getPlaytimeFilePath();
+        String base = playtimeFilePath.endsWith(".json") ? playtimeFilePath.substring(0, playtimeFilePath.length() - 5) : playtimeFilePath;
+        Path target = Paths.get(base + ".export.json");
+        playtimeTracker.exportPlayTimes(target);
+        source.sendSuccess(() -> Component.literal("正在导出游戏时间到 " + target), true);
         return 1;
     }
 
@@ -60,9 +89,8 @@ public class PlaytimeCommandHandler {
             commandRegistry.sendErrorMessage(source, "Playtime tracker not initialized.");
             return 0;
         }
-        playtimeTracker.playerPlayTimes.clear();
+        playtimeTracker.clearAllPlayTimes();
         source.sendSuccess(() -> Component.literal("已清除所有玩家的游戏时间"), true);
-        playtimeTracker.savePlayTimes();
         return 1;
     }
 }
\ No newline at end of file
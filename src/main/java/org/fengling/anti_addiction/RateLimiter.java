@@ -0,0 +1,192 @@
+package org.fengling.anti_addiction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// 令牌桶限流 + 优先队列：每 interval 毫秒补一个令牌，最多攒 burst 个；排队的请求先按优先级、再按提交顺序发出
+//
+// 调用方用 shouldRetry 判断响应是不是被限流了（HTTP 429/503、"Call limit exceeded" 等），
+// 被限流时整个限流器退避 interval * 2^n（最长 MAX_BACKOFF_MILLIS），请求回到队首重试，最多 MAX_RETRIES 次；
+// 之后第一个正常的响应把退避清零。网络异常直接交给调用方，不重试。
+public class RateLimiter {
+
+    public enum Priority {
+        INTERACTIVE, // 玩家命令，排在前面
+        BACKGROUND   // 定时刷新等后台任务
+    }
+
+    static final int MAX_RETRIES = 4;
+    static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private final String name;
+    private final LongSupplier intervalMillis;
+    private final int burst;
+
+    private final PriorityQueue<Ticket<?>> queue = new PriorityQueue<>(
+            Comparator.comparingInt((Ticket<?> t) -> t.priority.ordinal()).thenComparingLong(t -> t.sequence));
+    private long nextSequence;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private long backoffUntilNanos;
+    private int backoffLevel;
+    private ScheduledFuture<?> wakeup;
+
+    // 指标
+    private long dispatched;
+    private long throttled;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    private static class Ticket<T> {
+        final Priority priority;
+        final long sequence;
+        final long enqueuedNanos = System.nanoTime();
+        final Supplier<CompletableFuture<T>> call;
+        final Predicate<T> shouldRetry;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        int attempts;
+
+        Ticket(Priority priority, long sequence, Supplier<CompletableFuture<T>> call, Predicate<T> shouldRetry) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.call = call;
+            this.shouldRetry = shouldRetry;
+        }
+    }
+
+    public RateLimiter(String name, LongSupplier intervalMillis, int burst) {
+        this.name = name;
+        this.intervalMillis = intervalMillis;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * Queues {@code call} and starts it once a token is available and no backoff is in effect. The
+     * returned future completes with the first result that {@code shouldRetry} rejects, or with the last
+     * result after {@link #MAX_RETRIES} retries.
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Supplier<CompletableFuture<T>> call, Predicate<T> shouldRetry) {
+        Ticket<T> ticket;
+        synchronized (this) {
+            ticket = new Ticket<>(priority, nextSequence++, call, shouldRetry);
+            queue.add(ticket);
+        }
+        drain();
+        return ticket.result;
+    }
+
+    public synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    public synchronized long dispatchedCount() {
+        return dispatched;
+    }
+
+    public synchronized long throttledCount() {
+        return throttled;
+    }
+
+    public synchronized long averageWaitMillis() {
+        return dispatched == 0 ? 0 : totalWaitNanos / dispatched / 1_000_000;
+    }
+
+    public synchronized long maxWaitMillis() {
+        return maxWaitNanos / 1_000_000;
+    }
+
+    // 当前还要退避多久，没有退避时为 0
+    public synchronized long backoffRemainingMillis() {
+        return Math.max(0, (backoffUntilNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    private void drain() {
+        List<Ticket<?>> ready = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            while (!queue.isEmpty() && now - backoffUntilNanos >= 0 && tokens >= 1) {
+                tokens -= 1;
+                Ticket<?> ticket = queue.poll();
+                if (ticket.attempts == 0) {
+                    long waited = now - ticket.enqueuedNanos;
+                    dispatched++;
+                    totalWaitNanos += waited;
+                    maxWaitNanos = Math.max(maxWaitNanos, waited);
+                }
+                ready.add(ticket);
+            }
+            // 调度线程关闭时未执行的 wakeup 会被取消，这时要重新调度
+            if (!queue.isEmpty() && (wakeup == null || wakeup.isDone())) {
+                long delayNanos = Math.max(backoffUntilNanos - now, (long) ((1 - tokens) * intervalNanos()));
+                wakeup = ModScheduler.schedule(name + " rate limiter", () -> {
+                    synchronized (this) {
+                        wakeup = null;
+                    }
+                    drain();
+                }, Math.max(1, delayNanos / 1_000_000), TimeUnit.MILLISECONDS);
+            }
+        }
+        // 在锁外发出请求
+        for (Ticket<?> ticket : ready) {
+            start(ticket);
+        }
+    }
+
+    private <T> void start(Ticket<T> ticket) {
+        ticket.attempts++;
+        CompletableFuture<T> call;
+        try {
+            call = ticket.call.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((value, e) -> {
+            if (e != null) {
+                ticket.result.completeExceptionally(e);
+            } else if (ticket.shouldRetry.test(value) && ticket.attempts <= MAX_RETRIES) {
+                backOff();
+                synchronized (this) {
+                    queue.add(ticket); // 保留原来的序号，回到同优先级的队首
+                }
+                drain();
+            } else {
+                if (!ticket.shouldRetry.test(value)) {
+                    resetBackoff();
+                }
+                ticket.result.complete(value);
+            }
+        });
+    }
+
+    private synchronized void refill(long now) {
+        tokens = Math.min(burst, tokens + (double) (now - lastRefillNanos) / intervalNanos());
+        lastRefillNanos = now;
+    }
+
+    private synchronized void backOff() {
+        throttled++;
+        long delayMillis = Math.min(MAX_BACKOFF_MILLIS, intervalMillis.getAsLong() << Math.min(backoffLevel + 1, 16));
+        backoffLevel = Math.min(backoffLevel + 1, 16);
+        backoffUntilNanos = Math.max(backoffUntilNanos, System.nanoTime() + delayMillis * 1_000_000);
+        tokens = 0;
+        Anti_addiction.LOGGER.warn("{} throttled by the server, backing off for {} ms", name, delayMillis);
+    }
+
+    private synchronized void resetBackoff() {
+        backoffLevel = 0;
+    }
+
+    private long intervalNanos() {
+        return Math.max(1, intervalMillis.getAsLong()) * 1_000_000;
+    }
+}
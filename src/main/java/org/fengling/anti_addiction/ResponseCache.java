@@ -0,0 +1,137 @@
+package org.fengling.anti_addiction;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 单轮 AI 回复的缓存：key 是模型名 + 规范化后 prompt 的 SHA-256，按最近使用淘汰，条目超过 TTL 后失效
+//
+// 容量按字节计（key 和回复文本按 UTF-16 估算），而不是按条数，少数很长的回复不会把内存撑大。
+// 规范化只做 Unicode NFC 和合并空白，不改大小写（代码、handle 和专有名词里大小写有意义），措辞不同的问题仍然是不同的 key。
+public class ResponseCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class Entry {
+        final String value;
+        final long expiresAtMillis;
+        final int bytes;
+
+        Entry(String key, String value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+            this.bytes = (key.length() + value.length()) * 2 + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    public static String key(String model, String prompt) {
+        String normalized = Normalizer.normalize(prompt, Normalizer.Form.NFC)
+                .trim()
+                .replaceAll("\\s+", " ");
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(model.length() + 1 + digest.length * 2).append(model).append(':');
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // 每个 JVM 都必须支持 SHA-256
+        }
+    }
+
+    // 命中时返回缓存的回复，未命中或已过期时返回 null
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAtMillis) {
+            removeEntry(key, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public synchronized void put(String key, String value, long ttlMillis, long maxBytes) {
+        Entry entry = new Entry(key, value, System.currentTimeMillis() + ttlMillis);
+        if (ttlMillis <= 0 || entry.bytes > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += entry.bytes;
+
+        // 先淘汰已过期的，再按最近使用顺序淘汰到预算以内
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && bytes > maxBytes) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getValue() != entry && now >= eldest.getValue().expiresAtMillis) {
+                bytes -= eldest.getValue().bytes;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && bytes > maxBytes) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getValue() != entry) {
+                bytes -= eldest.getValue().bytes;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    // 清空缓存，返回被清掉的条目数
+    public synchronized int flush() {
+        int count = entries.size();
+        entries.clear();
+        bytes = 0;
+        return count;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long sizeBytes() {
+        return bytes;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    private void removeEntry(String key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.bytes;
+        evictions.incrementAndGet();
+    }
+}
@@ -0,0 +1,53 @@
+package org.fengling.anti_addiction;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// 合并同一个 key 的并发请求：第一个调用方真正发出请求，在它完成之前到达的调用方共享同一个 future
+//
+// 请求完成（成功或失败）后 key 立即释放，下一次调用会重新发请求；结果要不要缓存由调用方决定。
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Returns the in-flight future for {@code key}, or starts one with {@code loader} if there is none.
+     * The returned future is shared, so callers must not complete or cancel it.
+     */
+    public CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> placeholder = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, placeholder);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+
+        CompletableFuture<V> loaded;
+        try {
+            loaded = loader.get();
+        } catch (RuntimeException e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        loaded.whenComplete((value, e) -> {
+            inFlight.remove(key, placeholder); // 先释放 key，等待者的回调里再发起的请求不会拿到这个已完成的 future
+            if (e != null) {
+                placeholder.completeExceptionally(e);
+            } else {
+                placeholder.complete(value);
+            }
+        });
+        return placeholder;
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    // 搭上别人请求的调用次数
+    public long coalescedCount() {
+        return coalesced.get();
+    }
+}
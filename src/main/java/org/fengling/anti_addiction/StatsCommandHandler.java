@@ -0,0 +1,55 @@
+package org.fengling.anti_addiction;
+
+import net.minecraft.ChatFormatting;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.network.chat.Component;
+
+public class StatsCommandHandler {
+
+    private final CommandRegistry commandRegistry; // Reference back to CommandRegistry for helper methods
+
+    public StatsCommandHandler(CommandRegistry commandRegistry) {
+        this.commandRegistry = commandRegistry;
+    }
+
+    public int executeStats(CommandSourceStack source) {
+        String executorType = IoExecutors.usesVirtualThreads() ? "virtual threads" : "platform threads";
+
+        source.sendSuccess(() -> Component.literal("Anti-addiction stats:").withStyle(ChatFormatting.GOLD), false);
+        source.sendSuccess(() -> Component.literal("  IO executor: " + executorType), false);
+        source.sendSuccess(() -> Component.literal("  IO tasks active: " + IoExecutors.activeTasks()
+                + ", queued: " + IoExecutors.queueDepth()
+                + ", completed: " + IoExecutors.completedTasks()), false);
+        ResponseCache cache = ChatAPI.responseCache;
+        source.sendSuccess(() -> Component.literal("  Response cache: " + cache.size() + " entries, " + cache.sizeBytes() / 1024 + " KB"
+                + ", hits: " + cache.hits()
+                + ", misses: " + cache.misses()
+                + ", evictions: " + cache.evictions()
+                + ", coalesced: " + ChatAPI.replyFlights.coalescedCount()), false);
+        UserInfoCache users = CodeforcesAPI.userInfoCache();
+        source.sendSuccess(() -> Component.literal("  Codeforces user cache: " + users.size() + " users (" + users.pinnedCount() + " pinned)"
+                + ", hits: " + users.hits()
+                + ", stale hits: " + users.staleHits()
+                + ", misses: " + users.misses()
+                + ", coalesced requests: " + CodeforcesAPI.coalescedRequestCount()
+                + ", user.info requests: " + CodeforcesAPI.userInfoRequestCount()), false);
+        ContestIndex contests = CodeforcesAPI.contestIndex();
+        long refreshedAgo = contests.refreshedAtMillis() == 0 ? -1 : (System.currentTimeMillis() - contests.refreshedAtMillis()) / 1000;
+        source.sendSuccess(() -> Component.literal("  Contest index: " + contests.size() + " contests"
+                + ", refreshed: " + (refreshedAgo < 0 ? "never" : refreshedAgo + " s ago")), false);
+        PageCache pages = CodeforcesAPI.pageCache();
+        source.sendSuccess(() -> Component.literal("  Page cache: " + pages.size() + " pages, " + pages.sizeBytes() / 1024 + " KB"
+                + ", hits: " + pages.hits()
+                + ", 304: " + pages.revalidatedCount()
+                + ", misses: " + pages.misses()
+                + ", hit rate: " + Math.round(pages.hitRate() * 100) + "%"
+                + ", evictions: " + pages.evictions()), false);
+        RateLimiter limiter = CodeforcesAPI.rateLimiter();
+        source.sendSuccess(() -> Component.literal("  Codeforces rate limiter: queued " + limiter.queueDepth()
+                + ", sent: " + limiter.dispatchedCount()
+                + ", wait avg/max: " + limiter.averageWaitMillis() + "/" + limiter.maxWaitMillis() + " ms"
+                + ", throttled: " + limiter.throttledCount()
+                + ", backoff: " + limiter.backoffRemainingMillis() + " ms"), false);
+        return 1;
+    }
+}
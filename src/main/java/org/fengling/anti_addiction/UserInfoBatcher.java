@@ -0,0 +1,192 @@
+package org.fengling.anti_addiction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 把短时间内的多个 user.info 查询合并成一个请求：user.info?handles=a;b;c
+// 第一个查询到达后最多等 WINDOW_MILLIS，或者攒够 MAX_BATCH 个 handle 立即发出，结果按 handle 分给各自的调用方。
+//
+// Codeforces 遇到不存在的 handle 会让整个请求失败 ("handles: User with handle xxx not found")，
+// 这时把错误信息里提到的所有 handle 以 null 结束，剩下的重新发一次。
+// 这里不记住不存在的 handle，负缓存只由 UserInfoCache 按 codeforcesCacheSeconds 保存；
+// 格式不合法的 handle 在进批次之前就拦下。
+// 批次里只要有一个玩家在等的查询 (INTERACTIVE)，整批就按 INTERACTIVE 排队；全是后台刷新时按 BACKGROUND 排队，
+// 不会挤在玩家命令前面。
+public class UserInfoBatcher {
+
+    static final long WINDOW_MILLIS = 50;
+    static final int MAX_BATCH = 100;
+
+    // Codeforces 的 handle 是 3 到 24 个字母、数字、下划线、点或连字符
+    private static final Pattern VALID_HANDLE = Pattern.compile("[A-Za-z0-9_.\\-]{3,24}");
+    private static final Pattern NOT_FOUND = Pattern.compile("handle (\\S+) not found");
+
+    // 输入是一批 handle 和这批请求的优先级，返回 user.info 的原始 JSON（UTF-8 字节）
+    private final BiFunction<List<String>, RateLimiter.Priority, CompletableFuture<byte[]>> fetcher;
+    // key 是小写 handle，保持到达顺序
+    private Map<String, Lookup> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushTask;
+    private long requestsSent;
+
+    private static class Lookup {
+        final String handle;
+        final CompletableFuture<CodeforcesAPI.UserInfo> future = new CompletableFuture<>();
+        RateLimiter.Priority priority = RateLimiter.Priority.BACKGROUND;
+
+        Lookup(String handle) {
+            this.handle = handle;
+        }
+    }
+
+    public UserInfoBatcher(BiFunction<List<String>, RateLimiter.Priority, CompletableFuture<byte[]>> fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Looks up one handle as part of the next batch. The future completes with {@code null} if Codeforces
+     * has no such user, or exceptionally if the request failed for any other reason. An interactive lookup
+     * raises the priority of the whole batch it joins.
+     */
+    public CompletableFuture<CodeforcesAPI.UserInfo> lookup(String handle, RateLimiter.Priority priority) {
+        if (!VALID_HANDLE.matcher(handle).matches()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String key = handle.toLowerCase(Locale.ROOT);
+        Map<String, Lookup> ready = null;
+        CompletableFuture<CodeforcesAPI.UserInfo> result;
+        synchronized (this) {
+            Lookup lookup = pending.computeIfAbsent(key, k -> new Lookup(handle));
+            if (priority == RateLimiter.Priority.INTERACTIVE) {
+                lookup.priority = priority;
+            }
+            result = lookup.future;
+            if (pending.size() >= MAX_BATCH) {
+                ready = takePending();
+            } else if (flushTask == null || flushTask.isDone()) { // 调度线程关闭时被取消的 flush 要重新调度
+                flushTask = ModScheduler.schedule("user.info batch", this::flush, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (ready != null) {
+            send(ready);
+        }
+        return result;
+    }
+
+    public synchronized long requestsSent() {
+        return requestsSent;
+    }
+
+    private void flush() {
+        Map<String, Lookup> ready;
+        synchronized (this) {
+            ready = takePending();
+        }
+        if (!ready.isEmpty()) {
+            send(ready);
+        }
+    }
+
+    private synchronized Map<String, Lookup> takePending() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        Map<String, Lookup> ready = pending;
+        pending = new LinkedHashMap<>();
+        return ready;
+    }
+
+    private void send(Map<String, Lookup> batch) {
+        List<String> handles = new ArrayList<>(batch.size());
+        RateLimiter.Priority priority = RateLimiter.Priority.BACKGROUND;
+        for (Lookup lookup : batch.values()) {
+            handles.add(lookup.handle);
+            if (lookup.priority == RateLimiter.Priority.INTERACTIVE) {
+                priority = lookup.priority;
+            }
+        }
+        synchronized (this) {
+            requestsSent++;
+        }
+
+        CompletableFuture<byte[]> response;
+        try {
+            response = fetcher.apply(handles, priority);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((json, e) -> {
+            if (e != null) {
+                failAll(batch, e);
+                return;
+            }
+            CodeforcesAPI.CodeforcesResponse parsed;
+            try {
+                parsed = json != null ? CodeforcesJsonDecoder.decodeUserInfo(json) : null;
+            } catch (IOException | RuntimeException parseError) {
+                failAll(batch, parseError); // 不能让异常留在回调里，否则等待的调用方永远不会结束
+                return;
+            }
+            if (parsed == null) {
+                failAll(batch, new IOException("Unreadable user.info response"));
+            } else if ("OK".equals(parsed.status)) {
+                distribute(batch, parsed.result);
+            } else {
+                retryWithoutMissingHandles(batch, parsed.comment);
+            }
+        });
+    }
+
+    private void distribute(Map<String, Lookup> batch, List<CodeforcesAPI.UserInfo> users) {
+        for (CodeforcesAPI.UserInfo user : users) {
+            Lookup lookup = user.handle != null ? batch.remove(user.handle.toLowerCase(Locale.ROOT)) : null;
+            if (lookup != null) {
+                lookup.future.complete(user);
+            }
+        }
+        // Codeforces 会把改过名的 handle 映射到新名字，对不上的只能当作没找到
+        if (!batch.isEmpty()) {
+            Anti_addiction.LOGGER.info("user.info returned no match for {} handles: {}", batch.size(), batch.keySet());
+        }
+        for (Lookup lookup : batch.values()) {
+            lookup.future.complete(null);
+        }
+    }
+
+    private void retryWithoutMissingHandles(Map<String, Lookup> batch, String comment) {
+        List<Lookup> missing = new ArrayList<>();
+        Matcher matcher = NOT_FOUND.matcher(comment != null ? comment : "");
+        while (matcher.find()) {
+            Lookup lookup = batch.remove(matcher.group(1).toLowerCase(Locale.ROOT));
+            if (lookup != null) {
+                missing.add(lookup);
+            }
+        }
+        if (missing.isEmpty()) {
+            failAll(batch, new IOException("Codeforces user.info failed: " + comment));
+            return;
+        }
+        for (Lookup lookup : missing) {
+            lookup.future.complete(null);
+        }
+        if (!batch.isEmpty()) {
+            send(batch); // 每次至少去掉一个 handle，所以一定会结束
+        }
+    }
+
+    private static void failAll(Map<String, Lookup> batch, Throwable e) {
+        for (Lookup lookup : batch.values()) {
+            lookup.future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.fengling.anti_addiction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+// 按小写 handle 缓存 user.info 的结果（stale-while-revalidate）
+//
+// 新鲜的条目直接返回；过期但不超过 MAX_STALE_MILLIS 的条目也立即返回，同时在后台刷新一次；
+// 不存在的 handle 记成 null，只缓存 negativeTtl 这么久，过期后重新查询。
+// 绑定了 Codeforces ID 的 handle 是 pinned 的：不会被淘汰，多旧都先返回旧值，服务器启动时预先加载。
+// 其它条目按最近使用淘汰，最多 MAX_ENTRIES 个。
+// 未命中时玩家在等，按 INTERACTIVE 查询；过期刷新和预先加载没人等，按 BACKGROUND 查询。
+// 并发查询按 (handle, 优先级) 合并：玩家的查询不会去等同一个 handle 的后台查询，
+// 后台查询还在 UserInfoBatcher 里排着时会被提升到 INTERACTIVE 并共用结果，已经发出时单独按 INTERACTIVE 再查一次。
+public class UserInfoCache {
+
+    static final int MAX_ENTRIES = 512;
+    static final long MAX_STALE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    // 返回 null 表示没有这个用户
+    private final BiFunction<String, RateLimiter.Priority, CompletableFuture<CodeforcesAPI.UserInfo>> loader;
+    private final LongSupplier freshMillis;
+    private final LongSupplier negativeTtlMillis;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> pinned = new HashSet<>();
+    private final SingleFlight<Map.Entry<String, RateLimiter.Priority>, CodeforcesAPI.UserInfo> flights = new SingleFlight<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static class Entry {
+        final CodeforcesAPI.UserInfo user; // null 表示没有这个用户
+        final long fetchedAtMillis;
+
+        Entry(CodeforcesAPI.UserInfo user, long fetchedAtMillis) {
+            this.user = user;
+            this.fetchedAtMillis = fetchedAtMillis;
+        }
+    }
+
+    public UserInfoCache(BiFunction<String, RateLimiter.Priority, CompletableFuture<CodeforcesAPI.UserInfo>> loader, LongSupplier freshMillis, LongSupplier negativeTtlMillis) {
+        this.loader = loader;
+        this.freshMillis = freshMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    /**
+     * Returns the user for {@code handle}, or {@code null} if Codeforces has no such user. Fresh and
+     * stale entries complete immediately; a stale hit also starts a background refresh. Only a miss waits
+     * for the network, and concurrent misses for the same handle share one lookup.
+     */
+    public CompletableFuture<CodeforcesAPI.UserInfo> get(String handle) {
+        String key = handle.toLowerCase(Locale.ROOT);
+        Entry entry;
+        boolean isPinned;
+        synchronized (this) {
+            entry = entries.get(key);
+            isPinned = pinned.contains(key);
+        }
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.fetchedAtMillis;
+            if (entry.user == null) {
+                if (age < negativeTtlMillis.getAsLong()) {
+                    hits.incrementAndGet();
+                    return CompletableFuture.completedFuture(null);
+                }
+            } else if (age < freshMillis.getAsLong()) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(entry.user);
+            } else if (isPinned || age < MAX_STALE_MILLIS) {
+                staleHits.incrementAndGet();
+                refresh(handle);
+                return CompletableFuture.completedFuture(entry.user);
+            }
+        }
+        misses.incrementAndGet();
+        return load(handle, RateLimiter.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Replaces the set of pinned handles and loads those that are missing or no longer fresh. Lookups
+     * are issued together, so the batcher sends them as one request.
+     */
+    public void pin(Collection<String> handles) {
+        List<String> toLoad = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            pinned.clear();
+            for (String handle : handles) {
+                String key = handle.toLowerCase(Locale.ROOT);
+                pinned.add(key);
+                Entry entry = entries.get(key);
+                if (entry == null || entry.user == null || now - entry.fetchedAtMillis >= freshMillis.getAsLong()) {
+                    toLoad.add(handle);
+                }
+            }
+        }
+        for (String handle : toLoad) {
+            refresh(handle);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int pinnedCount() {
+        return pinned.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long staleHits() {
+        return staleHits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    // 后台刷新：失败时保留旧值，等下一次过期的查询再试
+    private void refresh(String handle) {
+        load(handle, RateLimiter.Priority.BACKGROUND).whenComplete((user, e) -> {
+            if (e != null) {
+                Anti_addiction.LOGGER.warn("Background refresh of Codeforces user {} failed: {}", handle, e.getMessage());
+            }
+        });
+    }
+
+    private CompletableFuture<CodeforcesAPI.UserInfo> load(String handle, RateLimiter.Priority priority) {
+        String key = handle.toLowerCase(Locale.ROOT);
+        return flights.run(Map.entry(key, priority), () -> loader.apply(handle, priority).thenApply(user -> {
+            put(key, user);
+            return user;
+        }));
+    }
+
+    private synchronized void put(String key, CodeforcesAPI.UserInfo user) {
+        entries.put(key, new Entry(user, System.currentTimeMillis()));
+        // 按最近使用顺序淘汰，跳过 pinned 的条目
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > MAX_ENTRIES + pinned.size() && iterator.hasNext()) {
+            if (!pinned.contains(iterator.next().getKey())) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.fengling.anti_addiction;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 本地 SSE 桩服务器模拟 streamGenerateContent，每 STEP_MILLIS 推送一个片段
+class ChatStreamingTest {
+
+    private static final String[] FRAGMENTS = {"Codeforces ", "is a competitive ", "programming site. ", "Rounds are held ",
+            "almost every week", ". 祝你好运！", " Bye"};
+    private static final long STEP_MILLIS = 60;
+
+    private HttpServer stub;
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/v1/models/stub:streamGenerateContent", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (String fragment : FRAGMENTS) {
+                    Map<String, Object> event = Map.of("candidates", List.of(Map.of("content", Map.of("role", "model", "parts", List.of(Map.of("text", fragment))))));
+                    out.write(("data: " + new Gson().toJson(event) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(STEP_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stub.createContext("/v1/models/broken:streamGenerateContent", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] error = "{\"error\":{\"code\":400,\"message\":\"API key not valid\"}}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(400, error.length);
+            exchange.getResponseBody().write(error);
+            exchange.close();
+        });
+        stub.start();
+        baseUrl = "http://127.0.0.1:" + stub.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+        ModScheduler.shutdown();
+    }
+
+    @Test
+    void streamsSentencesAsTheyArrive() {
+        long start = System.nanoTime();
+        List<String> batches = Collections.synchronizedList(new ArrayList<>());
+        List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+        ChatStreamBatcher batcher = new ChatStreamBatcher(text -> {
+            batches.add(text);
+            arrivals.add((System.nanoTime() - start) / 1_000_000);
+        });
+        String endpoint = ChatAPI.streamingEndpoint(baseUrl + "/v1/models/stub:generateContent");
+        String body = "{\"contents\":[{\"role\":\"user\",\"parts\":[{\"text\":\"What is Codeforces?\"}]}]}";
+
+        String reply = ChatAPI.streamAsync(HttpClient.newHttpClient(), endpoint, body, batcher::append).join();
+        long total = (System.nanoTime() - start) / 1_000_000;
+        batcher.finish();
+
+        assertEquals(String.join("", FRAGMENTS).trim(), reply);
+        // 整句立即发出；半句话最多等 FLUSH_INTERVAL_MILLIS，所以后面的分批取决于片段到达的时间
+        assertEquals("Codeforces is a competitive programming site.", batches.get(0));
+        assertEquals("Bye", batches.get(batches.size() - 1));
+        assertEquals(reply.replace(" ", ""), String.join("", batches).replace(" ", ""));
+        // 第一句在整个流结束之前就到了
+        assertTrue(arrivals.get(0) < total - 2 * STEP_MILLIS, "first sentence at " + arrivals.get(0) + " ms of " + total);
+    }
+
+    @Test
+    void errorStatusCompletesWithNull() {
+        List<String> chunks = new ArrayList<>();
+        String endpoint = ChatAPI.streamingEndpoint(baseUrl + "/v1/models/broken:generateContent");
+        assertNull(ChatAPI.streamAsync(HttpClient.newHttpClient(), endpoint, "{}", chunks::add).join());
+        assertTrue(chunks.isEmpty());
+    }
+
+    @Test
+    void streamingEndpointOnlyForGemini() {
+        assertEquals("https://example.com/v1beta/models/gemini:streamGenerateContent?alt=sse",
+                ChatAPI.streamingEndpoint("https://example.com/v1beta/models/gemini:generateContent"));
+        assertEquals("https://example.com/m:streamGenerateContent?key=x&alt=sse",
+                ChatAPI.streamingEndpoint("https://example.com/m:generateContent?key=x"));
+        assertNull(ChatAPI.streamingEndpoint("https://example.com/v1/chat/completions"));
+        assertNull(ChatAPI.streamingEndpoint(null));
+    }
+
+    @Test
+    void sentenceEndsNeedTrailingSpaceForAsciiPunctuation() {
+        assertEquals(-1, ChatStreamBatcher.lastSentenceEnd("pi is 3.14"));
+        assertEquals(-1, ChatStreamBatcher.lastSentenceEnd("see codeforces.com"));
+        assertEquals(4, ChatStreamBatcher.lastSentenceEnd("Done. next"));
+        assertEquals(2, ChatStreamBatcher.lastSentenceEnd("你好。世界"));
+        assertEquals(3, ChatStreamBatcher.lastSentenceEnd("abc\ndef"));
+    }
+}
@@ -0,0 +1,64 @@
+package org.fengling.anti_addiction;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// 测试用的 Codeforces API 响应，字段和顺序照抄真实的 contest.list / user.info
+final class CodeforcesFixtures {
+
+    static final long DAY_SECONDS = 24 * 60 * 60;
+
+    private CodeforcesFixtures() {
+    }
+
+    /**
+     * A {@code contest.list} response with {@code contests} contests, newest first: contest {@code i}
+     * starts {@code i} days before {@code newestStartSeconds}, and the first five have not started yet.
+     * Every fifth contest carries the optional ICPC fields, with a numeric {@code difficulty}.
+     */
+    static String contestListJson(int contests, long newestStartSeconds) {
+        StringBuilder json = new StringBuilder(contests * 260).append("{\"status\":\"OK\",\"result\":[");
+        for (int i = 0; i < contests; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            int id = 2000 - i;
+            json.append("{\"id\":").append(id)
+                    .append(",\"name\":\"Codeforces Round ").append(id).append(i % 7 == 0 ? " (Div. 1 + Div. 2) \\\"Good Bye\\\" 比赛" : " (Div. 2)").append('"')
+                    .append(",\"type\":\"").append(i % 3 == 0 ? "ICPC" : "CF").append('"')
+                    .append(",\"phase\":\"").append(i < 5 ? "BEFORE" : "FINISHED").append('"')
+                    .append(",\"frozen\":false")
+                    .append(",\"durationSeconds\":").append(7200 + (i % 4) * 1800)
+                    .append(",\"startTimeSeconds\":").append(newestStartSeconds - i * DAY_SECONDS)
+                    .append(",\"relativeTimeSeconds\":").append(-1_000_000L + i * DAY_SECONDS);
+            if (i % 5 == 0) {
+                json.append(",\"preparedBy\":\"tourist\",\"websiteUrl\":\"https:\\/\\/codeforces.com\\/\",\"difficulty\":").append(i % 5)
+                        .append(",\"kind\":\"Official ICPC Contest\",\"icpcRegion\":\"Northern Eurasia\",\"country\":\"Russia\",\"city\":\"Saint Petersburg\",\"season\":\"2023-2024\"");
+            }
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    // 以现在为基准：前 5 个比赛在未来 1~5 天内开始，之后每天一个已结束的比赛
+    static byte[] recentContestListBytes(int contests) {
+        long newestStart = System.currentTimeMillis() / 1000 + 5 * DAY_SECONDS;
+        return contestListJson(contests, newestStart).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String userJson(String handle, int rating) {
+        return "{\"lastName\":\"\",\"country\":\"\",\"lastOnlineTimeSeconds\":1700000000,\"city\":\"\",\"rating\":" + rating
+                + ",\"friendOfCount\":100,\"titlePhoto\":\"https://userpic.codeforces.org/no-title.jpg\",\"handle\":\"" + handle + "\""
+                + ",\"avatar\":\"https://userpic.codeforces.org/no-avatar.jpg\",\"firstName\":\"\",\"contribution\":0"
+                + ",\"organization\":\"\",\"rank\":\"legendary grandmaster\",\"maxRating\":" + (rating + 100)
+                + ",\"registrationTimeSeconds\":1265987288,\"maxRank\":\"legendary grandmaster\"}";
+    }
+
+    static byte[] userInfoOk(List<String> userJsons) {
+        return ("{\"status\":\"OK\",\"result\":[" + String.join(",", userJsons) + "]}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] userNotFound(String handle) {
+        return ("{\"status\":\"FAILED\",\"comment\":\"handles: User with handle " + handle + " not found\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,43 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConfigManagerTest {
+
+    // 共享快照的 setter 一律抛异常，只有 update/override 拿到的副本可以修改
+    @Test
+    void publishedSnapshotIsReadOnly() {
+        UUID playerId = UUID.randomUUID();
+        ModConfig before = ConfigManager.get();
+        int maxKb = before.getServerConfig().getDialogueFileMaxKb();
+        ModConfig after = ConfigManager.override(config -> {
+            config.getServerConfig().setDialogueFileMaxKb(maxKb + 1);
+            config.getOrCreatePlayerConfig(playerId, "Steve").setCodeforcesID("tourist");
+        });
+        try {
+            assertNotSame(before, after);
+            assertEquals(maxKb, before.getServerConfig().getDialogueFileMaxKb()); // 旧快照不受影响
+            assertEquals(maxKb + 1, ConfigManager.server().getDialogueFileMaxKb());
+
+            ModConfig.PlayerConfig player = after.findPlayerConfig(playerId);
+            assertEquals("tourist", player.getCodeforcesID());
+            assertThrows(UnsupportedOperationException.class, () -> after.getServerConfig().setDialogueFileMaxKb(1));
+            assertThrows(UnsupportedOperationException.class, () -> player.setCodeforcesID("petr"));
+            assertThrows(UnsupportedOperationException.class, () -> after.getPlayerConfigs().add(new ModConfig.PlayerConfig()));
+            assertThrows(UnsupportedOperationException.class, () -> after.getOrCreatePlayerConfig(UUID.randomUUID(), "Alex"));
+            assertThrows(UnsupportedOperationException.class, () -> after.setServerConfig(new ModConfig.ServerConfig()));
+            assertEquals(maxKb + 1, ConfigManager.server().getDialogueFileMaxKb());
+        } finally {
+            ConfigManager.override(config -> {
+                config.getServerConfig().setDialogueFileMaxKb(maxKb);
+                config.getPlayerConfigs().removeIf(player -> playerId.equals(player.getPlayerUuid()));
+            });
+        }
+    }
+}
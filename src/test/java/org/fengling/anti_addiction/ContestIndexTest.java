@@ -0,0 +1,156 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContestIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private Path snapshot;
+    private List<CodeforcesAPI.ContestInfo> contests;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        snapshot = directory.resolve("contests.dat");
+        contests = CodeforcesJsonDecoder.decodeContestList(CodeforcesFixtures.recentContestListBytes(300)).result;
+    }
+
+    @Test
+    void queriesAfterFullMerge() {
+        ContestIndex index = new ContestIndex(snapshot);
+        assertTrue(index.isEmpty());
+        assertEquals(300, index.merge(contests, true));
+
+        assertEquals(300, index.size());
+        List<CodeforcesAPI.ContestInfo> upcoming = index.upcoming();
+        assertEquals(5, upcoming.size());
+        // 最近开始的排在前面
+        assertEquals(contests.get(4).id, upcoming.get(0).id);
+        assertEquals(contests.get(0).id, upcoming.get(4).id);
+
+        // 5 个未开始的，加上最近 3 天开始的 3 个（今天的比赛已经开始）
+        long now = System.currentTimeMillis() / 1000;
+        List<CodeforcesAPI.ContestInfo> recent = index.lastDays(3);
+        for (CodeforcesAPI.ContestInfo contest : contests) {
+            boolean expected = contest.startTimeSeconds >= now - 3 * CodeforcesFixtures.DAY_SECONDS;
+            assertEquals(expected, recent.contains(contest), "contest " + contest.id);
+        }
+        assertEquals(100, index.byType("ICPC").size());
+        assertEquals(200, index.byType("CF").size());
+        assertTrue(index.byType("IOI").isEmpty());
+    }
+
+    @Test
+    void snapshotRoundTrip() {
+        ContestIndex index = new ContestIndex(snapshot);
+        index.merge(contests, true);
+        assertTrue(Files.exists(snapshot));
+
+        ContestIndex reloaded = new ContestIndex(snapshot);
+        reloaded.load();
+        assertEquals(index.size(), reloaded.size());
+        assertEquals(index.refreshedAtMillis(), reloaded.refreshedAtMillis());
+        for (CodeforcesAPI.ContestInfo contest : contests) {
+            assertEquals(contest.toString(), reloaded.get(contest.id).toString());
+        }
+        assertEquals(index.upcoming().size(), reloaded.upcoming().size());
+    }
+
+    @Test
+    void unreadableSnapshotLeavesIndexEmpty() throws IOException {
+        Files.write(snapshot, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        ContestIndex index = new ContestIndex(snapshot);
+        index.load();
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    void deltaMergeOnlyCountsChanges() throws IOException {
+        ContestIndex index = new ContestIndex(snapshot);
+        index.merge(contests, true);
+        long snapshotSize = Files.size(snapshot);
+
+        // 刷新时遇到第一个"结束很久且没有变化"的比赛就停止
+        int settledAt = 0;
+        while (!index.isSettled(contests.get(settledAt))) {
+            settledAt++;
+        }
+        assertTrue(settledAt > 5 && settledAt < 20, "settled at " + settledAt);
+
+        CodeforcesAPI.ContestInfo started = copyOf(contests.get(4));
+        started.phase = "CODING";
+        CodeforcesAPI.ContestInfo added = copyOf(contests.get(0));
+        added.id = 9999;
+        added.name = "Codeforces Round 9999 (Div. 2)";
+        List<CodeforcesAPI.ContestInfo> delta = new ArrayList<>(contests.subList(0, settledAt));
+        delta.set(4, started);
+        delta.add(0, added);
+
+        assertEquals(2, index.merge(delta, false));
+        assertEquals(301, index.size());
+        assertEquals("CODING", index.get(started.id).phase);
+        List<CodeforcesAPI.ContestInfo> upcoming = index.upcoming();
+        assertEquals(5, upcoming.size()); // 新比赛加进来，开始了的那个移出去
+        assertEquals(added.id, upcoming.get(4).id);
+        assertTrue(upcoming.stream().noneMatch(c -> c.id == started.id));
+
+        // 没有变化时不重写快照
+        Files.delete(snapshot);
+        assertEquals(0, index.merge(delta, false));
+        assertFalse(Files.exists(snapshot));
+        assertTrue(snapshotSize > 0);
+    }
+
+    @Test
+    void completeMergeDropsMissingContests() {
+        ContestIndex index = new ContestIndex(snapshot);
+        index.merge(contests, true);
+        List<CodeforcesAPI.ContestInfo> withoutFirst = contests.subList(1, contests.size());
+
+        assertEquals(0, index.merge(withoutFirst, false));
+        assertEquals(300, index.size());
+        assertEquals(1, index.merge(withoutFirst, true));
+        assertNull(index.get(contests.get(0).id));
+    }
+
+    @Test
+    void startedSinceMatchesLinearScan() {
+        ContestIndex index = new ContestIndex(snapshot);
+        index.merge(contests, true);
+        long newest = contests.get(0).startTimeSeconds;
+        for (long since = newest + 1; since > newest - 310 * CodeforcesFixtures.DAY_SECONDS; since -= CodeforcesFixtures.DAY_SECONDS / 2) {
+            long expected = 0;
+            for (CodeforcesAPI.ContestInfo contest : contests) {
+                if (contest.startTimeSeconds >= since) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, index.startedSince(since).size(), "since " + since);
+        }
+    }
+
+    private static CodeforcesAPI.ContestInfo copyOf(CodeforcesAPI.ContestInfo contest) {
+        CodeforcesAPI.ContestInfo copy = new CodeforcesAPI.ContestInfo();
+        copy.id = contest.id;
+        copy.name = contest.name;
+        copy.type = contest.type;
+        copy.phase = contest.phase;
+        copy.startTimeSeconds = contest.startTimeSeconds;
+        copy.durationSeconds = contest.durationSeconds;
+        return copy;
+    }
+}
@@ -0,0 +1,193 @@
+package org.fengling.anti_addiction;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DialogueRegistryTest {
+
+    @Test
+    void requestsOfOneDialogueRunInSubmissionOrder() {
+        DialogueRegistry registry = new DialogueRegistry();
+        CompletableFuture<String> slowReply = new CompletableFuture<>();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<String> first = registry.submit("p", context -> {
+            order.add("first");
+            return slowReply;
+        });
+        CompletableFuture<String> second = registry.submit("p", context -> {
+            order.add("second");
+            return CompletableFuture.completedFuture("b");
+        });
+        assertEquals(List.of("first"), order);
+        assertFalse(second.isDone());
+
+        slowReply.complete("a");
+        assertEquals("a", first.join());
+        assertEquals("b", second.join());
+        assertEquals(List.of("first", "second"), order);
+    }
+
+    @Test
+    void removeCancelsWaitingRequestsAndStartsFresh() {
+        DialogueRegistry registry = new DialogueRegistry();
+        CompletableFuture<String> slowReply = new CompletableFuture<>();
+        DialogueContext before = registry.getOrCreate("p");
+        CompletableFuture<String> running = registry.submit("p", context -> {
+            context.addUserMessage("old question");
+            return slowReply.thenApply(reply -> {
+                context.addModelMessage(reply);
+                return reply;
+            });
+        });
+        CompletableFuture<String> waiting = registry.submit("p", context -> CompletableFuture.completedFuture("never"));
+
+        assertTrue(registry.remove("p"));
+        slowReply.complete("late answer");
+        running.join();
+        assertThrows(CancellationException.class, waiting::join);
+
+        DialogueContext after = registry.getOrCreate("p");
+        assertNotSame(before, after);
+        assertEquals(0, after.getTurnCount());
+        assertEquals(0, before.getTurnCount()); // 迟到的回复被丢弃
+    }
+
+    // 没有新建对话时，定时清理也会移除空闲的对话；正在等待回复的对话保留
+    @Test
+    void idleDialoguesAreEvictedWithoutNewDialogues() {
+        DialogueRegistry registry = new DialogueRegistry();
+        DialogueContext idle = registry.getOrCreate("idle");
+        idle.addUserMessage("hello");
+        CompletableFuture<String> slowReply = new CompletableFuture<>();
+        registry.submit("busy", context -> slowReply);
+        long idleMillis = ConfigManager.server().getDialogueIdleMinutes() * 60_000L;
+
+        registry.evictIdle(System.currentTimeMillis());
+        assertEquals(2, registry.size());
+
+        registry.evictIdle(System.currentTimeMillis() + idleMillis);
+        assertEquals(1, registry.size());
+        assertTrue(idle.isClosed());
+        assertEquals(0, idle.getTurnCount());
+        assertNotSame(idle, registry.getOrCreate("idle"));
+
+        slowReply.complete("done");
+        registry.evictIdle(System.currentTimeMillis() + idleMillis);
+        assertEquals(0, registry.size());
+    }
+
+    // 多个线程为多个玩家同时提交请求并随机清空对话，模拟的回复在随机延迟后到达。
+    // 每个对话里 user/model 必须严格交替、每条回复紧跟它的问题、同一线程的问题按提交顺序出现，
+    // 并且清空之后不会再出现清空前提交的内容
+    @Test
+    void concurrentSubmitsAndClearsKeepDialoguesConsistent() throws InterruptedException {
+        DialogueRegistry registry = new DialogueRegistry();
+        ExecutorService replies = Executors.newFixedThreadPool(8);
+        int players = 4;
+        int submitters = 8;
+        int requestsPerSubmitter = 200;
+        List<CompletableFuture<String>> futures = Collections.synchronizedList(new ArrayList<>());
+        int[][] lastClear = new int[submitters][players]; // 每个线程对每个玩家最后一次清空时的序号
+        for (int[] row : lastClear) {
+            Arrays.fill(row, -1);
+        }
+        CountDownLatch done = new CountDownLatch(submitters);
+
+        for (int t = 0; t < submitters; t++) {
+            int submitter = t;
+            new Thread(() -> {
+                Random random = new Random(submitter);
+                for (int i = 0; i < requestsPerSubmitter; i++) {
+                    int player = random.nextInt(players);
+                    String dialogueId = "player-" + player;
+                    if (random.nextInt(50) == 0) {
+                        registry.remove(dialogueId);
+                        lastClear[submitter][player] = i;
+                        continue;
+                    }
+                    String question = "q:" + submitter + ":" + i;
+                    int delay = random.nextInt(3);
+                    futures.add(registry.submit(dialogueId, context -> {
+                        context.addUserMessage(question);
+                        return CompletableFuture.supplyAsync(() -> {
+                            sleep(delay);
+                            context.addModelMessage("a:" + question.substring(2));
+                            return question;
+                        }, replies);
+                    }));
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        int completed = 0;
+        for (CompletableFuture<String> future : futures) {
+            try {
+                future.join();
+                completed++;
+            } catch (CancellationException e) {
+                // 排队时对话被清空
+            }
+        }
+        assertTrue(completed > 0);
+        replies.shutdown();
+        assertTrue(replies.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (int p = 0; p < players; p++) {
+            JsonArray contents = JsonParser.parseString(registry.getOrCreate("player-" + p).toRequestBody())
+                    .getAsJsonObject().getAsJsonArray("contents");
+            assertEquals(0, contents.size() % 2, "player-" + p + " ends with an unanswered question");
+            int[] lastIndex = new int[submitters];
+            Arrays.fill(lastIndex, -1);
+            for (int i = 0; i < contents.size(); i += 2) {
+                assertEquals("user", role(contents, i));
+                assertEquals("model", role(contents, i + 1));
+                String question = text(contents, i);
+                assertEquals("a:" + question.substring(2), text(contents, i + 1));
+                String[] parts = question.split(":");
+                int submitter = Integer.parseInt(parts[1]);
+                int index = Integer.parseInt(parts[2]);
+                assertTrue(index > lastIndex[submitter], "out of order in player-" + p + ": " + question);
+                assertTrue(index > lastClear[submitter][p], "survived a clear in player-" + p + ": " + question);
+                lastIndex[submitter] = index;
+            }
+        }
+    }
+
+    private static String role(JsonArray contents, int i) {
+        return contents.get(i).getAsJsonObject().get("role").getAsString();
+    }
+
+    private static String text(JsonArray contents, int i) {
+        return contents.get(i).getAsJsonObject().getAsJsonArray("parts").get(0).getAsJsonObject().get("text").getAsString();
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
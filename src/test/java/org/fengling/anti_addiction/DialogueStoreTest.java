@@ -0,0 +1,147 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DialogueStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private DialogueStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new DialogueStore(directory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stop();
+    }
+
+    @Test
+    void appendDropAndReload() {
+        DialogueStore.DialogueLog log = store.log("player");
+        for (int i = 0; i < 50; i++) {
+            log.append(new DialogueContext.Turn("user", "question " + i));
+            log.append(new DialogueContext.Turn("model", "answer " + i + " 你好"));
+        }
+        log.drop(60);
+
+        List<DialogueContext.Turn> turns = store.load("player").join();
+        assertEquals(40, turns.size());
+        assertEquals("question 30", turns.get(0).text);
+        assertEquals("user", turns.get(0).role);
+        assertEquals("answer 49 你好", turns.get(39).text);
+        assertEquals("model", turns.get(39).role);
+    }
+
+    @Test
+    void rewriteReplacesHistory() {
+        DialogueStore.DialogueLog log = store.log("player");
+        log.append(new DialogueContext.Turn("user", "a"));
+        log.append(new DialogueContext.Turn("model", "b"));
+        log.rewrite(List.of(new DialogueContext.Turn("user", "summary"), new DialogueContext.Turn("model", "ok")));
+        log.append(new DialogueContext.Turn("user", "c"));
+
+        assertEquals(List.of("summary", "ok", "c"), texts(store.load("player").join()));
+    }
+
+    @Test
+    void tornRecordIsDiscarded() throws IOException {
+        DialogueStore.DialogueLog log = store.log("player");
+        log.append(new DialogueContext.Turn("user", "kept"));
+        store.stop();
+        Path file = directory.resolve("player.dlg");
+        long intact = Files.size(file);
+        // 崩溃时只写了一半的记录：长度说 100 字节，实际只有 3 字节
+        Files.write(file, new byte[]{0, 0, 0, 100, DialogueStore.OP_USER, 'a', 'b', 'c'}, StandardOpenOption.APPEND);
+
+        assertEquals(List.of("kept"), texts(store.load("player").join()));
+        assertEquals(intact, Files.size(file));
+    }
+
+    @Test
+    void compactionKeepsLiveTurnsOnly() throws IOException {
+        DialogueStore.DialogueLog log = store.log("player");
+        for (int i = 0; i < 50; i++) {
+            log.append(new DialogueContext.Turn("user", "question " + i));
+            log.append(new DialogueContext.Turn("model", "answer " + i));
+        }
+        log.drop(80);
+        store.stop();
+        Path file = directory.resolve("player.dlg");
+        long before = Files.size(file);
+        List<String> expected = texts(store.load("player").join());
+
+        assertTrue(store.compact(file));
+        assertTrue(Files.size(file) < before / 2);
+        assertEquals(expected, texts(store.load("player").join()));
+        assertFalse(store.compact(file)); // 已经没有死记录了
+    }
+
+    // 超过 dialogueFileMaxKb 时内存和文件一起丢弃最早的几轮，之后的 DROP 记录重放出来仍然和内存一致
+    @Test
+    void fileLimitTrimsMemoryAndDiskTogether() throws IOException {
+        int maxKb = ConfigManager.server().getDialogueFileMaxKb();
+        ConfigManager.override(config -> config.getServerConfig().setDialogueFileMaxKb(4));
+        try {
+            DialogueContext context = new DialogueContext();
+            context.restore(List.of(), store.log("player"));
+            for (int i = 0; i < 100; i++) {
+                context.addUserMessage("question " + i + " " + "x".repeat(40));
+                context.addModelMessage("answer " + i + " " + "y".repeat(40));
+            }
+            assertTrue(context.getTurnCount() < 200);
+            context.trimToBudget(context.getCharCount() - 100);
+            context.addUserMessage("last question");
+            store.stop();
+
+            assertTrue(Files.size(directory.resolve("player.dlg")) <= 4 * 1024);
+            List<DialogueContext.Turn> saved = store.load("player").join();
+            assertEquals(context.getTurnCount(), saved.size());
+            assertEquals(context.toRequestBody(), restored(saved).toRequestBody());
+        } finally {
+            ConfigManager.override(config -> config.getServerConfig().setDialogueFileMaxKb(maxKb));
+        }
+    }
+
+    @Test
+    void deleteRemovesFile() {
+        store.log("player").append(new DialogueContext.Turn("user", "a"));
+        store.stop();
+        assertTrue(store.exists("player"));
+        store.delete("player");
+        store.stop();
+        assertFalse(store.exists("player"));
+        assertTrue(store.load("player").join().isEmpty());
+    }
+
+    private static DialogueContext restored(List<DialogueContext.Turn> turns) {
+        DialogueContext context = new DialogueContext();
+        context.restore(turns, null);
+        return context;
+    }
+
+    private static List<String> texts(List<DialogueContext.Turn> turns) {
+        List<String> texts = new ArrayList<>();
+        for (DialogueContext.Turn turn : turns) {
+            texts.add(turn.text);
+        }
+        return texts;
+    }
+}
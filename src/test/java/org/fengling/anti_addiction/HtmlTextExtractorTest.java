@@ -0,0 +1,94 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HtmlTextExtractorTest {
+
+    // 按 chunk 字节一块喂给 extractor，模拟 HttpClient 的 onNext；会切开多字节字符
+    private static class Feed {
+        boolean cancelled;
+        long requested;
+        int bytesRead;
+        String text;
+
+        Feed(String html, Charset charset, int maxChars, int chunk) {
+            byte[] bytes = html.getBytes(charset);
+            HtmlTextExtractor extractor = new HtmlTextExtractor(charset, maxChars);
+            extractor.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested += n;
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+            while (bytesRead < bytes.length && !cancelled && requested > 0) {
+                requested--;
+                int length = Math.min(chunk, bytes.length - bytesRead);
+                extractor.onNext(List.of(ByteBuffer.wrap(bytes, bytesRead, length)));
+                bytesRead += length;
+            }
+            if (!cancelled) {
+                extractor.onComplete();
+            }
+            text = extractor.getBody().toCompletableFuture().join();
+        }
+    }
+
+    @Test
+    void stripsMarkupScriptsAndDecodesEntities() {
+        String html = "<!DOCTYPE html><html><head><title>Problem A</title><style>body { color: red; }</style>"
+                + "<script>var s = \"</div>\"; if (a < b) {}</script></head>\n<body>"
+                + "<!-- comment <p>hidden</p> --><div class=\"x > y\">Given   <b>n</b> &le; 10<sup>5</sup> &amp; a&#x2264;b,"
+                + "  find the answer.</div><p>输入：一行，包含&nbsp;n&nbsp;个整数。</p><p>a < b &unknown; &#128512;</p>"
+                + "<SCRIPT type=\"text/javascript\">ignored()</SCRIPT>end</body></html>";
+        String expected = "Problem A\nGiven n ≤ 105 & a≤b, find the answer.\n输入：一行，包含 n 个整数。\na < b &unknown; 😀\nend";
+
+        for (int chunk : new int[]{1, 7, 64, html.length() * 4}) {
+            Feed feed = new Feed(html, StandardCharsets.UTF_8, 10_000, chunk);
+            assertEquals(expected, feed.text, "chunk size " + chunk);
+            assertFalse(feed.cancelled);
+        }
+    }
+
+    @Test
+    void decodesDeclaredCharset() {
+        Feed feed = new Feed("<p>Ünïcödé</p>", StandardCharsets.ISO_8859_1, 100, 3);
+        assertEquals("Ünïcödé", feed.text);
+    }
+
+    @Test
+    void cancelsDownloadOnceBudgetIsReached() {
+        String page = "<html><body>" + "<p>Codeforces mirror text. </p>".repeat(10_000) + "</body></html>";
+        Feed feed = new Feed(page, StandardCharsets.UTF_8, 80, 7);
+
+        assertTrue(feed.cancelled);
+        assertEquals(80, feed.text.length());
+        assertTrue(feed.text.startsWith("Codeforces mirror text.\nCodeforces mirror text."));
+        assertTrue(feed.bytesRead < 200, "read " + feed.bytesRead + " bytes");
+    }
+
+    @Test
+    void cancelsDownloadAfterByteCap() {
+        // 一大段内联脚本，提取不出文本，也要在 MAX_BYTES 处停下
+        String page = "<script>" + "x".repeat((int) HtmlTextExtractor.MAX_BYTES + 1000) + "</script>tail";
+        Feed feed = new Feed(page, StandardCharsets.UTF_8, 100, 64 * 1024);
+
+        assertTrue(feed.cancelled);
+        assertEquals("", feed.text);
+        assertTrue(feed.bytesRead <= HtmlTextExtractor.MAX_BYTES + 64 * 1024);
+    }
+}
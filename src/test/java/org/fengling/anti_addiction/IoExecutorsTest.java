@@ -0,0 +1,40 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IoExecutorsTest {
+
+    @AfterEach
+    void tearDown() {
+        IoExecutors.start();
+        HttpClientRegistry.start();
+    }
+
+    @Test
+    void rejectsWorkBetweenShutdownAndStart() {
+        String caller = Thread.currentThread().getName();
+        assertNotEquals(caller, CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), IoExecutors.io()).join());
+
+        IoExecutors.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> IoExecutors.io().execute(() -> { }));
+        assertThrows(RejectedExecutionException.class, () -> CompletableFuture.runAsync(() -> { }, IoExecutors.io()));
+        assertEquals(0, IoExecutors.queueDepth());
+
+        IoExecutors.start();
+        assertEquals(42, CompletableFuture.supplyAsync(() -> 42, IoExecutors.io()).join());
+    }
+
+    @Test
+    void httpClientIsNotRebuiltAfterShutdown() {
+        HttpClientRegistry.shutdown();
+        assertThrows(IllegalStateException.class, HttpClientRegistry::get);
+    }
+}
@@ -0,0 +1,322 @@
+package org.fengling.anti_addiction;
+
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// GenericJsonParser 的基准测试：用一份按 contest.list 格式生成的几 MB JSON，
+// 比较旧的 StringReader 逐字符解析、新的字节游标解析（String 和 byte[] 两种入口）和 Gson 的 JsonParser；
+// 第二部分比较 /cf contest 的完整路径：先建树再转成 ContestInfo，和 CodeforcesJsonDecoder 直接绑定（完整 / 只取最近 3 天）
+//
+// 没有 JMH 依赖，这里用预热 + 多轮计时的简单循环；每轮报告平均耗时和当前线程分配的字节数。
+// 放在测试源码里，不进模组 jar；正确性由 JsonParserTest 检查。
+// 运行：在测试 classpath 上 java ... org.fengling.anti_addiction.JsonParserBenchmark [比赛数量]
+public class JsonParserBenchmark {
+
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 20;
+    static final long NEWEST_START_SECONDS = 1_700_000_000L;
+
+    private interface Task {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int contests = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        String json = CodeforcesFixtures.contestListJson(contests, NEWEST_START_SECONDS);
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        System.out.printf("contest.list sample: %d contests, %.1f MB%n", contests, utf8.length / 1024.0 / 1024.0);
+
+        // 先确认两个解析器得到的树相同
+        if (!LegacyParser.parse(json).equals(GenericJsonParser.parse(utf8))) {
+            throw new IllegalStateException("Parsers disagree on the sample");
+        }
+
+        run("legacy StringReader parser", () -> LegacyParser.parse(json));
+        run("GenericJsonParser.parse(String)", () -> GenericJsonParser.parse(json));
+        run("GenericJsonParser.parse(byte[])", () -> GenericJsonParser.parse(utf8));
+        run("Gson JsonParser.parseString", () -> JsonParser.parseString(json));
+        run("Gson JsonParser.parseReader(bytes)", () -> JsonParser.parseReader(new InputStreamReader(new ByteArrayInputStream(utf8), StandardCharsets.UTF_8)));
+
+        // 样本里第 i 个比赛在 NEWEST_START_SECONDS - i 天开始，前 5 个还没开始
+        long cutoffSeconds = NEWEST_START_SECONDS - CodeforcesAPI.RECENT_CONTEST_SECONDS;
+        Predicate<CodeforcesAPI.ContestInfo> olderThanWindow = contest -> !"BEFORE".equals(contest.phase) && contest.startTimeSeconds < cutoffSeconds;
+        if (!bindFromTree(utf8).result.toString().equals(CodeforcesJsonDecoder.decodeContestList(utf8).result.toString())) {
+            throw new IllegalStateException("Decoder disagrees with the tree binding");
+        }
+        System.out.println("Recent window keeps " + CodeforcesJsonDecoder.decodeContestList(utf8, olderThanWindow).result.size() + " contests");
+        run("tree + bind to ContestInfo", () -> bindFromTree(utf8));
+        run("CodeforcesJsonDecoder (all)", () -> CodeforcesJsonDecoder.decodeContestList(utf8));
+        run("CodeforcesJsonDecoder (last 3 days)", () -> CodeforcesJsonDecoder.decodeContestList(utf8, olderThanWindow));
+    }
+
+    // 以前 parseContestListJson 的做法：先解析成 Map 树，再逐个字段强转
+    @SuppressWarnings("unchecked")
+    static CodeforcesAPI.ContestListResponse bindFromTree(byte[] utf8) throws IOException {
+        Map<String, Object> parsedData = (Map<String, Object>) GenericJsonParser.parse(utf8);
+        CodeforcesAPI.ContestListResponse response = new CodeforcesAPI.ContestListResponse();
+        response.status = (String) parsedData.get("status");
+        response.result = new ArrayList<>();
+        for (Map<String, Object> contestData : (List<Map<String, Object>>) parsedData.get("result")) {
+            CodeforcesAPI.ContestInfo contestInfo = new CodeforcesAPI.ContestInfo();
+            contestInfo.id = ((Number) contestData.get("id")).intValue();
+            contestInfo.name = (String) contestData.get("name");
+            contestInfo.type = (String) contestData.get("type");
+            contestInfo.phase = (String) contestData.get("phase");
+            contestInfo.startTimeSeconds = ((Number) contestData.get("startTimeSeconds")).longValue();
+            contestInfo.durationSeconds = ((Number) contestData.get("durationSeconds")).intValue();
+            contestInfo.preparedBy = (String) contestData.get("preparedBy");
+            contestInfo.websiteUrl = (String) contestData.get("websiteUrl");
+            contestInfo.description = (String) contestData.get("description");
+            contestInfo.difficulty = java.util.Objects.toString(contestData.get("difficulty"), null); // API 里是数字
+            contestInfo.icpcRegion = (String) contestData.get("icpcRegion");
+            contestInfo.country = (String) contestData.get("country");
+            contestInfo.city = (String) contestData.get("city");
+            contestInfo.season = (String) contestData.get("season");
+            response.result.add(contestInfo);
+        }
+        return response;
+    }
+
+    private static void run(String name, Task task) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        Object sink = null;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink = task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%-36s %8.2f ms/op %8.1f MB allocated/op%s%n", name, elapsed / 1e6 / MEASURED_ROUNDS,
+                allocated / 1024.0 / 1024.0 / MEASURED_ROUNDS, sink == null ? " (null)" : "");
+    }
+
+    // 旧的 GenericJsonParser，原样保留作为对照
+    static class LegacyParser {
+
+
+        static Object parse(String json) throws IOException {
+            try (StringReader reader = new StringReader(json)) {
+                return parseValue(reader, next(reader));
+            }
+        }
+
+        private static Map<String, Object> parseJsonObject(StringReader reader) throws IOException {
+            Map<String, Object> object = new HashMap<>();
+
+            char c = next(reader);
+    //        Anti_addiction.LOGGER.info("Parsing value: {}", c);
+
+            while (c != '}') {
+                String key = parseString(reader);
+                c = next(reader);
+                if (c != ':') {
+                    throw new IOException("Expected ':' after key");
+                }
+
+                Object value = parseValue(reader, next(reader));
+                object.put(key, value);
+
+                c = next(reader);
+                if (c == ',') {
+                    c = next(reader);
+                } else if (c != '}') {
+                    throw new IOException("Expected ',' or '}' after value");
+                }
+            }
+
+            return object;
+        }
+
+        private static List<Object> parseJsonArray(StringReader reader) throws IOException {
+            List<Object> array = new ArrayList<>();
+
+            char c = next(reader);
+
+            while (c != ']') {
+                Object value = parseValue(reader, c);
+                array.add(value);
+
+                c = next(reader);
+                if (c == ',') {
+                    c = next(reader);
+                } else if (c != ']') {
+                    throw new IOException("Expected ',' or ']' after value");
+                }
+            }
+
+            return array;
+        }
+
+        private static Object parseValue(StringReader reader, char c) throws IOException {
+    //        Anti_addiction.LOGGER.info("Parsing value: {}", c);
+
+            if (c == '"') {
+                return parseString(reader);
+            } else if (Character.isDigit(c) || c == '-') {
+                return parseNumber(reader, c);
+            } else if (c == '{') {
+                return parseJsonObject(reader);
+            } else if (c == '[') {
+                return parseJsonArray(reader);
+            } else if (c == 't' || c == 'f') {
+                return parseBoolean(reader, c);
+            } else if (c == 'n') {
+                return parseNull(reader);
+            } else {
+                throw new IOException("Unexpected character: " + c);
+            }
+        }
+
+        private static String parseString(StringReader reader) throws IOException {
+            StringBuilder sb = new StringBuilder();
+
+            while (true) {
+                char c = (char) reader.read();
+
+                if (c == '"') {
+                    break;
+                }
+
+                if (c == '\\') {
+                    c = (char) reader.read();
+                    switch (c) {
+                        case '"':
+                            sb.append('"');
+                            break;
+                        case '\\':
+                            sb.append('\\');
+                            break;
+                        case '/':
+                            sb.append('/');
+                            break;
+                        case 'b':
+                            sb.append('\b');
+                            break;
+                        case 'f':
+                            sb.append('\f');
+                            break;
+                        case 'n':
+                            sb.append('\n');
+                            break;
+                        case 'r':
+                            sb.append('\r');
+                            break;
+                        case 't':
+                            sb.append('\t');
+                            break;
+                        case 'u':
+                            // Handle Unicode escape sequence
+                            StringBuilder hexCode = new StringBuilder();
+                            for (int i = 0; i < 4; i++) {
+                                c = (char) reader.read();
+                                if (Character.digit(c, 16) == -1) {
+                                    throw new IOException("Invalid Unicode escape sequence: expected 4 hex digits but got: " + hexCode.toString() + c);
+                                }
+                                hexCode.append(c);
+                            }
+                            try {
+                                int unicodeValue = Integer.parseInt(hexCode.toString(), 16);
+                                sb.append((char) unicodeValue);
+                            } catch (NumberFormatException e) {
+                                throw new IOException("Invalid Unicode escape sequence: could not parse hex value: " + hexCode.toString());
+                            }
+                            break;
+                        default:
+                            throw new IOException("Invalid escape sequence: \\" + c);
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+
+            return sb.toString();
+        }
+
+        private static Number parseNumber(StringReader reader, char firstChar) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            sb.append(firstChar);
+
+            while (true) {
+                reader.mark(1);  // mark the current position to allow rewinding.
+
+                char c = (char) reader.read();
+                if (Character.isDigit(c) || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    sb.append(c); // 添加数字字符到字符串
+                } else {
+                    reader.reset();  // rewind to before the non-digit character
+                    break;
+                }
+            }
+
+
+            String numberStr = sb.toString();
+            try {
+                if (numberStr.contains(".") || numberStr.contains("e") || numberStr.contains("E")) {
+                    return Double.parseDouble(numberStr);
+                } else {
+                    try {
+                        return Integer.parseInt(numberStr);
+                    } catch (NumberFormatException e) {
+                        return Long.parseLong(numberStr);
+                    }
+
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid number format: " + numberStr);
+            }
+        }
+
+
+        private static Boolean parseBoolean(StringReader reader, char firstChar) throws IOException {
+            if (firstChar == 't') {
+                if (reader.read() == 'r' && reader.read() == 'u' && reader.read() == 'e') {
+                    return true;
+                } else {
+                    throw new IOException("Expected 'true'");
+                }
+            } else if (firstChar == 'f') {
+                if (reader.read() == 'a' && reader.read() == 'l' && reader.read() == 's' && reader.read() == 'e') {
+                    return false;
+                } else {
+                    throw new IOException("Expected 'false'");
+                }
+            } else {
+                throw new IOException("Expected 'true' or 'false'");
+            }
+        }
+
+        private static Object parseNull(StringReader reader) throws IOException {
+            if (reader.read() == 'u' && reader.read() == 'l' && reader.read() == 'l') {
+                return null;
+            } else {
+                throw new IOException("Expected 'null'");
+            }
+        }
+
+        private static char next(StringReader reader) throws IOException {
+            reader.mark(1);
+            char c = (char) reader.read();
+            while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                reader.mark(1);
+                c = (char) reader.read();
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// 新的字节游标解析器和 CodeforcesJsonDecoder 必须和旧实现给出相同的结果；性能对比见 JsonParserBenchmark
+class JsonParserTest {
+
+    private static final String SAMPLE = CodeforcesFixtures.contestListJson(500, JsonParserBenchmark.NEWEST_START_SECONDS);
+    private static final byte[] SAMPLE_UTF8 = SAMPLE.getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void byteCursorParserMatchesLegacyParser() throws IOException {
+        Object expected = JsonParserBenchmark.LegacyParser.parse(SAMPLE);
+        assertEquals(expected, GenericJsonParser.parse(SAMPLE));
+        assertEquals(expected, GenericJsonParser.parse(SAMPLE_UTF8));
+    }
+
+    @Test
+    void parsesEscapesAndNumbers() throws IOException {
+        String json = "{\"a\":\"\\u4e2d\\n\\\"x\\\"\\/\",\"b\":[1,-2.5e3,true,false,null,3000000000],\"c\":{}}";
+        Map<String, Object> expected = Map.of(
+                "a", "中\n\"x\"/",
+                "b", Arrays.asList(1, -2500.0, true, false, null, 3_000_000_000L),
+                "c", Map.of());
+        assertEquals(expected, GenericJsonParser.parse(json));
+        assertEquals(expected, GenericJsonParser.parse(json.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(List.of("比赛"), GenericJsonParser.parse("[\"比赛\"]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        assertThrows(IOException.class, () -> GenericJsonParser.parse("{\"a\" 1}"));
+        assertThrows(IOException.class, () -> GenericJsonParser.parse("[1,]x"));
+        assertThrows(IOException.class, () -> GenericJsonParser.parse("\"\\q\""));
+    }
+
+    @Test
+    void decoderMatchesTreeBinding() throws IOException {
+        CodeforcesAPI.ContestListResponse decoded = CodeforcesJsonDecoder.decodeContestList(SAMPLE_UTF8);
+        assertEquals(JsonParserBenchmark.bindFromTree(SAMPLE_UTF8).toString(), decoded.toString());
+        assertEquals(500, decoded.result.size());
+        assertEquals("0", decoded.result.get(0).difficulty); // API 里是数字
+    }
+
+    @Test
+    void decoderStopsAtTheRecentWindow() throws IOException {
+        long cutoffSeconds = JsonParserBenchmark.NEWEST_START_SECONDS - CodeforcesAPI.RECENT_CONTEST_SECONDS;
+        Predicate<CodeforcesAPI.ContestInfo> olderThanWindow = contest -> !"BEFORE".equals(contest.phase) && contest.startTimeSeconds < cutoffSeconds;
+        List<CodeforcesAPI.ContestInfo> all = CodeforcesJsonDecoder.decodeContestList(SAMPLE_UTF8).result;
+        int expected = 0;
+        while (!olderThanWindow.test(all.get(expected))) {
+            expected++;
+        }
+
+        List<CodeforcesAPI.ContestInfo> recent = CodeforcesJsonDecoder.decodeContestList(SAMPLE_UTF8, olderThanWindow).result;
+        assertEquals(expected, recent.size());
+        assertEquals(all.subList(0, expected).toString(), recent.toString());
+    }
+}
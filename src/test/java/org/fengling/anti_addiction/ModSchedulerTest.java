@@ -0,0 +1,91 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModSchedulerTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+    private static final LocalTime FIVE = LocalTime.of(5, 0);
+
+    @AfterEach
+    void tearDown() {
+        ModScheduler.shutdown();
+    }
+
+    // 跨越 3 月和 11 月的夏令时切换，重置时间都保持在当地 05:00
+    @Test
+    void nextOccurrenceKeepsLocalTimeAcrossDst() {
+        ZonedDateTime now = ZonedDateTime.of(2024, 3, 9, 12, 0, 0, 0, NEW_YORK);
+        ZonedDateTime first = ModScheduler.nextOccurrence(now, FIVE);
+        ZonedDateTime second = ModScheduler.nextOccurrence(first, FIVE);
+        assertEquals(ZonedDateTime.of(2024, 3, 10, 5, 0, 0, 0, NEW_YORK), first);
+        assertEquals(ZonedDateTime.of(2024, 3, 11, 5, 0, 0, 0, NEW_YORK), second);
+        assertEquals(FIVE, second.toLocalTime());
+
+        ZonedDateTime afterFallBack = ModScheduler.nextOccurrence(ZonedDateTime.of(2024, 11, 2, 12, 0, 0, 0, NEW_YORK), FIVE);
+        assertEquals(ZonedDateTime.of(2024, 11, 3, 5, 0, 0, 0, NEW_YORK), afterFallBack);
+    }
+
+    @Test
+    void skippedTimeMovesPastTheGap() {
+        // 2024-03-10 的 02:30 在纽约不存在，顺延到跳变之后的 03:30
+        ZonedDateTime next = ModScheduler.nextOccurrence(ZonedDateTime.of(2024, 3, 9, 12, 0, 0, 0, NEW_YORK), LocalTime.of(2, 30));
+        assertEquals(LocalTime.of(3, 30), next.toLocalTime());
+        assertEquals(10, next.getDayOfMonth());
+    }
+
+    @Test
+    void occurrenceBoundaries() {
+        ZonedDateTime atFive = ZonedDateTime.of(2024, 3, 11, 5, 0, 0, 0, NEW_YORK);
+        // next 严格晚于 now，previous 不晚于 now
+        assertEquals(atFive.plusDays(1), ModScheduler.nextOccurrence(atFive, FIVE));
+        assertEquals(atFive, ModScheduler.previousOccurrence(atFive, FIVE));
+        assertEquals(atFive.minusDays(1), ModScheduler.previousOccurrence(atFive.minusHours(1), FIVE));
+    }
+
+    @Test
+    void dailyTaskFiresOnceForItsTime() throws InterruptedException {
+        ZonedDateTime target = ZonedDateTime.now().plusSeconds(1);
+        List<ZonedDateTime> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        ModScheduler.DailyTask task = ModScheduler.scheduleDaily("test", target.toLocalTime(), target.getZone(), at -> {
+            fired.add(at);
+            latch.countDown();
+        });
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Thread.sleep(500);
+            assertEquals(1, fired.size());
+            assertEquals(target.toLocalTime(), fired.get(0).toLocalTime());
+            assertTrue(task.getNextRun().isAfter(ZonedDateTime.now()));
+        } finally {
+            task.cancel();
+        }
+    }
+
+    @Test
+    void failingTaskDoesNotStopPeriodicSchedule() throws InterruptedException {
+        CountDownLatch runs = new CountDownLatch(3);
+        var future = ModScheduler.scheduleWithFixedDelay("failing", () -> {
+            runs.countDown();
+            throw new IllegalStateException("boom");
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        try {
+            assertTrue(runs.await(5, TimeUnit.SECONDS));
+        } finally {
+            future.cancel(false);
+        }
+    }
+}
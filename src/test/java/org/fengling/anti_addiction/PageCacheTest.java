@@ -0,0 +1,141 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageCacheTest {
+
+    private static final long BUDGET = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void memoryTierIsByteBoundedLru() {
+        PageCache cache = new PageCache(directory);
+        PageCache.Page a = page("https://mirror.codeforces.com/a", 2000);
+        PageCache.Page b = page("https://mirror.codeforces.com/b", 2000);
+        PageCache.Page c = page("https://mirror.codeforces.com/c", 2000);
+        long budget = a.sizeBytes() * 2L + 10;
+
+        cache.put(a, budget, false);
+        cache.put(b, budget, false);
+        assertSame(a, cache.get(a.url, budget, false)); // a 变成最近使用的
+        cache.put(c, budget, false);
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.sizeBytes() <= budget);
+        assertNull(cache.get(b.url, budget, false));
+        assertSame(c, cache.get(c.url, budget, false));
+        assertEquals(1, cache.evictions());
+
+        // 比整个预算还大的页面不缓存
+        cache.put(page("https://mirror.codeforces.com/huge", 100_000), budget, false);
+        assertNull(cache.get("https://mirror.codeforces.com/huge", budget, false));
+    }
+
+    @Test
+    void touchKeepsContentAndValidators() {
+        PageCache cache = new PageCache(directory);
+        PageCache.Page old = new PageCache.Page("https://mirror.codeforces.com/p", "text", "\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT", 1000);
+        PageCache.Page touched = cache.touch(old, BUDGET, false);
+
+        assertEquals(old.text, touched.text);
+        assertEquals(old.etag, touched.etag);
+        assertEquals(old.lastModified, touched.lastModified);
+        assertTrue(touched.fetchedAtMillis > old.fetchedAtMillis);
+        assertSame(touched, cache.get(old.url, BUDGET, false));
+    }
+
+    @Test
+    void diskTierSurvivesRestart() throws Exception {
+        PageCache cache = new PageCache(directory);
+        PageCache.Page page = new PageCache.Page("https://mirror.codeforces.com/problemset/problem/1/A", "Theatre Square 题面", "\"abc\"", null, 1234);
+        cache.put(page, BUDGET, true);
+        awaitFiles(1);
+
+        PageCache restarted = new PageCache(directory);
+        assertNull(restarted.get(page.url, BUDGET, false));
+        PageCache.Page loaded = restarted.get(page.url, BUDGET, true);
+        assertNotNull(loaded);
+        assertEquals(page.text, loaded.text);
+        assertEquals(page.etag, loaded.etag);
+        assertNull(loaded.lastModified);
+        assertEquals(page.fetchedAtMillis, loaded.fetchedAtMillis);
+        assertNull(restarted.get("https://mirror.codeforces.com/other", BUDGET, true));
+    }
+
+    @Test
+    void diskHitIsPromotedToMemory() throws Exception {
+        PageCache cache = new PageCache(directory);
+        PageCache.Page page = page("https://mirror.codeforces.com/contest/1/problem/A", 1000);
+        cache.put(page, BUDGET, true);
+        awaitFiles(1);
+
+        PageCache restarted = new PageCache(directory);
+        PageCache.Page loaded = restarted.get(page.url, BUDGET, true);
+        assertEquals(1, restarted.size());
+        assertEquals(loaded.sizeBytes(), restarted.sizeBytes());
+        deleteFiles();
+        assertSame(loaded, restarted.get(page.url, BUDGET, true)); // 文件已经删掉，只能来自内存
+        assertSame(loaded, restarted.get(page.url, BUDGET, false));
+
+        // 提升到内存时同样受预算限制
+        PageCache writer = new PageCache(directory);
+        writer.put(page, BUDGET, true);
+        awaitFiles(1);
+        PageCache tiny = new PageCache(directory);
+        assertNotNull(tiny.get(page.url, page.sizeBytes() - 1, true));
+        assertEquals(0, tiny.size());
+    }
+
+    @Test
+    void hitRateCountsRevalidationsAsServed() {
+        PageCache cache = new PageCache(directory);
+        cache.recordMiss();
+        cache.recordHit();
+        cache.recordRevalidated();
+        cache.recordRevalidated();
+        assertEquals(0.75, cache.hitRate(), 1e-9);
+    }
+
+    private void awaitFiles(int count) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (countFiles() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "page file was not written");
+            Thread.sleep(5);
+        }
+    }
+
+    private void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private long countFiles() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".page")).count();
+        }
+    }
+
+    private static PageCache.Page page(String url, int chars) {
+        return new PageCache.Page(url, "x".repeat(chars), null, null, System.currentTimeMillis());
+    }
+}
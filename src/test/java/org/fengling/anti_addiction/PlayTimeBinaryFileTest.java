@@ -0,0 +1,163 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayTimeBinaryFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void putGrowsTheTableInsteadOfDroppingPlayers() throws Exception {
+        Path path = directory.resolve("playtime.bin");
+        Map<UUID, Integer> expected = new HashMap<>();
+        try (PlayTimeBinaryFile file = PlayTimeBinaryFile.open(path)) {
+            // 初始 1024 个槽位，负载上限是一半
+            for (int i = 0; i < 3000; i++) {
+                UUID player = new UUID(i + 1, i * 7L);
+                file.put(player.getMostSignificantBits(), player.getLeastSignificantBits(), i);
+                expected.put(player, i);
+            }
+            assertEquals(3000, file.size());
+            assertEquals(expected, file.toMap());
+        }
+        try (PlayTimeBinaryFile reopened = PlayTimeBinaryFile.open(path)) {
+            assertEquals(expected, reopened.toMap());
+        }
+    }
+
+    @Test
+    void applySnapshotReplacesTheWholeFile() throws Exception {
+        Path path = directory.resolve("playtime.bin");
+        Random random = new Random(7);
+        Map<UUID, Integer> snapshot = new HashMap<>();
+        try (PlayTimeBinaryFile file = PlayTimeBinaryFile.open(path)) {
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < 40; i++) {
+                    UUID player = new UUID(1, random.nextInt(600) + 1);
+                    if (random.nextInt(4) == 0) {
+                        snapshot.remove(player);
+                    } else {
+                        snapshot.put(player, random.nextInt(100_000));
+                    }
+                }
+                file.applySnapshot(snapshot);
+                assertEquals(snapshot, file.toMap());
+                assertEquals(snapshot.size(), file.size());
+            }
+        }
+        assertFalse(Files.exists(directory.resolve("playtime.bin.tmp")));
+        assertEquals(2, countFiles()); // 指针文件和当前一代的表
+        try (PlayTimeBinaryFile reopened = PlayTimeBinaryFile.open(path)) {
+            assertEquals(snapshot, reopened.toMap());
+        }
+    }
+
+    // Windows 不允许重命名覆盖还映射着的文件，而 MappedByteBuffer 要等 GC 才会真正解除映射。
+    // 这里一直持有旧的映射：重建只能写新的一代，旧映射里的内容不能被改写或截断。
+    @Test
+    void rebuildNeverReplacesAMappedFile() throws Exception {
+        Path path = directory.resolve("playtime.bin");
+        UUID first = new UUID(1, 1);
+        List<MappedByteBuffer> oldMappings = new ArrayList<>();
+        List<Path> dataPaths = new ArrayList<>();
+        try (PlayTimeBinaryFile file = PlayTimeBinaryFile.open(path)) {
+            file.put(first.getMostSignificantBits(), first.getLeastSignificantBits(), 42);
+            for (int round = 0; round < 5; round++) {
+                oldMappings.add(file.mapping());
+                dataPaths.add(file.dataPath());
+                Map<UUID, Integer> snapshot = new HashMap<>();
+                snapshot.put(first, 100 + round);
+                for (int i = 0; i < round * 700; i++) {
+                    snapshot.put(new UUID(2, i + 1), i); // 后几轮会扩容
+                }
+                file.applySnapshot(snapshot);
+                assertEquals(snapshot, file.toMap());
+                assertFalse(dataPaths.contains(file.dataPath()), "rebuild wrote over a mapped file");
+            }
+        }
+        // 旧映射还能读到当时的内容：文件没有被截断或原地改写
+        assertEquals(42, valueOf(oldMappings.get(0), first));
+        for (int round = 1; round < oldMappings.size(); round++) {
+            assertEquals(100 + round - 1, valueOf(oldMappings.get(round), first));
+        }
+        try (PlayTimeBinaryFile reopened = PlayTimeBinaryFile.open(path)) {
+            assertEquals(104, reopened.toMap().get(first));
+        }
+        assertEquals(2, countFiles());
+    }
+
+    @Test
+    void legacySingleFileIsConvertedAndStaleGenerationsRemoved() throws Exception {
+        Path path = directory.resolve("playtime.bin");
+        Map<UUID, Integer> snapshot = Map.of(new UUID(1, 2), 100, new UUID(3, 4), 200);
+        Path legacy = directory.resolve("legacy.bin");
+        try (PlayTimeBinaryFile file = PlayTimeBinaryFile.open(path)) {
+            file.applySnapshot(snapshot);
+            Files.copy(file.dataPath(), legacy); // 表文件的格式和旧版本的 playtime.bin 相同
+        }
+        Files.write(directory.resolve("legacy.bin.7"), new byte[16]); // 崩溃前没切换过去的一代
+
+        try (PlayTimeBinaryFile converted = PlayTimeBinaryFile.open(legacy)) {
+            assertEquals(snapshot, converted.toMap());
+            assertEquals(directory.resolve("legacy.bin.1"), converted.dataPath());
+        }
+        assertFalse(Files.exists(directory.resolve("legacy.bin.7")));
+        try (PlayTimeBinaryFile reopened = PlayTimeBinaryFile.open(legacy)) {
+            assertEquals(snapshot, reopened.toMap());
+        }
+    }
+
+    @Test
+    void unchangedSnapshotIsNotRewritten() throws Exception {
+        Path path = directory.resolve("playtime.bin");
+        Map<UUID, Integer> snapshot = Map.of(new UUID(1, 2), 100, new UUID(3, 4), 200);
+        try (PlayTimeBinaryFile file = PlayTimeBinaryFile.open(path)) {
+            file.applySnapshot(snapshot);
+            Path dataPath = file.dataPath();
+            Object fileKey = Files.readAttributes(dataPath, BasicFileAttributes.class).fileKey();
+            file.applySnapshot(new HashMap<>(snapshot));
+            assertEquals(dataPath, file.dataPath());
+            Object after = Files.readAttributes(dataPath, BasicFileAttributes.class).fileKey();
+            assertTrue(fileKey == null || fileKey.equals(after), "file was replaced");
+        }
+    }
+
+    // 和 PlayTimeBinaryFile.findSlot 相同的线性探测
+    private static int valueOf(MappedByteBuffer mapping, UUID player) {
+        int capacity = mapping.getInt(8);
+        int slot = PlayTimeTable.hash(player.getMostSignificantBits(), player.getLeastSignificantBits()) & (capacity - 1);
+        while (true) {
+            int offset = 16 + slot * PlayTimeBinaryFile.RECORD_SIZE;
+            if (mapping.getLong(offset) == player.getMostSignificantBits() && mapping.getLong(offset + 8) == player.getLeastSignificantBits()) {
+                return mapping.getInt(offset + 16);
+            }
+            assertFalse(mapping.getLong(offset) == 0 && mapping.getLong(offset + 8) == 0, "player missing from mapping");
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
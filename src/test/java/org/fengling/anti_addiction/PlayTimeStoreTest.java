@@ -0,0 +1,156 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 和 PlayTimeKick 一样：每秒结算、定时备份、每日重置和管理员命令来自不同线程，
+// 都通过 server.execute 交给唯一的服务器线程执行；store 自己的 IO 线程在后台写文件
+class PlayTimeStoreTest {
+
+    private static final int PLAYERS = 300;
+    private static final int SUBMITTERS = 4;
+    private static final int ROUNDS = 2_000;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void concurrentTicksSavesAndResetsSurviveReload(boolean binary) throws Exception {
+        String path = directory.resolve("playtime.json").toString();
+        UUID[] uuids = new UUID[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            uuids[i] = new UUID(i * 31L + 7, i);
+        }
+
+        ExecutorService serverThread = Executors.newSingleThreadExecutor();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        PlayTimeStore store = new PlayTimeStore(path, binary);
+        PlayTimeTable table = store.load();
+        // 参照模型，只在服务器线程上和 table 一起修改
+        Map<UUID, Integer> model = new HashMap<>();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> submitters = new ArrayList<>();
+        for (int s = 0; s < SUBMITTERS; s++) {
+            Random random = new Random(s);
+            Thread submitter = new Thread(() -> {
+                awaitQuietly(start);
+                for (int round = 0; round < ROUNDS; round++) {
+                    int action = random.nextInt(100);
+                    UUID target = uuids[random.nextInt(PLAYERS)];
+                    int ticks = 1 + random.nextInt(40);
+                    serverThread.execute(guarded(failure, () -> {
+                        if (action < 80) {
+                            // 每秒结算
+                            for (int i = 0; i < 20; i++) {
+                                UUID player = uuids[(target.hashCode() + i * 17 & Integer.MAX_VALUE) % PLAYERS];
+                                table.add(player, ticks);
+                                model.merge(player, ticks, Integer::sum);
+                            }
+                            store.appendDirty(table);
+                        } else if (action < 88) {
+                            // 备份
+                            store.compact(table);
+                        } else if (action < 94) {
+                            // 登出
+                            store.updateInPlace(target, table.get(target));
+                        } else if (action < 99) {
+                            table.remove(target);
+                            model.remove(target);
+                            store.appendRemove(target);
+                        } else {
+                            // 每日重置
+                            table.clear();
+                            model.clear();
+                            store.appendClear();
+                        }
+                    }));
+                }
+            }, "submitter-" + s);
+            submitter.start();
+            submitters.add(submitter);
+        }
+        start.countDown();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        Map<UUID, Integer> expected = new HashMap<>();
+        serverThread.execute(guarded(failure, () -> {
+            expected.putAll(table.toMap());
+            assertEquals(model, expected);
+            store.appendDirty(table);
+            store.close();
+        }));
+        serverThread.shutdown();
+        assertTrue(serverThread.awaitTermination(60, TimeUnit.SECONDS));
+        assertNull(failure.get());
+
+        PlayTimeStore reopened = new PlayTimeStore(path, binary);
+        Map<UUID, Integer> reloaded = reopened.load().toMap();
+        reopened.close();
+        // 被删除的玩家登出时会以 0 写回二进制文件，0 和不存在是等价的
+        reloaded.values().removeIf(value -> value == 0);
+        assertEquals(expected, reloaded);
+    }
+
+    // 服务器停止时先关闭 store，之后才触发玩家登出
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void writesAfterCloseAreDropped(boolean binary) {
+        String path = directory.resolve("playtime.json").toString();
+        UUID player = new UUID(1, 2);
+        PlayTimeStore store = new PlayTimeStore(path, binary);
+        PlayTimeTable table = store.load();
+        table.add(player, 100);
+        store.compact(table);
+        store.close();
+
+        table.add(player, 50);
+        store.updateInPlace(player, table.get(player));
+        store.appendDirty(table);
+        store.compact(table);
+        store.close();
+
+        PlayTimeStore reopened = new PlayTimeStore(path, binary);
+        assertEquals(Map.of(player, 100), reopened.load().toMap());
+        reopened.close();
+    }
+
+    private static Runnable guarded(AtomicReference<Throwable> failure, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        };
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
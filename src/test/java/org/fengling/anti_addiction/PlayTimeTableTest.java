@@ -0,0 +1,130 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PlayTimeTableTest {
+
+    @Test
+    void putGetAddAndRemove() {
+        PlayTimeTable table = new PlayTimeTable();
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+
+        assertEquals(0, table.get(a));
+        assertFalse(table.containsKey(a));
+        table.put(a, 10);
+        assertEquals(15, table.add(a, 5));
+        assertEquals(3, table.add(b, 3));
+        assertEquals(2, table.size());
+
+        assertTrue(table.remove(a));
+        assertFalse(table.remove(a));
+        assertEquals(0, table.get(a));
+        assertEquals(3, table.get(b));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void putIfAbsentKeepsExistingValue() {
+        PlayTimeTable table = new PlayTimeTable();
+        UUID a = UUID.randomUUID();
+        table.putIfAbsent(a, 0);
+        table.add(a, 7);
+        table.putIfAbsent(a, 0);
+        assertEquals(7, table.get(a));
+    }
+
+    // 和 HashMap 对照随机增删，覆盖扩容和后移删除
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        Random random = new Random(42);
+        UUID[] keys = new UUID[300];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        PlayTimeTable table = new PlayTimeTable();
+        Map<UUID, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 50_000; step++) {
+            UUID key = keys[random.nextInt(keys.length)];
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    int value = random.nextInt(1000);
+                    table.put(key, value);
+                    expected.put(key, value);
+                }
+                case 1 -> expected.put(key, table.add(key, 1));
+                default -> assertEquals(expected.remove(key) != null, table.remove(key));
+            }
+        }
+        assertEquals(expected, table.toMap());
+        for (UUID key : keys) {
+            assertEquals(expected.getOrDefault(key, 0), table.get(key));
+        }
+    }
+
+    @Test
+    void drainDirtyVisitsOnlyChangedEntries() {
+        PlayTimeTable table = new PlayTimeTable();
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        table.put(a, 1);
+        table.put(b, 2);
+        table.markClean();
+
+        table.add(b, 1);
+        table.add(a, 0);
+        Map<UUID, Integer> drained = new HashMap<>();
+        table.drainDirty((msb, lsb, value) -> drained.put(new UUID(msb, lsb), value));
+        assertEquals(Map.of(b, 3), drained);
+
+        drained.clear();
+        table.drainDirty((msb, lsb, value) -> drained.put(new UUID(msb, lsb), value));
+        assertTrue(drained.isEmpty());
+    }
+
+    // 稳定状态下（玩家都已插入）每个 tick 的 add 不应该分配对象
+    @Test
+    void addDoesNotAllocateInSteadyState() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        int players = 200;
+        int ticks = 50_000;
+        UUID[] uuids = new UUID[players];
+        PlayTimeTable table = new PlayTimeTable();
+        for (int i = 0; i < players; i++) {
+            uuids[i] = UUID.randomUUID();
+            table.putIfAbsent(uuids[i], 0);
+        }
+        runTicks(table, uuids, ticks); // 预热，让 JIT 先编译 add()
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        runTicks(table, uuids, ticks);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // 留一点余量给计数本身和 JIT 的噪声；装箱的实现每个 tick 就要分配几 KB
+        assertTrue(allocated < 16 * 1024, "allocated " + allocated + " bytes over " + ticks + " ticks");
+        assertEquals(2 * ticks, table.get(uuids[0]));
+    }
+
+    private static void runTicks(PlayTimeTable table, UUID[] uuids, int ticks) {
+        for (int tick = 0; tick < ticks; tick++) {
+            for (UUID uuid : uuids) {
+                table.add(uuid, 1);
+            }
+        }
+    }
+}
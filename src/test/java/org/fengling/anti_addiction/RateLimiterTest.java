@@ -0,0 +1,120 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    @AfterEach
+    void tearDown() {
+        ModScheduler.shutdown();
+    }
+
+    // 后台请求先提交，交互请求后提交但先发出；第一个请求用掉唯一的令牌，立即发出
+    @Test
+    void interactiveCallsOvertakeQueuedBackgroundCalls() {
+        RateLimiter limiter = new RateLimiter("test", () -> 20, 1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            RateLimiter.Priority priority = i < 4 ? RateLimiter.Priority.BACKGROUND : RateLimiter.Priority.INTERACTIVE;
+            String label = (priority == RateLimiter.Priority.BACKGROUND ? "B" : "I") + i;
+            results.add(limiter.submit(priority, () -> {
+                order.add(label);
+                return CompletableFuture.completedFuture(label);
+            }, reply -> false));
+        }
+        assertEquals(7, limiter.queueDepth());
+        results.forEach(CompletableFuture::join);
+
+        assertEquals(List.of("B0", "I4", "I5", "I6", "I7", "B1", "B2", "B3"), order);
+        assertEquals(8, limiter.dispatchedCount());
+        assertEquals(0, limiter.queueDepth());
+    }
+
+    @Test
+    void spacesCallsByInterval() {
+        RateLimiter limiter = new RateLimiter("test", () -> 50, 1);
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(limiter.submit(RateLimiter.Priority.INTERACTIVE,
+                    () -> CompletableFuture.completedFuture((System.nanoTime() - start) / 1_000_000), reply -> false));
+        }
+        long last = results.get(3).join();
+        assertTrue(last >= 140, "fourth call after " + last + " ms");
+        assertTrue(limiter.maxWaitMillis() >= 140);
+    }
+
+    @Test
+    void throttledResponseIsRetriedAfterBackoff() {
+        RateLimiter limiter = new RateLimiter("test", () -> 20, 1);
+        AtomicInteger calls = new AtomicInteger();
+        long start = System.nanoTime();
+        String reply = limiter.submit(RateLimiter.Priority.INTERACTIVE,
+                () -> CompletableFuture.completedFuture(calls.incrementAndGet() == 1 ? "429" : "OK"), "429"::equals).join();
+
+        assertEquals("OK", reply);
+        assertEquals(2, calls.get());
+        assertEquals(1, limiter.throttledCount());
+        assertEquals(1, limiter.dispatchedCount()); // 重试不算新的请求
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 40, "retried before the backoff ended");
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() {
+        RateLimiter limiter = new RateLimiter("test", () -> 1, 1);
+        AtomicInteger calls = new AtomicInteger();
+        String reply = limiter.submit(RateLimiter.Priority.INTERACTIVE, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("429");
+        }, "429"::equals).join();
+
+        assertEquals("429", reply);
+        assertEquals(RateLimiter.MAX_RETRIES + 1, calls.get());
+    }
+
+    // 单人游戏关服时调度线程被关闭，排队中的请求在下次提交时重新调度，不会永远卡住
+    @Test
+    @Timeout(5)
+    void wakeupDroppedBySchedulerShutdownIsRescheduled() {
+        RateLimiter limiter = new RateLimiter("test", () -> 200, 1);
+        CompletableFuture<String> first = limiter.submit(RateLimiter.Priority.INTERACTIVE, () -> CompletableFuture.completedFuture("a"), reply -> false);
+        CompletableFuture<String> queued = limiter.submit(RateLimiter.Priority.INTERACTIVE, () -> CompletableFuture.completedFuture("b"), reply -> false);
+        assertEquals("a", first.join());
+        assertEquals(1, limiter.queueDepth());
+
+        ModScheduler.shutdown();
+        CompletableFuture<String> next = limiter.submit(RateLimiter.Priority.INTERACTIVE, () -> CompletableFuture.completedFuture("c"), reply -> false);
+        assertEquals("b", queued.join());
+        assertEquals("c", next.join());
+    }
+
+    @Test
+    void networkErrorsAreNotRetried() {
+        RateLimiter limiter = new RateLimiter("test", () -> 20, 1);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> result = limiter.submit(RateLimiter.Priority.INTERACTIVE, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(new IOException("connection reset"));
+        }, reply -> true);
+
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals(1, calls.get());
+    }
+}
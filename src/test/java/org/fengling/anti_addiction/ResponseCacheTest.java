@@ -0,0 +1,117 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+
+    @Test
+    void keyNormalizesWhitespace() {
+        assertEquals(ResponseCache.key("m", "  What is the  next\tcontest? "), ResponseCache.key("m", "What is the next contest?"));
+        // 组合字符和预组合字符按 NFC 视为同一个 prompt
+        assertEquals(ResponseCache.key("m", "cafe\u0301"), ResponseCache.key("m", "caf\u00e9"));
+        assertNotEquals(ResponseCache.key("m", "prompt"), ResponseCache.key("other", "prompt"));
+    }
+
+    @Test
+    void keyKeepsCase() {
+        // 大小写可能有意义，比如 handle 和代码里的标识符
+        assertNotEquals(ResponseCache.key("m", "Who is tourist?"), ResponseCache.key("m", "who is Tourist?"));
+        assertNotEquals(ResponseCache.key("m", "int N = 5;"), ResponseCache.key("m", "int n = 5;"));
+    }
+
+    @Test
+    void expiredEntriesAreMisses() throws InterruptedException {
+        ResponseCache cache = new ResponseCache();
+        cache.put("k", "v", 20, 1024);
+        assertEquals("v", cache.get("k"));
+        Thread.sleep(40);
+        assertNull(cache.get("k"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWithinByteBudget() {
+        ResponseCache cache = new ResponseCache();
+        long budget = 4 * 1024;
+        for (int i = 0; i < 8; i++) {
+            put(cache, i, budget); // 每条约 440 字节，8 条还放得下
+        }
+        assertEquals(8, cache.size());
+        assertNotNull(cache.get(ResponseCache.key("m", "prompt 0"))); // 用过的条目排到最后
+        put(cache, 8, budget);
+        put(cache, 9, budget);
+        assertNotNull(cache.get(ResponseCache.key("m", "prompt 0")));
+        assertNull(cache.get(ResponseCache.key("m", "prompt 1")));
+
+        for (int i = 10; i < 50; i++) {
+            put(cache, i, budget);
+        }
+        assertTrue(cache.sizeBytes() <= budget);
+        assertTrue(cache.evictions() >= 40);
+        assertNotNull(cache.get(ResponseCache.key("m", "prompt 49")));
+
+        // 比整个预算还大的回复不缓存
+        cache.put("huge", "x".repeat(4096), 60_000, budget);
+        assertNull(cache.get("huge"));
+        assertEquals(cache.size(), cache.flush());
+        assertEquals(0, cache.sizeBytes());
+    }
+
+    // 20 个并发的相同问题只发一次请求，之后命中缓存
+    @Test
+    void concurrentIdenticalPromptsShareOneRequest() throws InterruptedException {
+        ResponseCache cache = new ResponseCache();
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        String key = ResponseCache.key("Gemini-Thinking", "What is the next contest?");
+
+        List<CompletableFuture<String>> replies = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String cached = cache.get(key);
+            replies.add(cached != null ? CompletableFuture.completedFuture(cached) : flights.run(key, () -> CompletableFuture.supplyAsync(() -> {
+                requests.incrementAndGet();
+                await(release);
+                return "Codeforces Round is on Saturday.";
+            }).thenApply(reply -> {
+                cache.put(key, reply, 60_000, 1024 * 1024);
+                return reply;
+            })));
+        }
+        release.countDown();
+        for (CompletableFuture<String> reply : replies) {
+            assertEquals("Codeforces Round is on Saturday.", reply.join());
+        }
+        assertEquals(1, requests.get());
+        assertEquals(19, flights.coalescedCount());
+        assertEquals(0, flights.inFlightCount());
+        assertEquals("Codeforces Round is on Saturday.", cache.get(key));
+    }
+
+    private static void put(ResponseCache cache, int i, long budget) {
+        cache.put(ResponseCache.key("m", "prompt " + i), "reply ".repeat(20) + i, 60_000, budget);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
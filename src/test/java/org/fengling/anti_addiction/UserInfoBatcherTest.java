@@ -0,0 +1,194 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+
+import static org.fengling.anti_addiction.RateLimiter.Priority.BACKGROUND;
+import static org.fengling.anti_addiction.RateLimiter.Priority.INTERACTIVE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserInfoBatcherTest {
+
+    private static final Set<String> KNOWN = Set.of("tourist", "petr", "benq", "jiangly");
+
+    private final List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+    private final List<RateLimiter.Priority> priorities = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        ModScheduler.shutdown();
+    }
+
+    // 模拟的 user.info：不存在的 handle 会让整个请求失败，和 Codeforces 一样
+    private CompletableFuture<byte[]> fakeUserInfo(List<String> handles, RateLimiter.Priority priority) {
+        requests.add(List.copyOf(handles));
+        priorities.add(priority);
+        return CompletableFuture.supplyAsync(() -> {
+            List<String> users = new ArrayList<>();
+            for (String handle : handles) {
+                if (!KNOWN.contains(handle.toLowerCase())) {
+                    return CodeforcesFixtures.userNotFound(handle);
+                }
+                users.add(CodeforcesFixtures.userJson(handle, 3000 + handle.length()));
+            }
+            return CodeforcesFixtures.userInfoOk(users);
+        });
+    }
+
+    @Test
+    void lookupsWithinWindowShareOneRequest() {
+        UserInfoBatcher batcher = new UserInfoBatcher(this::fakeUserInfo);
+        CompletableFuture<CodeforcesAPI.UserInfo> tourist = batcher.lookup("tourist", INTERACTIVE);
+        CompletableFuture<CodeforcesAPI.UserInfo> petr = batcher.lookup("Petr", INTERACTIVE);
+        CompletableFuture<CodeforcesAPI.UserInfo> again = batcher.lookup("TOURIST", INTERACTIVE);
+
+        assertEquals(3007, tourist.join().rating);
+        assertEquals("Petr", petr.join().handle);
+        assertEquals("tourist", again.join().handle); // 大小写不同的同一个 handle 只查一次
+        assertEquals(List.of(List.of("tourist", "Petr")), requests);
+        assertEquals(1, batcher.requestsSent());
+    }
+
+    @Test
+    void unknownHandlesCompleteWithNull() {
+        UserInfoBatcher batcher = new UserInfoBatcher(this::fakeUserInfo);
+        List<String> handles = List.of("tourist", "Petr", "nobody_here", "Benq", "jiangly", "ghost");
+        List<CompletableFuture<CodeforcesAPI.UserInfo>> results = new ArrayList<>();
+        for (String handle : handles) {
+            results.add(batcher.lookup(handle, INTERACTIVE));
+        }
+        for (int i = 0; i < handles.size(); i++) {
+            CodeforcesAPI.UserInfo user = results.get(i).join();
+            if (KNOWN.contains(handles.get(i).toLowerCase())) {
+                assertEquals(handles.get(i), user.handle);
+            } else {
+                assertNull(user, handles.get(i));
+            }
+        }
+    }
+
+    // 负缓存只在 UserInfoCache 里（codeforcesCacheSeconds），批处理器每次都会重新查询
+    @Test
+    void unknownHandlesAreNotRememberedByTheBatcher() {
+        UserInfoBatcher batcher = new UserInfoBatcher(this::fakeUserInfo);
+        CompletableFuture<CodeforcesAPI.UserInfo> tourist = batcher.lookup("tourist", INTERACTIVE);
+        CompletableFuture<CodeforcesAPI.UserInfo> ghost = batcher.lookup("ghost", INTERACTIVE);
+        CompletableFuture<CodeforcesAPI.UserInfo> nobody = batcher.lookup("nobody_here", INTERACTIVE);
+        assertEquals("tourist", tourist.join().handle);
+        assertNull(ghost.join());
+        assertNull(nobody.join());
+        // Codeforces 每次只报一个不存在的 handle
+        assertEquals(3, batcher.requestsSent());
+
+        requests.clear();
+        assertNull(batcher.lookup("Ghost", INTERACTIVE).join());
+        assertEquals("Petr", batcher.lookup("Petr", INTERACTIVE).join().handle);
+        assertEquals(List.of(List.of("Ghost"), List.of("Petr")), requests);
+    }
+
+    @Test
+    void everyHandleNamedInTheErrorIsDroppedAtOnce() {
+        UserInfoBatcher batcher = new UserInfoBatcher((handles, priority) -> {
+            requests.add(List.copyOf(handles));
+            List<String> missing = new ArrayList<>();
+            List<String> users = new ArrayList<>();
+            for (String handle : handles) {
+                if (KNOWN.contains(handle.toLowerCase())) {
+                    users.add(CodeforcesFixtures.userJson(handle, 3000));
+                } else {
+                    missing.add("User with handle " + handle + " not found");
+                }
+            }
+            return CompletableFuture.completedFuture(missing.isEmpty() ? CodeforcesFixtures.userInfoOk(users)
+                    : ("{\"status\":\"FAILED\",\"comment\":\"handles: " + String.join("; ", missing) + "\"}").getBytes(StandardCharsets.UTF_8));
+        });
+        List<CompletableFuture<CodeforcesAPI.UserInfo>> results = new ArrayList<>();
+        for (String handle : List.of("ghost", "tourist", "nobody_here", "jiangly")) {
+            results.add(batcher.lookup(handle, INTERACTIVE));
+        }
+        assertNull(results.get(0).join());
+        assertEquals("tourist", results.get(1).join().handle);
+        assertNull(results.get(2).join());
+        assertEquals("jiangly", results.get(3).join().handle);
+        assertEquals(List.of(List.of("ghost", "tourist", "nobody_here", "jiangly"), List.of("tourist", "jiangly")), requests);
+    }
+
+    @Test
+    @Timeout(5)
+    void flushDroppedBySchedulerShutdownIsRescheduled() {
+        UserInfoBatcher batcher = new UserInfoBatcher(this::fakeUserInfo);
+        CompletableFuture<CodeforcesAPI.UserInfo> tourist = batcher.lookup("tourist", INTERACTIVE);
+        ModScheduler.shutdown();
+        CompletableFuture<CodeforcesAPI.UserInfo> petr = batcher.lookup("Petr", INTERACTIVE);
+
+        assertEquals("tourist", tourist.join().handle);
+        assertEquals("Petr", petr.join().handle);
+        assertEquals(List.of(List.of("tourist", "Petr")), requests);
+    }
+
+    @Test
+    void batchIsInteractiveIfAnyLookupIs() {
+        UserInfoBatcher batcher = new UserInfoBatcher(this::fakeUserInfo);
+        CompletableFuture<CodeforcesAPI.UserInfo> refresh = batcher.lookup("tourist", BACKGROUND);
+        assertEquals("tourist", refresh.join().handle);
+
+        CompletableFuture<CodeforcesAPI.UserInfo> petr = batcher.lookup("Petr", BACKGROUND);
+        CompletableFuture<CodeforcesAPI.UserInfo> benq = batcher.lookup("Benq", INTERACTIVE);
+        CompletableFuture<CodeforcesAPI.UserInfo> again = batcher.lookup("petr", INTERACTIVE); // 已经排着的后台查询也会被提升
+        assertEquals("Petr", petr.join().handle);
+        assertEquals("Benq", benq.join().handle);
+        assertEquals("Petr", again.join().handle);
+        assertEquals(List.of(List.of("tourist"), List.of("Petr", "Benq")), requests);
+        assertEquals(List.of(BACKGROUND, INTERACTIVE), priorities);
+    }
+
+    @Test
+    void invalidHandleIsNotSent() {
+        UserInfoBatcher batcher = new UserInfoBatcher(this::fakeUserInfo);
+        assertNull(batcher.lookup("bad handle!", INTERACTIVE).join());
+        assertNull(batcher.lookup("a;b", INTERACTIVE).join());
+        assertNull(batcher.lookup("ab", INTERACTIVE).join()); // 太短，Codeforces 不存在这样的 handle
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    void fullBatchIsSentImmediately() {
+        UserInfoBatcher batcher = new UserInfoBatcher((handles, priority) -> {
+            requests.add(List.copyOf(handles));
+            return new CompletableFuture<>(); // 不返回，只看什么时候发出
+        });
+        for (int i = 0; i < UserInfoBatcher.MAX_BATCH; i++) {
+            batcher.lookup("user" + i, INTERACTIVE);
+        }
+        assertEquals(1, requests.size());
+        assertEquals(UserInfoBatcher.MAX_BATCH, requests.get(0).size());
+    }
+
+    @Test
+    void otherFailuresFailEveryLookup() {
+        BiFunction<List<String>, RateLimiter.Priority, CompletableFuture<byte[]>> failing = (handles, priority) -> CompletableFuture.failedFuture(new IOException("timeout"));
+        UserInfoBatcher batcher = new UserInfoBatcher(failing);
+        CompletableFuture<CodeforcesAPI.UserInfo> a = batcher.lookup("tourist", INTERACTIVE);
+        CompletableFuture<CodeforcesAPI.UserInfo> b = batcher.lookup("Petr", INTERACTIVE);
+        assertInstanceOf(IOException.class, assertThrows(CompletionException.class, a::join).getCause());
+        assertInstanceOf(IOException.class, assertThrows(CompletionException.class, b::join).getCause());
+
+        UserInfoBatcher unreadable = new UserInfoBatcher((handles, priority) -> CompletableFuture.completedFuture("{\"status\":".getBytes()));
+        assertThrows(CompletionException.class, unreadable.lookup("tourist", INTERACTIVE)::join);
+    }
+}
@@ -0,0 +1,137 @@
+package org.fengling.anti_addiction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserInfoCacheTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final List<RateLimiter.Priority> priorities = Collections.synchronizedList(new ArrayList<>());
+
+    // 新鲜 100 ms，不存在的 handle 缓存 50 ms；模拟的接口每次返回递增的 rating
+    private final UserInfoCache cache = new UserInfoCache((handle, priority) -> CompletableFuture.supplyAsync(() -> {
+        int call = calls.incrementAndGet();
+        priorities.add(priority);
+        if (handle.equalsIgnoreCase("ghost")) {
+            return null;
+        }
+        CodeforcesAPI.UserInfo user = new CodeforcesAPI.UserInfo();
+        user.handle = handle;
+        user.rating = 3000 + call;
+        return user;
+    }), () -> 100, () -> 50);
+
+    @AfterEach
+    void tearDown() {
+        ModScheduler.shutdown();
+    }
+
+    @Test
+    void freshHitDoesNotCallUpstream() {
+        assertEquals(3001, cache.get("tourist").join().rating);
+        CompletableFuture<CodeforcesAPI.UserInfo> hit = cache.get("Tourist");
+        assertTrue(hit.isDone());
+        assertEquals(3001, hit.join().rating);
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(List.of(RateLimiter.Priority.INTERACTIVE), priorities);
+    }
+
+    @Test
+    void staleHitReturnsOldValueAndRefreshesInBackground() throws InterruptedException {
+        cache.get("tourist").join();
+        Thread.sleep(150);
+
+        CompletableFuture<CodeforcesAPI.UserInfo> stale = cache.get("tourist");
+        assertTrue(stale.isDone());
+        assertEquals(3001, stale.join().rating);
+        assertEquals(1, cache.staleHits());
+
+        awaitTrue(() -> cache.get("tourist").join().rating == 3002);
+        assertEquals(2, calls.get()); // 刷新期间的过期查询共用一次请求
+        assertEquals(List.of(RateLimiter.Priority.INTERACTIVE, RateLimiter.Priority.BACKGROUND), priorities);
+    }
+
+    @Test
+    void unknownHandleIsCachedBriefly() throws InterruptedException {
+        assertNull(cache.get("ghost").join());
+        assertNull(cache.get("ghost").join());
+        assertEquals(1, calls.get());
+        Thread.sleep(80);
+        assertNull(cache.get("ghost").join());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void pinnedHandlesSurviveEvictionAndArePreloaded() {
+        cache.pin(List.of("Petr", "tourist"));
+        awaitTrue(() -> cache.size() == 2);
+        assertEquals(2, calls.get());
+        assertEquals(2, cache.pinnedCount());
+        assertEquals(List.of(RateLimiter.Priority.BACKGROUND, RateLimiter.Priority.BACKGROUND), priorities);
+
+        for (int i = 0; i < UserInfoCache.MAX_ENTRIES + 10; i++) {
+            cache.get("user" + i).join();
+        }
+        assertEquals(UserInfoCache.MAX_ENTRIES + 2, cache.size());
+        CompletableFuture<CodeforcesAPI.UserInfo> petr = cache.get("Petr");
+        assertTrue(petr.isDone(), "pinned handle was evicted");
+        assertEquals("Petr", petr.join().handle);
+    }
+
+    // 玩家的查询不等同一个 handle 的后台查询：还在批处理器里排着的被提升为 INTERACTIVE，已经发出的不共用
+    @Test
+    void interactiveMissDoesNotWaitForBackgroundLoad() {
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        List<RateLimiter.Priority> requestPriorities = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<byte[]> stuckRefresh = new CompletableFuture<>(); // 排在限流器后面迟迟发不出去的后台请求
+        UserInfoBatcher batcher = new UserInfoBatcher((handles, priority) -> {
+            requests.add(List.copyOf(handles));
+            requestPriorities.add(priority);
+            if (handles.contains("Petr") && priority == RateLimiter.Priority.BACKGROUND) {
+                return stuckRefresh;
+            }
+            List<String> users = new ArrayList<>();
+            for (String handle : handles) {
+                users.add(CodeforcesFixtures.userJson(handle, 3000));
+            }
+            return CompletableFuture.completedFuture(CodeforcesFixtures.userInfoOk(users));
+        });
+        UserInfoCache batched = new UserInfoCache(batcher::lookup, () -> 60_000, () -> 60_000);
+
+        // 后台查询还没发出：同一个批次提升为 INTERACTIVE
+        batched.pin(List.of("tourist"));
+        assertEquals("tourist", batched.get("tourist").join().handle);
+        assertEquals(List.of(List.of("tourist")), requests);
+        assertEquals(List.of(RateLimiter.Priority.INTERACTIVE), requestPriorities);
+
+        // 后台查询已经发出：单独按 INTERACTIVE 查询，不等它
+        batched.pin(List.of("tourist", "Petr"));
+        awaitTrue(() -> requests.size() == 2);
+        assertEquals("Petr", batched.get("Petr").join().handle);
+        assertFalse(stuckRefresh.isDone());
+        assertEquals(List.of(List.of("tourist"), List.of("Petr"), List.of("Petr")), requests);
+        assertEquals(List.of(RateLimiter.Priority.INTERACTIVE, RateLimiter.Priority.BACKGROUND, RateLimiter.Priority.INTERACTIVE), requestPriorities);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.onSpinWait();
+        }
+    }
+}